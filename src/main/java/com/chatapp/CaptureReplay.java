@@ -0,0 +1,208 @@
+package com.chatapp;
+
+import com.chatapp.PacketCapture.CapturedPacket;
+import com.chatapp.PacketCapture.Direction;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reproduz uma captura contra um Receiver, reenviando os pacotes na mesma ordem e com os mesmos intervalos da
+ * gravação, divididos pelo fator de velocidade.
+ *
+ * Cada endereço de origem da captura ganha o seu próprio socket, assim o Receiver cria uma sessão para cada Sender
+ * original. As respostas do Receiver não são lidas, a captura é reproduzida como foi gravada.
+ *
+ * Para testes de regressão, a captura também pode ser reproduzida sobre um {@link InMemoryNetwork} com um
+ * {@link VirtualClock}, conduzindo o Receiver com {@link Receiver#poll()}: os intervalos vêm do relógio virtual e não
+ * há sockets nem threads, assim a mesma captura reproduz sempre a mesma execução.
+ *
+ * Uso: CaptureReplay arquivo porta-do-receiver [velocidade] [SENT|RECEIVED]
+ */
+public final class CaptureReplay {
+
+    /**
+     * Posições dos argumentos opcionais de {@link #main(String[])}.
+     */
+    private static final int SPEED_ARGUMENT = 2;
+    private static final int DIRECTION_ARGUMENT = 3;
+
+    private CaptureReplay() {
+    }
+
+    /**
+     * Define em formato de constantes as mensagens que serão impressas no console, tem o intuito de padronizar e
+     * centralizar.
+     */
+    static class ConsoleMessageConstants {
+        public static final String USAGE =
+                "Uso: CaptureReplay <arquivo> <porta do receiver> [velocidade] [SENT|RECEIVED]";
+        public static final String REPLAY_FINISHED = "%d pacotes reproduzidos em %d ms";
+    }
+
+    /**
+     * @param capture Arquivo de captura
+     * @param target Endereço do Receiver
+     * @param direction Direção dos pacotes reproduzidos: RECEIVED para uma captura do Receiver, SENT para uma do Sender
+     * @param speed 1 para os intervalos originais, 2 para o dobro da velocidade, 0 ou menos para enviar sem pausas
+     * @return Quantidade de pacotes reproduzidos
+     * @throws IOException
+     */
+    public static long replay(Path capture, SocketAddress target, Direction direction, double speed)
+            throws IOException {
+        Map<InetSocketAddress, DatagramSocket> sockets = new HashMap<>();
+        long replayedPackets = 0;
+
+        try (PacketCapture.Reader reader = PacketCapture.Reader.open(capture)) {
+            long firstTimestamp = 0;
+            long startNanos = 0;
+            CapturedPacket packet;
+
+            while ((packet = reader.next()) != null) {
+                if (packet.getDirection() != direction) {
+                    continue;
+                }
+
+                if (replayedPackets == 0) {
+                    firstTimestamp = packet.getTimestampNanos();
+                    startNanos = System.nanoTime();
+                } else if (speed > 0) {
+                    awaitUntil(startNanos + (long) ((packet.getTimestampNanos() - firstTimestamp) / speed));
+                }
+
+                DatagramSocket socket = sockets.get(packet.getPeer());
+                if (socket == null) {
+                    socket = new DatagramSocket();
+                    sockets.put(packet.getPeer(), socket);
+                }
+
+                byte[] frame = packet.getFrame();
+                socket.send(new DatagramPacket(frame, frame.length, target));
+                replayedPackets++;
+            }
+        } finally {
+            sockets.values().forEach(DatagramSocket::close);
+        }
+
+        return replayedPackets;
+    }
+
+    /**
+     * Reproduz a captura na simulação, no mesmo endereço de origem de cada pacote e com os intervalos gravados no
+     * relógio virtual. Entre os pacotes, o relógio avança pelas chegadas da rede e pelos temporizadores do Receiver, e
+     * ao final a rede é esvaziada. Para que os intervalos tenham sentido, a captura deve ter sido gravada com o relógio
+     * da simulação, em {@link PacketCapture#create(Path, Clock)}.
+     *
+     * @param capture Arquivo de captura
+     * @param direction Direção dos pacotes reproduzidos
+     * @param network Rede simulada em que o Receiver está ligado
+     * @param clock Relógio da rede e do Receiver
+     * @param receiver Receiver conduzido com {@link Receiver#poll()}
+     * @param receiverAddress Endereço do Receiver na rede
+     * @return Quantidade de pacotes reproduzidos
+     * @throws IOException
+     */
+    public static long replay(Path capture, Direction direction, InMemoryNetwork network, VirtualClock clock,
+            Receiver receiver, SocketAddress receiverAddress) throws IOException {
+        Map<InetSocketAddress, Transport> transports = new HashMap<>();
+        long replayedPackets = 0;
+
+        try (PacketCapture.Reader reader = PacketCapture.Reader.open(capture)) {
+            long firstTimestamp = 0;
+            long startNanos = 0;
+            CapturedPacket packet;
+
+            while ((packet = reader.next()) != null) {
+                if (packet.getDirection() != direction) {
+                    continue;
+                }
+
+                if (replayedPackets == 0) {
+                    firstTimestamp = packet.getTimestampNanos();
+                    startNanos = clock.nanoTime();
+                } else {
+                    advanceUntil(network, clock, receiver, startNanos + packet.getTimestampNanos() - firstTimestamp);
+                }
+
+                Transport transport = transports.get(packet.getPeer());
+                if (transport == null) {
+                    transport = network.bind(packet.getPeer());
+                    transports.put(packet.getPeer(), transport);
+                }
+
+                byte[] frame = packet.getFrame();
+                transport.send(receiverAddress, frame, 0, frame.length);
+                replayedPackets++;
+            }
+
+            while (network.nextArrivalNanos() != Long.MAX_VALUE) {
+                advanceUntil(network, clock, receiver, network.nextArrivalNanos());
+            }
+            receiver.poll();
+        } finally {
+            for (Transport transport : transports.values()) {
+                transport.close();
+            }
+        }
+
+        return replayedPackets;
+    }
+
+    /**
+     * Conduz o Receiver até o instante indicado, avançando o relógio para cada chegada e cada temporizador no caminho.
+     */
+    private static void advanceUntil(InMemoryNetwork network, VirtualClock clock, Receiver receiver, long untilNanos)
+            throws IOException {
+        receiver.poll();
+
+        long next;
+        while ((next = Math.min(network.nextArrivalNanos(), receiver.nextDeadlineNanos())) <= untilNanos) {
+            clock.advanceTo(next);
+            receiver.poll();
+        }
+
+        clock.advanceTo(untilNanos);
+    }
+
+    private static void awaitUntil(long deadlineNanos) {
+        long remaining;
+
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Reproduz uma captura pela linha de comando.
+     *
+     * @param args Arquivo, porta do Receiver e, opcionalmente, velocidade e direção dos pacotes reproduzidos
+     */
+    public static void main(String[] args) {
+        if (args.length < SPEED_ARGUMENT) {
+            System.out.println(ConsoleMessageConstants.USAGE);
+            return;
+        }
+
+        double speed = args.length > SPEED_ARGUMENT ? Double.parseDouble(args[SPEED_ARGUMENT]) : 1;
+        Direction direction = args.length > DIRECTION_ARGUMENT ? Direction.valueOf(args[DIRECTION_ARGUMENT])
+                : Direction.RECEIVED;
+        long start = System.nanoTime();
+
+        try {
+            long replayedPackets = replay(Paths.get(args[0]), new InetSocketAddress("127.0.0.1",
+                    Integer.parseInt(args[1])), direction, speed);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.println(String.format(ConsoleMessageConstants.REPLAY_FINISHED, replayedPackets, elapsedMillis));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
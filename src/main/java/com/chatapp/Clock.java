@@ -0,0 +1,20 @@
+package com.chatapp;
+
+/**
+ * Fonte de tempo do protocolo, usada nos temporizadores de reenvio, nas sondas e na ociosidade das sessões.
+ *
+ * Em produção é o System.nanoTime; nas simulações é um {@link VirtualClock}, avançado pelo próprio teste, assim os
+ * temporizadores disparam sem esperar o tempo real.
+ */
+public interface Clock {
+
+    /**
+     * Relógio de produção, o System.nanoTime.
+     */
+    Clock SYSTEM = System::nanoTime;
+
+    /**
+     * @return Instante atual em nanossegundos, só as diferenças entre instantes têm significado
+     */
+    long nanoTime();
+}
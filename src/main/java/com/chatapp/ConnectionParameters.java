@@ -0,0 +1,226 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Parâmetros de uma conexão, acordados entre Sender e Receiver no handshake OPEN/ACCEPT.
+ *
+ * O Sender propõe os parâmetros no OPEN e o Receiver responde no ACCEPT com o resultado da negociação contra os seus
+ * próprios limites: o menor tamanho de datagrama e de janela, o número de sequência inicial, o período de reenvio e a
+ * política de ACK propostos pelo Sender e somente as funcionalidades opcionais suportadas pelos dois lados. Os valores
+ * padrão são os usados quando não há handshake.
+ */
+public final class ConnectionParameters {
+
+    /**
+     * Tamanho padrão dos datagramas, 8 Kb.
+     */
+    public static final int DEFAULT_MAX_DATAGRAM_SIZE = 8 * 1024;
+    /**
+     * Tamanho padrão da janela do SR.
+     */
+    public static final int DEFAULT_WINDOW_LENGTH = 5;
+    /**
+     * Período padrão de reenvio, em milissegundos.
+     */
+    public static final long DEFAULT_RESEND_PERIOD = 1000L;
+    /**
+     * Quantidade de streams por conexão, identificados de 0 a MAX_STREAMS - 1.
+     */
+    public static final int MAX_STREAMS = 256;
+
+    /**
+     * Define como o Receiver confirma os pacotes recebidos.
+     */
+    public enum AckPolicy {
+        /**
+         * Um ACK individual para cada pacote, assim que ele é tratado.
+         */
+        IMMEDIATE,
+        /**
+         * ACKs adiados por um curto intervalo e enviados junto com os dados no sentido contrário, ou em um único ACK
+         * avulso com todos os índices pendentes caso não haja dados a enviar. Usado pelo {@link Peer}.
+         */
+        DELAYED
+    }
+
+    /**
+     * Funcionalidades opcionais do protocolo, só ativadas quando suportadas pelos dois lados.
+     */
+    public enum Feature {
+        /**
+         * Pacotes PARITY de correção de erros antecipada.
+         */
+        FEC,
+        /**
+         * Pacotes KEEP_ALIVE enviados pelo Sender ocioso, evitando que o Receiver descarte a sessão por inatividade.
+         */
+        KEEP_ALIVE,
+        /**
+         * Streams independentes na mesma conexão, cada um com a sua ordem de entrega, compartilhando a janela do SR.
+         */
+        STREAMS,
+        /**
+         * Mensagens com tempo de vida, que após expirarem deixam de ser reenviadas e são puladas pelo Receiver.
+         */
+        PARTIAL_RELIABILITY
+    }
+
+    private final int maxDatagramSize;
+    private final int windowLength;
+    private final long initialSequenceNumber;
+    private final long resendPeriod;
+    private final AckPolicy ackPolicy;
+    private final Set<Feature> features;
+
+    /**
+     * @param maxDatagramSize Tamanho máximo dos datagramas
+     * @param windowLength Tamanho da janela do SR
+     * @param initialSequenceNumber Índice do primeiro pacote da conexão
+     * @param resendPeriod Período de reenvio, em milissegundos
+     * @param ackPolicy Política de envio dos ACKs
+     * @param features Funcionalidades opcionais da conexão
+     */
+    public ConnectionParameters(int maxDatagramSize, int windowLength, long initialSequenceNumber, long resendPeriod,
+            AckPolicy ackPolicy, Set<Feature> features) {
+        this.maxDatagramSize = maxDatagramSize;
+        this.windowLength = windowLength;
+        this.initialSequenceNumber = initialSequenceNumber;
+        this.resendPeriod = resendPeriod;
+        this.ackPolicy = ackPolicy;
+        this.features = features.isEmpty()
+                ? Collections.emptySet()
+                : Collections.unmodifiableSet(EnumSet.copyOf(features));
+    }
+
+    /**
+     * @return Parâmetros usados por uma conexão sem handshake
+     */
+    public static ConnectionParameters defaults() {
+        return new ConnectionParameters(DEFAULT_MAX_DATAGRAM_SIZE, DEFAULT_WINDOW_LENGTH, 0, DEFAULT_RESEND_PERIOD,
+                AckPolicy.IMMEDIATE, EnumSet.noneOf(Feature.class));
+    }
+
+    public int getMaxDatagramSize() {
+        return maxDatagramSize;
+    }
+
+    public int getWindowLength() {
+        return windowLength;
+    }
+
+    public long getInitialSequenceNumber() {
+        return initialSequenceNumber;
+    }
+
+    public long getResendPeriod() {
+        return resendPeriod;
+    }
+
+    public AckPolicy getAckPolicy() {
+        return ackPolicy;
+    }
+
+    public boolean hasFeature(Feature feature) {
+        return features.contains(feature);
+    }
+
+    public Set<Feature> getFeatures() {
+        return features;
+    }
+
+    /**
+     * Negocia uma proposta recebida em um OPEN contra os limites locais. A política de ACK proposta só é aceita se for
+     * a mesma da local, caso contrário a conexão usa ACKs imediatos.
+     *
+     * @param offer Parâmetros propostos pelo Sender
+     * @return Parâmetros da conexão, que serão devolvidos no ACCEPT
+     */
+    public ConnectionParameters negotiate(ConnectionParameters offer) {
+        Set<Feature> commonFeatures = EnumSet.noneOf(Feature.class);
+        commonFeatures.addAll(offer.features);
+        commonFeatures.retainAll(features);
+
+        return new ConnectionParameters(
+                Math.min(maxDatagramSize, offer.maxDatagramSize),
+                Math.min(windowLength, offer.windowLength),
+                offer.initialSequenceNumber,
+                offer.resendPeriod,
+                offer.ackPolicy.equals(ackPolicy) ? ackPolicy : AckPolicy.IMMEDIATE,
+                commonFeatures);
+    }
+
+    /**
+     * @param messageType OPEN ou ACCEPT
+     * @return Mensagem do handshake com os parâmetros no corpo
+     */
+    public Message toMessage(MessageType messageType) {
+        Message message = new Message(messageType, initialSequenceNumber);
+        message.addMessage(MessageBodyType.MAX_DATAGRAM_SIZE.label, maxDatagramSize);
+        message.addMessage(MessageBodyType.WINDOW_LENGTH.label, windowLength);
+        message.addMessage(MessageBodyType.RESEND_PERIOD.label, resendPeriod);
+        message.addMessage(MessageBodyType.ACK_POLICY.label, ackPolicy.name());
+        message.addMessage(MessageBodyType.FEATURES.label,
+                features.stream().map(Feature::name).collect(Collectors.joining(",")));
+        return message;
+    }
+
+    /**
+     * Lê os parâmetros de um OPEN ou ACCEPT. Funcionalidades desconhecidas são ignoradas, assim versões diferentes do
+     * protocolo ainda conseguem negociar as funcionalidades em comum.
+     *
+     * @param message Mensagem do handshake
+     * @return Parâmetros lidos ou null caso a mensagem esteja incompleta, use uma política de ACK desconhecida ou traga
+     *         limites inválidos
+     */
+    public static ConnectionParameters fromMessage(MessageView message) {
+        Object maxDatagramSize = message.getField(MessageBodyType.MAX_DATAGRAM_SIZE.label);
+        Object windowLength = message.getField(MessageBodyType.WINDOW_LENGTH.label);
+        Object resendPeriod = message.getField(MessageBodyType.RESEND_PERIOD.label);
+        Object ackPolicy = message.getField(MessageBodyType.ACK_POLICY.label);
+        Object features = message.getField(MessageBodyType.FEATURES.label);
+
+        if (!message.hasMessageIndex() || !(maxDatagramSize instanceof Integer) || !(windowLength instanceof Integer)
+                || !(resendPeriod instanceof Long) || !(ackPolicy instanceof String) || !(features instanceof String)) {
+            return null;
+        }
+
+        // um período zero faria o reenvio girar sem parar no TimerQueue, e um datagrama menor que o cabeçalho não
+        // comportaria nenhum frame
+        if ((Integer) maxDatagramSize < MessageCodec.HEADER_LENGTH + MessageCodec.CHECKSUM_LENGTH
+                || (Integer) windowLength <= 0 || (Long) resendPeriod <= 0) {
+            return null;
+        }
+
+        AckPolicy policy;
+        try {
+            policy = AckPolicy.valueOf((String) ackPolicy);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        Set<Feature> featureSet = EnumSet.noneOf(Feature.class);
+        for (String name : ((String) features).split(",")) {
+            for (Feature feature : Feature.values()) {
+                if (feature.name().equals(name)) {
+                    featureSet.add(feature);
+                }
+            }
+        }
+
+        return new ConnectionParameters((Integer) maxDatagramSize, (Integer) windowLength, message.getMessageIndex(),
+                (Long) resendPeriod, policy, featureSet);
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionParameters [maxDatagramSize=" + maxDatagramSize + ", windowLength=" + windowLength
+                + ", initialSequenceNumber=" + initialSequenceNumber + ", resendPeriod=" + resendPeriod
+                + ", ackPolicy=" + ackPolicy + ", features=" + features + "]";
+    }
+}
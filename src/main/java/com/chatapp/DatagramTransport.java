@@ -0,0 +1,170 @@
+package com.chatapp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Transporte UDP sobre um DatagramChannel não bloqueante, com a espera feita em um Selector.
+ *
+ * Com uma {@link WaitStrategy} de espera ativa, {@link #await(long)} tenta receber direto do canal não bloqueante antes
+ * de bloquear no Selector, assim o datagrama que chega logo é tratado sem que a thread durma e seja acordada pelo
+ * kernel. Cada tentativa é um único recvfrom, mais barato que um selectNow; o datagrama recebido durante a espera fica
+ * guardado e é devolvido pelo próximo {@link #receive(ByteBuffer)}. Receber e esperar são feitos pela mesma thread.
+ */
+public final class DatagramTransport implements Transport {
+
+    /**
+     * Maior carga útil de um datagrama UDP sobre IPv4, tamanho do buffer do datagrama recebido durante a espera ativa.
+     */
+    private static final int MAX_UDP_PAYLOAD = 65507;
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final WaitStrategy waitStrategy;
+    /**
+     * Marca um {@link #wakeup()} ainda não visto pela fase ativa da espera.
+     */
+    private final AtomicBoolean wakeupRequested;
+    /**
+     * Datagrama recebido durante a espera ativa e ainda não devolvido por {@link #receive(ByteBuffer)}, com a sua
+     * origem em spunSource; nulo no modo bloqueante.
+     */
+    private final ByteBuffer spunDatagram;
+    private SocketAddress spunSource;
+
+    private DatagramTransport(DatagramChannel channel, Selector selector, WaitStrategy waitStrategy) {
+        this.channel = channel;
+        this.selector = selector;
+        this.waitStrategy = waitStrategy;
+        this.wakeupRequested = new AtomicBoolean();
+        this.spunDatagram = waitStrategy.isBusyPoll() ? ByteBuffer.allocate(MAX_UDP_PAYLOAD) : null;
+    }
+
+    /**
+     * @param port Porta local
+     * @return Transporte ligado à porta em todas as interfaces, com a espera indicada na propriedade
+     *         {@value WaitStrategy#WAIT_STRATEGY_PROPERTY}
+     * @throws IOException
+     */
+    public static DatagramTransport bind(int port) throws IOException {
+        return bind(port, WaitStrategy.fromSystemProperty());
+    }
+
+    /**
+     * @param port Porta local
+     * @param waitStrategy Forma de espera por datagramas em {@link #await(long)}
+     * @return Transporte ligado à porta em todas as interfaces
+     * @throws IOException
+     */
+    public static DatagramTransport bind(int port, WaitStrategy waitStrategy) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+
+        try {
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            Selector selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+            return new DatagramTransport(channel, selector, waitStrategy);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void send(SocketAddress target, byte[] frame, int offset, int length) throws IOException {
+        channel.send(ByteBuffer.wrap(frame, offset, length), target);
+    }
+
+    /**
+     * Devolve primeiro o datagrama recebido durante a espera ativa; como no canal, o que não cabe no buffer é
+     * descartado.
+     */
+    @Override
+    public SocketAddress receive(ByteBuffer buffer) throws IOException {
+        if (spunSource == null) {
+            return channel.receive(buffer);
+        }
+
+        SocketAddress source = spunSource;
+        spunSource = null;
+        spunDatagram.flip();
+        spunDatagram.limit(Math.min(spunDatagram.limit(), buffer.remaining()));
+        buffer.put(spunDatagram);
+        return source;
+    }
+
+    @Override
+    public void await(long timeoutNanos) throws IOException {
+        try {
+            long remainingNanos = timeoutNanos;
+
+            if (timeoutNanos != 0 && waitStrategy.isBusyPoll()) {
+                long deadline = timeoutNanos < 0 ? Long.MAX_VALUE : System.nanoTime() + timeoutNanos;
+
+                if (waitStrategy.spin(this::isReadyNow, deadline)) {
+                    return;
+                }
+
+                if (timeoutNanos > 0) {
+                    remainingNanos = Math.max(0, deadline - System.nanoTime());
+                }
+            }
+
+            if (remainingNanos < 0) {
+                selector.select();
+            } else {
+                long timeoutMillis = TimeUnit.NANOSECONDS.toMillis(remainingNanos);
+
+                if (timeoutMillis > 0) {
+                    selector.select(timeoutMillis);
+                } else {
+                    selector.selectNow();
+                }
+            }
+
+            selector.selectedKeys().clear();
+        } catch (ClosedSelectorException e) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public void wakeup() {
+        wakeupRequested.set(true);
+        selector.wakeup();
+    }
+
+    /**
+     * @return true se um datagrama foi recebido sem bloquear ou há um {@link #wakeup()} pendente
+     */
+    private boolean isReadyNow() throws IOException {
+        if (wakeupRequested.getAndSet(false) || spunSource != null) {
+            return true;
+        }
+
+        spunDatagram.clear();
+        spunSource = channel.receive(spunDatagram);
+        return spunSource != null;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() throws IOException {
+        return channel.getLocalAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        selector.close();
+        channel.close();
+    }
+}
@@ -0,0 +1,495 @@
+package com.chatapp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Log durável das mensagens entregues pelo Receiver, gravado em arquivos de segmento por um FileChannel.
+ *
+ * As mensagens são acrescentadas em memória, na ordem de entrega, e gravadas em group commits: um único write e um
+ * único fsync para todas as mensagens acumuladas desde o commit anterior. Enquanto um fsync está em andamento as novas
+ * mensagens formam o próximo lote, assim a vazão cresce com a carga ao invés de ficar limitada a um fsync por mensagem.
+ * Após cada commit, {@link #getDurableSequence()} avança e o listener registrado é avisado.
+ *
+ * Os commits são feitos pela thread iniciada em {@link #startCommitter()} ou, nas simulações, por chamadas diretas a
+ * {@link #commit()}. Um novo segmento é criado no commit que faria o segmento atual passar do tamanho configurado,
+ * então um segmento só excede esse tamanho quando um único lote é maior que ele.
+ *
+ * Formato de cada segmento, big-endian: magic (4 bytes), versão (4 bytes) e, para cada registro, o tamanho do restante
+ * do registro (4 bytes), a sequência no log (8 bytes), o tamanho do endereço IP do Sender (1 byte), o endereço IP, a
+ * porta (2 bytes) e o pacote exatamente como recebido, com o seu checksum. O nome do segmento é a sequência do seu
+ * primeiro registro. Ao abrir um log existente, um registro incompleto no fim do último segmento, de uma gravação
+ * interrompida antes do fsync, é descartado.
+ */
+public final class DeliveryLog implements AutoCloseable {
+
+    /**
+     * Tamanho padrão dos segmentos, 64 Mb.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    static final int MAGIC = 0x43484C47;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_LENGTH = 8;
+    /**
+     * Tamanho máximo do lote em memória com a thread de commit ligada; acima dele, quem acrescenta espera o commit.
+     */
+    static final int MAX_PENDING_BYTES = 4 * 1024 * 1024;
+    private static final int INITIAL_BATCH_SIZE = 64 * 1024;
+    private static final int RECORD_FIXED_LENGTH = 8 + 1 + 2;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentSize;
+
+    /**
+     * Lote aberto e próxima sequência, protegidos pelo monitor do log.
+     */
+    private ByteBuffer pending;
+    private long nextSequence;
+    private IOException failure;
+    private boolean closed;
+    private Thread committer;
+
+    /**
+     * Estado dos arquivos, acessado somente dentro de commitLock.
+     */
+    private final Object commitLock;
+    private ByteBuffer spare;
+    private FileChannel segment;
+    private long segmentPosition;
+    private long commitCount;
+
+    private volatile long durableSequence;
+    private volatile Runnable commitListener;
+
+    /**
+     * @param directory Diretório dos segmentos, criado se não existir
+     * @param segmentSize Tamanho a partir do qual um novo segmento é criado
+     * @throws IOException
+     */
+    DeliveryLog(Path directory, long segmentSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.pending = ByteBuffer.allocate(INITIAL_BATCH_SIZE);
+        this.spare = ByteBuffer.allocate(INITIAL_BATCH_SIZE);
+        this.commitLock = new Object();
+        this.nextSequence = 0;
+        recover();
+        this.durableSequence = nextSequence - 1;
+    }
+
+    /**
+     * Abre o log do diretório, continuando após o último registro completo caso ele já exista.
+     *
+     * @param directory Diretório dos segmentos
+     * @return Log pronto para acrescentar
+     * @throws IOException
+     */
+    public static DeliveryLog open(Path directory) throws IOException {
+        return new DeliveryLog(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Registra a ação executada após cada commit, na thread que fez o commit.
+     */
+    public void setCommitListener(Runnable commitListener) {
+        this.commitListener = commitListener;
+    }
+
+    /**
+     * Inicia a thread que faz os commits assim que houver mensagens pendentes. Chamadas repetidas são ignoradas.
+     */
+    public synchronized void startCommitter() {
+        if (committer != null || closed) {
+            return;
+        }
+
+        committer = new Thread(this::runCommitter, "delivery-log-committer");
+        committer.start();
+    }
+
+    /**
+     * Acrescenta uma mensagem ao lote aberto. Com a thread de commit ligada e o lote cheio, espera o próximo commit.
+     *
+     * @param peer Endereço do Sender
+     * @param frame Buffer com o pacote
+     * @param offset Início do pacote no buffer
+     * @param length Tamanho do pacote
+     * @return Sequência da mensagem no log, durável quando {@link #getDurableSequence()} a alcançar
+     * @throws IOException Caso o endereço não tenha um IP, o log esteja fechado ou um commit anterior tenha falhado
+     */
+    public synchronized long append(SocketAddress peer, byte[] frame, int offset, int length) throws IOException {
+        if (!(peer instanceof InetSocketAddress) || ((InetSocketAddress) peer).isUnresolved()) {
+            throw new IOException("Endereço do Sender sem IP, não pode ser gravado no log: " + peer);
+        }
+
+        InetSocketAddress peerAddress = (InetSocketAddress) peer;
+        byte[] address = peerAddress.getAddress().getAddress();
+        int recordLength = RECORD_FIXED_LENGTH + address.length + length;
+
+        while (committer != null && pending.position() >= MAX_PENDING_BYTES && !closed && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        if (failure != null) {
+            throw new IOException("Falha no commit do log de entregas", failure);
+        }
+
+        if (closed) {
+            throw new IOException("Log de entregas fechado");
+        }
+
+        if (pending.remaining() < Integer.BYTES + recordLength) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2,
+                    pending.position() + Integer.BYTES + recordLength));
+            pending.flip();
+            pending = larger.put(pending);
+        }
+
+        long sequence = nextSequence++;
+        pending.putInt(recordLength)
+                .putLong(sequence)
+                .put((byte) address.length)
+                .put(address)
+                .putShort((short) peerAddress.getPort())
+                .put(frame, offset, length);
+
+        if (committer != null) {
+            notifyAll();
+        }
+
+        return sequence;
+    }
+
+    /**
+     * Grava o lote aberto com um único write e um único fsync e avança a sequência durável. Sem mensagens pendentes,
+     * não faz nada.
+     *
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        synchronized (commitLock) {
+            ByteBuffer batch;
+            long lastSequence;
+
+            synchronized (this) {
+                if (failure != null) {
+                    throw new IOException("Falha no commit do log de entregas", failure);
+                }
+
+                if (pending.position() == 0) {
+                    return;
+                }
+
+                batch = pending;
+                pending = spare;
+                lastSequence = nextSequence - 1;
+                notifyAll();
+            }
+
+            batch.flip();
+
+            try {
+                if (segment == null
+                        || segmentPosition > FILE_HEADER_LENGTH && segmentPosition + batch.remaining() > segmentSize) {
+                    openSegment(batch.getLong(Integer.BYTES));
+                }
+
+                while (batch.hasRemaining()) {
+                    segmentPosition += segment.write(batch);
+                }
+                segment.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                spare = ByteBuffer.allocate(batch.capacity());
+                throw e;
+            }
+
+            batch.clear();
+            spare = batch;
+            commitCount++;
+            durableSequence = lastSequence;
+        }
+
+        Runnable listener = commitListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * @return Maior sequência já gravada com fsync, -1 antes do primeiro commit de um log vazio
+     */
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    /**
+     * @return Quantidade de commits, cada um com um único fsync, feitos desde a abertura
+     */
+    public long getCommitCount() {
+        synchronized (commitLock) {
+            return commitCount;
+        }
+    }
+
+    /**
+     * Encerra a thread de commit, grava as mensagens pendentes e fecha o segmento atual.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread currentCommitter;
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            currentCommitter = committer;
+            notifyAll();
+        }
+
+        if (currentCommitter != null && currentCommitter != Thread.currentThread()) {
+            try {
+                currentCommitter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try {
+            commit();
+        } finally {
+            synchronized (commitLock) {
+                if (segment != null) {
+                    segment.close();
+                }
+            }
+        }
+    }
+
+    private void runCommitter() {
+        while (true) {
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if (closed) {
+                    return;
+                }
+            }
+
+            try {
+                commit();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Fecha o segmento atual, já sincronizado pelo commit anterior, e cria o próximo. O cabeçalho é sincronizado antes
+     * do diretório, assim o novo arquivo nunca sobrevive a uma queda sem ele.
+     */
+    private void openSegment(long firstSequence) throws IOException {
+        if (segment != null) {
+            segment.close();
+        }
+
+        segment = FileChannel.open(directory.resolve(segmentName(firstSequence)), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_LENGTH).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            segment.write(header);
+        }
+        segment.force(true);
+        segmentPosition = FILE_HEADER_LENGTH;
+
+        syncDirectory();
+    }
+
+    private void syncDirectory() {
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            // nem todo sistema de arquivos permite sincronizar um diretório
+        }
+    }
+
+    /**
+     * Continua o último segmento existente após o seu último registro completo, descartando uma cauda incompleta. Um
+     * último segmento sem cabeçalho, de uma queda durante a troca de segmento, é removido: o seu lote nunca chegou ao
+     * fsync, então o log continua na sequência do nome dele, em um novo segmento criado no próximo commit.
+     */
+    private void recover() throws IOException {
+        List<Path> segments = listSegments(directory);
+
+        if (segments.isEmpty()) {
+            return;
+        }
+
+        Path last = segments.get(segments.size() - 1);
+        List<LoggedMessage> messages = new ArrayList<>();
+        long validLength = readSegment(last, messages);
+
+        if (validLength < FILE_HEADER_LENGTH) {
+            nextSequence = parseFirstSequence(last);
+            Files.delete(last);
+            syncDirectory();
+            return;
+        }
+
+        nextSequence = messages.isEmpty()
+                ? parseFirstSequence(last)
+                : messages.get(messages.size() - 1).getSequence() + 1;
+
+        segment = FileChannel.open(last, StandardOpenOption.WRITE);
+        segment.truncate(validLength);
+        segment.position(validLength);
+        segmentPosition = validLength;
+    }
+
+    /**
+     * Lê todas as mensagens completas do log, na ordem das sequências.
+     *
+     * @param directory Diretório dos segmentos
+     * @return Mensagens gravadas
+     * @throws IOException
+     */
+    public static List<LoggedMessage> read(Path directory) throws IOException {
+        List<LoggedMessage> messages = new ArrayList<>();
+
+        for (Path segmentFile : listSegments(directory)) {
+            readSegment(segmentFile, messages);
+        }
+
+        return messages;
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                    && file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return Tamanho da parte válida do segmento, até o último registro completo, ou -1 se o cabeçalho for inválido
+     */
+    private static long readSegment(Path segmentFile, List<LoggedMessage> messages) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+            if (channel.size() < FILE_HEADER_LENGTH || channel.size() > Integer.MAX_VALUE) {
+                return -1;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return -1;
+            }
+
+            while (buffer.remaining() >= Integer.BYTES) {
+                int start = buffer.position();
+                int recordLength = buffer.getInt();
+
+                if (recordLength < RECORD_FIXED_LENGTH || recordLength > buffer.remaining()) {
+                    return start;
+                }
+
+                try {
+                    long sequence = buffer.getLong();
+                    byte[] address = new byte[buffer.get()];
+                    buffer.get(address);
+                    int port = Short.toUnsignedInt(buffer.getShort());
+                    byte[] frame = new byte[recordLength - RECORD_FIXED_LENGTH - address.length];
+                    buffer.get(frame);
+
+                    messages.add(new LoggedMessage(sequence,
+                            new InetSocketAddress(InetAddress.getByAddress(address), port), frame));
+                } catch (IOException | BufferUnderflowException | NegativeArraySizeException e) {
+                    return start;
+                }
+            }
+
+            return buffer.position();
+        }
+    }
+
+    private static String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+    }
+
+    private static long parseFirstSequence(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Mensagem lida do log.
+     */
+    public static final class LoggedMessage {
+        private final long sequence;
+        private final InetSocketAddress peer;
+        private final byte[] frame;
+
+        /**
+         * @param sequence Sequência da mensagem no log
+         * @param peer Endereço do Sender
+         * @param frame Pacote recebido, exatamente como chegou
+         */
+        LoggedMessage(long sequence, InetSocketAddress peer, byte[] frame) {
+            this.sequence = sequence;
+            this.peer = peer;
+            this.frame = frame;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public InetSocketAddress getPeer() {
+            return peer;
+        }
+
+        public byte[] getFrame() {
+            return frame;
+        }
+    }
+}
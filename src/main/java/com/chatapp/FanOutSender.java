@@ -0,0 +1,529 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sender que entrega as mesmas mensagens a vários Receivers.
+ *
+ * Cada mensagem é codificada uma única vez em um frame imutável, compartilhado pelas transmissões e pelos reenvios para
+ * todos os Receivers, e descartado quando o último deles o confirma; assim o custo de serialização por mensagem não
+ * cresce com a quantidade de Receivers. Cada Receiver tem a sua própria {@link SenderSession}: janela, ACKs pendentes,
+ * temporizadores de reenvio e janela anunciada.
+ *
+ * A janela do grupo, que limita os envios da aplicação, avança conforme a {@link WindowPolicy}. Com QUORUM e
+ * INDEPENDENT os Receivers mais lentos seguem recebendo os reenvios, mas um Receiver que fique mais de
+ * {@link #MAX_LAG_WINDOWS} janelas atrás do grupo é removido, limitando os frames retidos por um Receiver parado.
+ *
+ * Como todo {@link ProtocolEventLoop}, uma única thread é dona do transporte e de todo o estado, e as simulações
+ * conduzem o event loop com {@link #poll()}. Streams, FEC e tempo de vida não são usados pelo fan-out.
+ */
+public final class FanOutSender extends ProtocolEventLoop {
+
+    /**
+     * Quantidade de janelas que um Receiver pode ficar atrás do grupo antes de ser removido, com QUORUM e INDEPENDENT.
+     */
+    static final int MAX_LAG_WINDOWS = 16;
+
+    /**
+     * Regra de avanço da janela do grupo.
+     */
+    public enum WindowPolicy {
+        /**
+         * A janela avança quando todos os Receivers confirmam a mensagem; o Receiver mais lento dita o ritmo.
+         */
+        ALL,
+        /**
+         * A janela avança quando um quórum de Receivers confirma a mensagem.
+         */
+        QUORUM,
+        /**
+         * A janela avança com a confirmação de qualquer Receiver, cada um segue no seu próprio ritmo.
+         */
+        INDEPENDENT
+    }
+
+    private final ConnectionParameters proposedParameters;
+    private final WindowPolicy policy;
+    private final int quorum;
+
+    /**
+     * Receivers do grupo indexados pelo endereço, de onde chegam os seus ACKs.
+     */
+    private final Map<SocketAddress, Destination> destinations;
+    private volatile int receiverCount;
+    private final CompletableFuture<Integer> allAccepted;
+
+    /**
+     * Frames ainda não confirmados por todos os Receivers, indexados pelo índice das mensagens.
+     */
+    private final NavigableMap<Long, SharedFrame> frames;
+    private long windowStartIndex;
+    private long nextIndex;
+
+    private long keepAlivePeriodMillis;
+    private final byte[] keepAliveFrame;
+
+    /**
+     * @param listenerPort Porta local na qual os ACKs são recebidos
+     * @param receiverAddresses Endereços dos Receivers
+     * @param proposedParameters Parâmetros propostos a todos os Receivers no handshake
+     * @param policy Regra de avanço da janela do grupo
+     * @param quorum Quantidade de confirmações que avança a janela com {@link WindowPolicy#QUORUM}
+     * @throws IOException
+     */
+    public FanOutSender(int listenerPort, Collection<? extends SocketAddress> receiverAddresses,
+            ConnectionParameters proposedParameters, WindowPolicy policy, int quorum) throws IOException {
+        this(DatagramTransport.bind(listenerPort), receiverAddresses, proposedParameters, policy, quorum,
+                Clock.SYSTEM);
+    }
+
+    /**
+     * @param transport Transporte do Sender, fechado junto com o event loop
+     * @param receiverAddresses Endereços dos Receivers
+     * @param proposedParameters Parâmetros propostos a todos os Receivers no handshake
+     * @param policy Regra de avanço da janela do grupo
+     * @param quorum Quantidade de confirmações que avança a janela com {@link WindowPolicy#QUORUM}
+     * @param clock Relógio dos temporizadores
+     */
+    public FanOutSender(Transport transport, Collection<? extends SocketAddress> receiverAddresses,
+            ConnectionParameters proposedParameters, WindowPolicy policy, int quorum, Clock clock) {
+        super(transport, clock, "fan-out-sender-event-loop", proposedParameters.getMaxDatagramSize(),
+                proposedParameters.getWindowLength());
+
+        if (receiverAddresses.isEmpty()) {
+            throw new IllegalArgumentException("Nenhum Receiver informado");
+        }
+
+        if (WindowPolicy.QUORUM.equals(policy) && (quorum < 1 || quorum > receiverAddresses.size())) {
+            throw new IllegalArgumentException("Quórum inválido: " + quorum);
+        }
+
+        this.proposedParameters = proposedParameters;
+        this.policy = policy;
+        this.quorum = quorum;
+        this.allAccepted = new CompletableFuture<>();
+
+        this.destinations = new LinkedHashMap<>();
+        for (SocketAddress address : receiverAddresses) {
+            destinations.put(address, new Destination(address, proposedParameters));
+        }
+        this.receiverCount = destinations.size();
+
+        this.frames = new TreeMap<>();
+        this.windowStartIndex = proposedParameters.getInitialSequenceNumber();
+        this.nextIndex = windowStartIndex;
+        this.keepAliveFrame = MessageCodec.encode(new Message(MessageType.KEEP_ALIVE, null));
+    }
+
+    @Override
+    protected void onStart() {
+        if (keepAlivePeriodMillis > 0) {
+            scheduleKeepAlive(keepAlivePeriodMillis, this::sendKeepAlive);
+        }
+
+        if (!WindowPolicy.ALL.equals(policy)) {
+            getTimers().schedule(proposedParameters.getResendPeriod(), proposedParameters.getResendPeriod(),
+                this::dropLaggingDestinations);
+        }
+    }
+
+    /**
+     * @return Quantidade de Receivers que ainda fazem parte do grupo
+     */
+    public int getReceiverCount() {
+        return receiverCount;
+    }
+
+    /**
+     * Faz o handshake com todos os Receivers. Os que não responderem dentro do tempo são removidos do grupo e o envio
+     * segue com os demais. Deve ser chamado pela thread da aplicação após {@link #start()} e antes do primeiro envio.
+     *
+     * @param timeoutMillis Tempo máximo de espera pelos ACCEPTs
+     * @return Quantidade de Receivers conectados
+     * @throws IOException Caso nenhum Receiver responda dentro do tempo
+     */
+    public int connect(long timeoutMillis) throws IOException {
+        CompletableFuture<Integer> accepted = beginConnect();
+
+        try {
+            accepted.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            CompletableFuture<Integer> remaining = new CompletableFuture<>();
+            submit(() -> remaining.complete(dropUnacceptedDestinations()));
+            accepted = remaining;
+        } catch (ExecutionException e) {
+            throw new IOException(ConsoleMessageConstants.NO_RECEIVER_CONNECTED, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ConsoleMessageConstants.NO_RECEIVER_CONNECTED, e);
+        }
+
+        int connectedCount = accepted.join();
+
+        if (connectedCount == 0) {
+            throw new IOException(ConsoleMessageConstants.NO_RECEIVER_CONNECTED);
+        }
+
+        return connectedCount;
+    }
+
+    /**
+     * Inicia o handshake sem bloquear, usado diretamente pelas simulações que conduzem o event loop com
+     * {@link #poll()}. O mesmo OPEN, codificado uma vez, é enviado a todos os Receivers.
+     *
+     * @return Futuro completado com a quantidade de Receivers quando todos tiverem respondido
+     */
+    public CompletableFuture<Integer> beginConnect() {
+        submit(() -> {
+            byte[] openFrame = MessageCodec.encode(proposedParameters.toMessage(MessageType.OPEN));
+
+            for (Destination destination : destinations.values()) {
+                beginHandshake(destination, openFrame);
+            }
+        });
+        return allAccepted;
+    }
+
+    /**
+     * Liga o envio de KEEP_ALIVEs quando o Sender fica ocioso, somente para os Receivers que suportam a funcionalidade.
+     * Deve ser chamado antes de {@link #start()}.
+     *
+     * @param periodMillis Tempo máximo sem transmissões, deve ser menor que o tempo limite de ociosidade dos Receivers
+     */
+    public void enableKeepAlive(long periodMillis) {
+        this.keepAlivePeriodMillis = periodMillis;
+    }
+
+    /**
+     * Enfileira o envio de uma mensagem para todos os Receivers, pode ser chamado por qualquer thread.
+     *
+     * @param message Mensagem com o índice já definido, em sequência a partir do número de sequência inicial
+     * @throws IllegalArgumentException Caso a mensagem não caiba no menor datagrama negociado com os Receivers
+     */
+    public void send(Message message) {
+        checkFrameLength(message, 0);
+        submitSend(() -> register(message));
+    }
+
+    /**
+     * @return Espaço livre na janela do grupo
+     */
+    @Override
+    protected int computeAvailableSlots() {
+        return (int) (windowStartIndex + proposedParameters.getWindowLength() - nextIndex);
+    }
+
+    /**
+     * Codifica a mensagem uma única vez e a entrega a cada Receiver que tenha espaço na sua janela; os demais a
+     * transmitem quando a janela deles avançar.
+     */
+    private void register(Message message) {
+        long messageIndex = message.getHeader().getMessageIndex();
+
+        if (messageIndex != nextIndex) {
+            throw new IllegalArgumentException("Índice fora de sequência: " + messageIndex);
+        }
+
+        SharedFrame frame = new SharedFrame(messageIndex, MessageCodec.encode(message), destinations.size());
+        getMetrics().increment(ProtocolMetrics.Counter.ENCODED_MESSAGES);
+        nextIndex++;
+
+        if (frame.pendingDestinations > 0) {
+            frames.put(messageIndex, frame);
+        }
+
+        for (Destination destination : destinations.values()) {
+            fillWindow(destination);
+        }
+
+        updateGroupWindow();
+    }
+
+    /**
+     * Transmite ao Receiver os frames seguintes enquanto a janela negociada e a janela anunciada por ele permitirem.
+     */
+    private void fillWindow(Destination destination) {
+        while (destination.isAccepted() && destination.nextSendIndex < nextIndex
+                && destination.getAvailableSlots() > 0) {
+            Transmission transmission = new Transmission(frames.get(destination.nextSendIndex));
+            destination.add(destination.nextSendIndex, transmission);
+            destination.nextSendIndex++;
+
+            transmit(destination.getAddress(), transmission);
+            long resendPeriod = destination.getParameters().getResendPeriod();
+            transmission.setRetransmissionTask(getTimers().schedule(resendPeriod, resendPeriod,
+                () -> retransmit(destination, transmission)));
+        }
+    }
+
+    private void retransmit(Destination destination, Transmission transmission) {
+        getMetrics().increment(ProtocolMetrics.Counter.RETRANSMITTED_PACKETS);
+        transmit(destination.getAddress(), transmission);
+    }
+
+    /**
+     * Envia um KEEP_ALIVE aos Receivers que o suportam.
+     */
+    private void sendKeepAlive() {
+        for (Destination destination : destinations.values()) {
+            if (destination.isAccepted()
+                    && destination.getParameters().hasFeature(ConnectionParameters.Feature.KEEP_ALIVE)) {
+                transmit(destination.getAddress(), keepAliveFrame, 0, keepAliveFrame.length);
+            }
+        }
+    }
+
+    /**
+     * Trata ACCEPTs, ACKs e WINDOW_UPDATEs de um Receiver do grupo.
+     */
+    @Override
+    protected void handleFrame(SocketAddress source, MessageView receivedMessage) {
+        Destination destination = destinations.get(source);
+
+        if (destination == null) {
+            return;
+        }
+
+        MessageType messageType = receivedMessage.getMessageType();
+
+        if (MessageType.ACCEPT.equals(messageType)) {
+            handleAccept(destination, receivedMessage);
+            return;
+        }
+
+        if (MessageType.WINDOW_UPDATE.equals(messageType)) {
+            updateAdvertisedWindow(destination, receivedMessage);
+            fillWindow(destination);
+            return;
+        }
+
+        if (!MessageType.ACKNOWLEDGE.equals(messageType) || !receivedMessage.hasMessageIndex()) {
+            return;
+        }
+
+        updateAdvertisedWindow(destination, receivedMessage);
+
+        Transmission transmission = destination.acknowledge(receivedMessage.getMessageIndex());
+
+        if (transmission != null) {
+            acknowledge(transmission.sharedFrame);
+        }
+
+        destination.advanceWindow();
+
+        fillWindow(destination);
+        updateGroupWindow();
+    }
+
+    /**
+     * Aplica os parâmetros negociados com o Receiver. ACCEPTs repetidos ou de outro número de sequência são ignorados.
+     */
+    private void handleAccept(Destination destination, MessageView acceptMessage) {
+        ConnectionParameters negotiated = ConnectionParameters.fromMessage(acceptMessage);
+
+        if (!destination.accept(negotiated)) {
+            return;
+        }
+
+        limitFrameLength(negotiated.getMaxDatagramSize());
+
+        System.out.println(String.format(ConsoleMessageConstants.RECEIVER_CONNECTED, destination.getAddress()));
+
+        fillWindow(destination);
+
+        if (destinations.values().stream().allMatch(Destination::isAccepted)) {
+            allAccepted.complete(destinations.size());
+        }
+    }
+
+    /**
+     * Conta a confirmação de um Receiver e descarta o frame quando todos os Receivers do grupo o tiverem confirmado.
+     */
+    private void acknowledge(SharedFrame frame) {
+        frame.acknowledgements++;
+        release(frame);
+    }
+
+    private void release(SharedFrame frame) {
+        frame.pendingDestinations--;
+
+        if (frame.pendingDestinations == 0) {
+            frames.remove(frame.index);
+        }
+    }
+
+    /**
+     * Avança o início da janela do grupo sobre os frames descartados ou confirmados conforme a política.
+     */
+    private void updateGroupWindow() {
+        while (windowStartIndex < nextIndex) {
+            SharedFrame frame = frames.get(windowStartIndex);
+
+            if (frame != null && !isCommitted(frame)) {
+                return;
+            }
+            windowStartIndex++;
+        }
+    }
+
+    /**
+     * Com QUORUM, caso o grupo fique menor que o quórum, a confirmação de todos os Receivers restantes é suficiente.
+     */
+    private boolean isCommitted(SharedFrame frame) {
+        switch (policy) {
+            case QUORUM:
+                return frame.acknowledgements >= Math.min(quorum, destinations.size());
+            case INDEPENDENT:
+                return frame.acknowledgements > 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Remove do grupo os Receivers que ficaram mais de {@link #MAX_LAG_WINDOWS} janelas atrás da janela do grupo.
+     */
+    private void dropLaggingDestinations() {
+        long maxLag = (long) MAX_LAG_WINDOWS * proposedParameters.getWindowLength();
+        List<Destination> lagging = new ArrayList<>();
+
+        for (Destination destination : destinations.values()) {
+            if (destination.isAccepted() && windowStartIndex - destination.getWindowStartIndex() > maxLag) {
+                lagging.add(destination);
+            }
+        }
+
+        for (Destination destination : lagging) {
+            System.out.println(String.format(ConsoleMessageConstants.LAGGING_RECEIVER_DROPPED,
+                    destination.getAddress()));
+            removeDestination(destination);
+        }
+
+        if (!lagging.isEmpty()) {
+            updateGroupWindow();
+        }
+    }
+
+    /**
+     * Remove do grupo os Receivers que não responderam ao handshake.
+     *
+     * @return Quantidade de Receivers restantes
+     */
+    private int dropUnacceptedDestinations() {
+        for (Destination destination : new ArrayList<>(destinations.values())) {
+            if (!destination.isAccepted()) {
+                System.out.println(String.format(ConsoleMessageConstants.UNREACHABLE_RECEIVER_DROPPED,
+                        destination.getAddress()));
+                removeDestination(destination);
+            }
+        }
+
+        allAccepted.complete(destinations.size());
+        return destinations.size();
+    }
+
+    /**
+     * Cancela os temporizadores do Receiver e libera as suas referências aos frames que ele ainda não confirmou.
+     */
+    private void removeDestination(Destination destination) {
+        destinations.remove(destination.getAddress());
+        receiverCount = destinations.size();
+        getMetrics().increment(ProtocolMetrics.Counter.DROPPED_RECEIVERS);
+        destination.cancelTimers();
+
+        for (long index = destination.getWindowStartIndex(); index < nextIndex; index++) {
+            Transmission transmission = destination.get(index);
+
+            if (transmission == null || transmission.isPendingAcknowledge()) {
+                release(frames.get(index));
+            }
+        }
+    }
+
+    /**
+     * Atualiza a janela anunciada pelo Receiver, que inicia ou cancela as sondas de janela zero.
+     */
+    private void updateAdvertisedWindow(Destination destination, MessageView receivedMessage) {
+        Object window = receivedMessage.getField(MessageBodyType.WINDOW.label);
+
+        if (window instanceof Integer) {
+            updateAdvertisedWindow(destination, (Integer) window);
+        }
+    }
+
+    /**
+     * Mensagem codificada uma única vez, compartilhada pelos Receivers que ainda não a confirmaram.
+     */
+    static final class SharedFrame {
+        private final long index;
+        private final byte[] bytes;
+        /**
+         * Receivers do grupo que ainda não confirmaram o frame; ao chegar a zero, o frame é descartado.
+         */
+        private int pendingDestinations;
+        private int acknowledgements;
+
+        /**
+         * @param index Índice da mensagem
+         * @param bytes Frame codificado, compartilhado por todos os Receivers
+         * @param pendingDestinations Receivers do grupo que recebem o frame
+         */
+        SharedFrame(long index, byte[] bytes, int pendingDestinations) {
+            this.index = index;
+            this.bytes = bytes;
+            this.pendingDestinations = pendingDestinations;
+        }
+    }
+
+    /**
+     * Transmissão de um frame compartilhado para um Receiver, com o seu ACK pendente e a sua tarefa de reenvio.
+     */
+    static final class Transmission extends SenderSession.InFlight {
+        private final SharedFrame sharedFrame;
+
+        Transmission(SharedFrame sharedFrame) {
+            this.sharedFrame = sharedFrame;
+            setFrame(sharedFrame.bytes);
+        }
+    }
+
+    /**
+     * Estado do SR de um Receiver do grupo. As transmissões vão do início da janela a nextSendIndex - 1; os frames a
+     * partir de nextSendIndex esperam espaço na janela desse Receiver.
+     */
+    static final class Destination extends SenderSession<Transmission> {
+        private long nextSendIndex;
+
+        Destination(SocketAddress address, ConnectionParameters proposedParameters) {
+            super(address, proposedParameters);
+            this.nextSendIndex = proposedParameters.getInitialSequenceNumber();
+        }
+    }
+
+    /**
+     * Define em formato de constantes as mensagens que serão impressas no console, tem o intuito de padronizar e
+     * centralizar.
+     */
+    static class ConsoleMessageConstants {
+        public static final String RECEIVER_CONNECTED = "Conexão estabelecida com %s";
+        public static final String NO_RECEIVER_CONNECTED = "Nenhum Receiver respondeu ao pedido de conexão";
+        public static final String UNREACHABLE_RECEIVER_DROPPED =
+                "O Receiver %s não respondeu ao pedido de conexão e foi removido do grupo";
+        public static final String LAGGING_RECEIVER_DROPPED =
+                "O Receiver %s ficou para trás nas confirmações e foi removido do grupo";
+    }
+}
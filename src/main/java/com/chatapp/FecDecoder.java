@@ -0,0 +1,146 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageBodyType;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Lado do Receiver da correção de erros antecipada (FEC).
+ *
+ * Mantém os pacotes de dados e de paridade mais recentes e, quando um bloco tem a paridade e todos os pacotes menos um,
+ * reconstrói o pacote que falta com o XOR dos demais. O pacote reconstruído passa pela mesma verificação de checksum
+ * que um pacote recebido da rede.
+ *
+ * Não é thread-safe, todo acesso é feito pela thread sequenciadora do Receiver. Os pacotes guardados são copiados, já
+ * que o buffer de recebimento é reutilizado. Cada sessão do Receiver tem o seu decodificador, que contabiliza os bytes
+ * retidos para o limite de memória das sessões.
+ */
+final class FecDecoder {
+
+    private static final int MAX_TRACKED_FRAMES = FecEncoder.MAX_GROUP_SIZE * 4;
+    private static final int MAX_TRACKED_PARITIES = 8;
+
+    private final NavigableMap<Long, MessageView> dataFrames;
+    private final NavigableMap<Long, MessageView> parityFrames;
+    private long retainedBytes;
+
+    FecDecoder() {
+        this.dataFrames = new TreeMap<>();
+        this.parityFrames = new TreeMap<>();
+    }
+
+    /**
+     * @param frame Pacote de dados válido recebido do Sender
+     * @return O pacote reconstruído, caso este fosse o penúltimo que faltava em um bloco com paridade
+     */
+    Optional<MessageView> onDataFrame(MessageView frame) {
+        long messageIndex = frame.getMessageIndex();
+        track(dataFrames, messageIndex, frame.detach());
+        trim(dataFrames, MAX_TRACKED_FRAMES);
+
+        Map.Entry<Long, MessageView> parity = parityFrames.floorEntry(messageIndex);
+
+        if (parity == null || messageIndex >= parity.getKey() + getGroupSize(parity.getValue())) {
+            return Optional.empty();
+        }
+
+        return tryRecover(parity.getValue());
+    }
+
+    /**
+     * @param frame Pacote PARITY recebido do Sender
+     * @return O pacote reconstruído, caso somente um pacote do bloco esteja faltando
+     */
+    Optional<MessageView> onParityFrame(MessageView frame) {
+        if (!frame.hasMessageIndex() || !frame.hasField(MessageBodyType.PARITY.label)
+                || !(frame.getField(MessageBodyType.LENGTH.label) instanceof Integer)) {
+            return Optional.empty();
+        }
+
+        track(parityFrames, frame.getMessageIndex(), frame.detach());
+        trim(parityFrames, MAX_TRACKED_PARITIES);
+
+        return tryRecover(frame);
+    }
+
+    private Optional<MessageView> tryRecover(MessageView parityFrame) {
+        long groupStartIndex = parityFrame.getMessageIndex();
+        int groupSize = getGroupSize(parityFrame);
+        Long missingIndex = null;
+
+        for (long index = groupStartIndex; index < groupStartIndex + groupSize; index++) {
+            if (dataFrames.containsKey(index)) {
+                continue;
+            }
+
+            if (missingIndex != null) {
+                return Optional.empty();
+            }
+            missingIndex = index;
+        }
+
+        untrack(parityFrames.remove(groupStartIndex));
+
+        if (missingIndex == null) {
+            return Optional.empty();
+        }
+
+        byte[] recovered = (byte[]) parityFrame.getField(MessageBodyType.PARITY.label);
+        int length = (Integer) parityFrame.getField(MessageBodyType.LENGTH.label);
+
+        for (long index = groupStartIndex; index < groupStartIndex + groupSize; index++) {
+            MessageView frame = dataFrames.get(index);
+
+            if (frame == null) {
+                continue;
+            }
+
+            length ^= frame.getLength();
+            byte[] buffer = frame.getBuffer();
+            for (int i = 0; i < frame.getLength() && i < recovered.length; i++) {
+                recovered[i] ^= buffer[frame.getOffset() + i];
+            }
+        }
+
+        MessageView recoveredFrame = new MessageView();
+
+        if (length <= 0 || length > recovered.length || !recoveredFrame.wrap(recovered, 0, length)
+                || recoveredFrame.getMessageIndex() != missingIndex) {
+            return Optional.empty();
+        }
+
+        track(dataFrames, missingIndex, recoveredFrame);
+        return Optional.of(recoveredFrame);
+    }
+
+    /**
+     * @return Bytes dos buffers referenciados pelos pacotes mantidos
+     */
+    long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    private void track(NavigableMap<Long, MessageView> frames, long index, MessageView frame) {
+        untrack(frames.put(index, frame));
+        retainedBytes += frame.getBuffer().length;
+    }
+
+    private void untrack(MessageView frame) {
+        if (frame != null) {
+            retainedBytes -= frame.getBuffer().length;
+        }
+    }
+
+    private static int getGroupSize(MessageView parityFrame) {
+        Object groupSize = parityFrame.getField(MessageBodyType.GROUP_SIZE.label);
+        return groupSize instanceof Integer ? (Integer) groupSize : 0;
+    }
+
+    private void trim(NavigableMap<Long, MessageView> frames, int maxSize) {
+        while (frames.size() > maxSize) {
+            untrack(frames.pollFirstEntry().getValue());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Lado do Sender da correção de erros antecipada (FEC).
+ *
+ * As mensagens são agrupadas em blocos de índices consecutivos de tamanho groupSize e, quando todos os pacotes de um
+ * bloco são conhecidos, é gerado um pacote PARITY com o XOR de todos eles. Com ele o Receiver reconstrói um único
+ * pacote perdido do bloco sem esperar o reenvio por timeout. A redundância é 1/groupSize e, no modo adaptativo, o
+ * tamanho do bloco é recalculado a partir da taxa de perda observada pelo Sender.
+ *
+ * Usado somente pela thread do event loop, portanto não é thread-safe.
+ */
+final class FecEncoder {
+
+    static final int MIN_GROUP_SIZE = 2;
+    static final int MAX_GROUP_SIZE = 16;
+    /**
+     * Bytes que o PARITY acrescenta ao maior frame do bloco: cabeçalho, trailer e os campos além do XOR.
+     */
+    static final int PARITY_OVERHEAD = MessageCodec.HEADER_LENGTH + MessageCodec.CHECKSUM_LENGTH
+            + MessageCodec.fieldLength(MessageBodyType.GROUP_SIZE.label, Integer.BYTES)
+            + MessageCodec.fieldLength(MessageBodyType.LENGTH.label, Integer.BYTES)
+            + MessageCodec.fieldLength(MessageBodyType.PARITY.label, 0);
+
+    private final boolean adaptive;
+    private int groupSize;
+    /**
+     * Tamanho calculado pela última taxa de perda, aplicado quando o bloco atual for fechado.
+     */
+    private int nextGroupSize;
+    private long groupStartIndex;
+    private final NavigableMap<Long, byte[]> pendingFrames;
+
+    /**
+     * @param groupSize Quantidade de pacotes de dados cobertos por cada pacote de paridade
+     * @param adaptive true para recalcular o tamanho do bloco a partir da perda observada
+     * @param initialIndex Índice da primeira mensagem que será enviada
+     */
+    FecEncoder(int groupSize, boolean adaptive, long initialIndex) {
+        this.groupSize = clampGroupSize(groupSize);
+        this.nextGroupSize = this.groupSize;
+        this.adaptive = adaptive;
+        this.groupStartIndex = initialIndex;
+        this.pendingFrames = new TreeMap<>();
+    }
+
+    /**
+     * @return Tamanho do bloco atual
+     */
+    int getGroupSize() {
+        return groupSize;
+    }
+
+    /**
+     * Registra o pacote codificado de uma mensagem de dados.
+     *
+     * @param messageIndex Índice da mensagem
+     * @param frame Pacote codificado, com o trailer de checksum
+     * @return Pacotes de paridade dos blocos que ficaram completos, normalmente vazio ou com um único elemento
+     */
+    List<Message> add(long messageIndex, byte[] frame) {
+        List<Message> parityMessages = new ArrayList<>();
+
+        if (messageIndex < groupStartIndex) {
+            return parityMessages;
+        }
+
+        pendingFrames.put(messageIndex, frame);
+
+        while (isGroupComplete()) {
+            parityMessages.add(createParity());
+            groupStartIndex += groupSize;
+            groupSize = nextGroupSize;
+        }
+
+        return parityMessages;
+    }
+
+    /**
+     * Ajusta o tamanho do bloco para que, em média, no máximo um pacote seja perdido por bloco, que é o que uma única
+     * paridade XOR consegue recuperar. Só tem efeito no modo adaptativo e a partir do próximo bloco: o bloco atual,
+     * que já pode ter pacotes enviados, mantém o tamanho com que começou.
+     *
+     * @param lossRate Fração dos pacotes que precisou de reenvio
+     */
+    void updateLossRate(double lossRate) {
+        if (!adaptive) {
+            return;
+        }
+
+        nextGroupSize = lossRate <= 0 ? MAX_GROUP_SIZE : clampGroupSize((int) Math.round(1 / lossRate));
+    }
+
+    private boolean isGroupComplete() {
+        long groupEndIndex = groupStartIndex + groupSize - 1;
+        return pendingFrames.subMap(groupStartIndex, true, groupEndIndex, true).size() == groupSize;
+    }
+
+    private Message createParity() {
+        int maxLength = 0;
+        int xorLength = 0;
+
+        for (long index = groupStartIndex; index < groupStartIndex + groupSize; index++) {
+            int length = pendingFrames.get(index).length;
+            maxLength = Math.max(maxLength, length);
+            xorLength ^= length;
+        }
+
+        byte[] parity = new byte[maxLength];
+
+        for (long index = groupStartIndex; index < groupStartIndex + groupSize; index++) {
+            byte[] frame = pendingFrames.remove(index);
+            for (int i = 0; i < frame.length; i++) {
+                parity[i] ^= frame[i];
+            }
+        }
+
+        Message message = new Message(MessageType.PARITY, groupStartIndex);
+        message.addMessage(MessageBodyType.GROUP_SIZE.label, groupSize);
+        message.addMessage(MessageBodyType.LENGTH.label, xorLength);
+        message.addMessage(MessageBodyType.PARITY.label, parity);
+        return message;
+    }
+
+    private static int clampGroupSize(int groupSize) {
+        return Math.max(MIN_GROUP_SIZE, Math.min(MAX_GROUP_SIZE, groupSize));
+    }
+}
@@ -0,0 +1,86 @@
+package com.chatapp;
+
+/**
+ * Área pré-alocada onde o Sender guarda os frames já codificados das mensagens em voo, dividida em slots do tamanho
+ * máximo de um datagrama.
+ *
+ * O frame é codificado uma única vez, no registro da mensagem, e copiado para um slot; os reenvios e as cópias
+ * transmitem os bytes do slot diretamente, sem serializar a mensagem de novo. O slot é devolvido quando o ACK chega,
+ * assim a memória retida pelos frames fica limitada ao tamanho da janela e não cresce sob perda.
+ *
+ * Não é thread-safe, é usada somente pela thread do event loop.
+ */
+final class FrameSlab {
+
+    private final byte[] storage;
+    private final int slotSize;
+    /**
+     * Pilha dos slots livres, os slots devolvidos por último são reutilizados primeiro.
+     */
+    private final int[] freeSlots;
+    private int freeCount;
+
+    /**
+     * @param slotCount Quantidade de slots, normalmente o tamanho da janela
+     * @param slotSize Tamanho de cada slot, normalmente o tamanho máximo do datagrama
+     * @throws IllegalArgumentException Caso algum dos tamanhos não seja positivo
+     * @throws ArithmeticException Caso a área total não caiba em um array
+     */
+    FrameSlab(int slotCount, int slotSize) {
+        if (slotCount < 1 || slotSize < 1) {
+            throw new IllegalArgumentException("Tamanhos de slab inválidos: " + slotCount + " x " + slotSize);
+        }
+
+        this.storage = new byte[Math.multiplyExact(slotCount, slotSize)];
+        this.slotSize = slotSize;
+        this.freeSlots = new int[slotCount];
+        this.freeCount = slotCount;
+
+        for (int i = 0; i < slotCount; i++) {
+            freeSlots[i] = slotCount - 1 - i;
+        }
+    }
+
+    /**
+     * Copia o frame para um slot livre.
+     *
+     * @return Slot ocupado, ou -1 caso não haja slot livre ou o frame não caiba em um slot
+     */
+    int store(byte[] frame) {
+        if (freeCount == 0 || frame.length > slotSize) {
+            return -1;
+        }
+
+        int slot = freeSlots[--freeCount];
+        System.arraycopy(frame, 0, storage, offset(slot), frame.length);
+        return slot;
+    }
+
+    /**
+     * Devolve o slot obtido em {@link #store(byte[])}.
+     *
+     * @throws IllegalStateException Caso todos os slots já estejam livres, o que indica uma devolução repetida
+     */
+    void release(int slot) {
+        if (freeCount >= freeSlots.length) {
+            throw new IllegalStateException("Slot devolvido sem estar ocupado: " + slot);
+        }
+
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * @return Array compartilhado pelos slots, a ser lido a partir de {@link #offset(int)}
+     */
+    byte[] storage() {
+        return storage;
+    }
+
+    int offset(int slot) {
+        return slot * slotSize;
+    }
+
+    int getFreeSlots() {
+        return freeCount;
+    }
+}
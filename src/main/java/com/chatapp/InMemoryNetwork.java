@@ -0,0 +1,231 @@
+package com.chatapp;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rede simulada em memória para testes de carga sem sockets.
+ *
+ * Cada datagrama enviado pode ser descartado ou duplicado e recebe uma latência sorteada entre a mínima e a máxima, o
+ * que provoca reordenação. Todos os sorteios vêm de um Random com semente fixa e o tempo vem de um {@link Clock},
+ * normalmente um {@link VirtualClock}, assim a mesma semente reproduz exatamente a mesma execução.
+ *
+ * A rede é pensada para uma simulação em uma única thread, que avança o relógio até {@link #nextArrivalNanos()} ou até
+ * o próximo temporizador; por isso {@link Transport#await(long)} nunca bloqueia.
+ */
+public final class InMemoryNetwork {
+
+    private final Clock clock;
+    private final Random random;
+    private final double lossRate;
+    private final double duplicateRate;
+    private final long minLatencyNanos;
+    private final long maxLatencyNanos;
+
+    private final PriorityQueue<InFlightDatagram> inFlight;
+    private final Map<SocketAddress, Endpoint> endpoints;
+    private long sequence;
+    private long sentDatagrams;
+    private long droppedDatagrams;
+
+    /**
+     * @param seed Semente dos sorteios de perda, duplicação e latência
+     * @param clock Relógio da simulação
+     * @param lossRate Probabilidade de descarte de cada datagrama
+     * @param duplicateRate Probabilidade de entrega de uma cópia extra
+     * @param minLatency Latência mínima
+     * @param maxLatency Latência máxima, a diferença para a mínima define o quanto os datagramas são reordenados
+     * @param unit Unidade das latências
+     */
+    public InMemoryNetwork(long seed, Clock clock, double lossRate, double duplicateRate, long minLatency,
+            long maxLatency, TimeUnit unit) {
+        this.clock = clock;
+        this.random = new Random(seed);
+        this.lossRate = lossRate;
+        this.duplicateRate = duplicateRate;
+        this.minLatencyNanos = unit.toNanos(minLatency);
+        this.maxLatencyNanos = unit.toNanos(maxLatency);
+        this.inFlight = new PriorityQueue<>();
+        this.endpoints = new HashMap<>();
+    }
+
+    /**
+     * @param address Endereço do transporte na rede simulada
+     * @return Transporte que envia e recebe datagramas pela rede
+     */
+    public synchronized Transport bind(SocketAddress address) {
+        Endpoint endpoint = new Endpoint(address);
+        endpoints.put(address, endpoint);
+        return endpoint;
+    }
+
+    /**
+     * @return Instante de chegada do próximo datagrama em trânsito, ou Long.MAX_VALUE se não houver nenhum
+     */
+    public synchronized long nextArrivalNanos() {
+        return inFlight.isEmpty() ? Long.MAX_VALUE : inFlight.peek().arrivalNanos;
+    }
+
+    public synchronized long getSentDatagrams() {
+        return sentDatagrams;
+    }
+
+    public synchronized long getDroppedDatagrams() {
+        return droppedDatagrams;
+    }
+
+    private synchronized void transmit(SocketAddress source, SocketAddress target, byte[] frame) {
+        sentDatagrams++;
+
+        if (random.nextDouble() < lossRate) {
+            droppedDatagrams++;
+            return;
+        }
+
+        schedule(source, target, frame);
+
+        if (random.nextDouble() < duplicateRate) {
+            schedule(source, target, frame);
+        }
+    }
+
+    private void schedule(SocketAddress source, SocketAddress target, byte[] frame) {
+        long latency = minLatencyNanos;
+
+        if (maxLatencyNanos > minLatencyNanos) {
+            latency += (long) (random.nextDouble() * (maxLatencyNanos - minLatencyNanos));
+        }
+
+        inFlight.add(new InFlightDatagram(clock.nanoTime() + latency, sequence++, source, target, frame));
+    }
+
+    /**
+     * Move para as caixas de entrada os datagramas cuja chegada já passou, descartando os de destino desconhecido.
+     */
+    private synchronized void deliverDue() {
+        long now = clock.nanoTime();
+
+        while (!inFlight.isEmpty() && inFlight.peek().arrivalNanos <= now) {
+            InFlightDatagram datagram = inFlight.poll();
+            Endpoint endpoint = endpoints.get(datagram.target);
+
+            if (endpoint == null) {
+                droppedDatagrams++;
+                continue;
+            }
+
+            endpoint.inbox.add(datagram);
+        }
+    }
+
+    private synchronized InFlightDatagram pollInbox(Endpoint endpoint) {
+        deliverDue();
+        return endpoint.inbox.poll();
+    }
+
+    private synchronized void unbind(Endpoint endpoint) {
+        endpoints.remove(endpoint.address, endpoint);
+    }
+
+    /**
+     * Datagrama em trânsito, ordenado pela chegada e, em caso de empate, pela ordem de envio.
+     */
+    static final class InFlightDatagram implements Comparable<InFlightDatagram> {
+        private final long arrivalNanos;
+        private final long sequence;
+        private final SocketAddress source;
+        private final SocketAddress target;
+        private final byte[] frame;
+
+        /**
+         * @param arrivalNanos Instante de chegada no relógio virtual
+         * @param sequence Ordem de envio, usada no desempate
+         * @param source Endereço de origem
+         * @param target Endereço de destino
+         * @param frame Bytes do datagrama
+         */
+        InFlightDatagram(long arrivalNanos, long sequence, SocketAddress source, SocketAddress target, byte[] frame) {
+            this.arrivalNanos = arrivalNanos;
+            this.sequence = sequence;
+            this.source = source;
+            this.target = target;
+            this.frame = frame;
+        }
+
+        @Override
+        public int compareTo(InFlightDatagram other) {
+            int comparison = Long.compare(arrivalNanos, other.arrivalNanos);
+            return comparison != 0 ? comparison : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Transporte ligado a um endereço da rede simulada.
+     */
+    final class Endpoint implements Transport {
+        private final SocketAddress address;
+        private final Queue<InFlightDatagram> inbox;
+        private volatile boolean closed;
+
+        Endpoint(SocketAddress address) {
+            this.address = address;
+            this.inbox = new ArrayDeque<>();
+        }
+
+        @Override
+        public void send(SocketAddress target, byte[] frame, int offset, int length) throws IOException {
+            ensureOpen();
+            byte[] copy = new byte[length];
+            System.arraycopy(frame, offset, copy, 0, length);
+            transmit(address, target, copy);
+        }
+
+        @Override
+        public SocketAddress receive(ByteBuffer buffer) throws IOException {
+            ensureOpen();
+            InFlightDatagram datagram = pollInbox(this);
+
+            if (datagram == null) {
+                return null;
+            }
+
+            buffer.put(datagram.frame, 0, Math.min(datagram.frame.length, buffer.remaining()));
+            return datagram.source;
+        }
+
+        @Override
+        public void await(long timeoutNanos) throws IOException {
+            ensureOpen();
+        }
+
+        @Override
+        public void wakeup() {
+        }
+
+        @Override
+        public SocketAddress getLocalAddress() {
+            return address;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            unbind(this);
+        }
+
+        private void ensureOpen() throws IOException {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+        }
+    }
+}
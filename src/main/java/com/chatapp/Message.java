@@ -1,11 +1,6 @@
 package com.chatapp;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
@@ -31,17 +26,17 @@ public class Message implements Serializable {
     }
 
     /**
-     * Implementação auxiliar para atingir o item 3.1 - Cabeçalho do pacote
+     * Implementação auxiliar para atingir o item 3.1 - Cabeçalho do pacote.
      *
-     * O cabeçalho tem dois atributos, o messageType que é um enum que tem os valores PACKAGE e ACKNOWLEDGE e o messageIndex
-     * que representa o índice do pacote.
+     * O cabeçalho tem dois atributos, o messageType que é um enum que tem os valores PACKAGE e ACKNOWLEDGE e o
+     * messageIndex que representa o índice do pacote.
      */
     class Header implements Serializable {
 
         private final MessageType messageType;
         private final Long messageIndex;
 
-        public Header(MessageType messageType, Long messageIndex) {
+        Header(MessageType messageType, Long messageIndex) {
             this.messageType = messageType;
             this.messageIndex = messageIndex;
         }
@@ -71,20 +66,26 @@ public class Message implements Serializable {
 
         @Override
         public boolean equals(Object obj) {
-            if (this == obj)
+            if (this == obj) {
                 return true;
-            if (obj == null)
+            }
+            if (obj == null) {
                 return false;
-            if (getClass() != obj.getClass())
+            }
+            if (getClass() != obj.getClass()) {
                 return false;
+            }
             Header other = (Header) obj;
             if (messageIndex == null) {
-                if (other.messageIndex != null)
+                if (other.messageIndex != null) {
                     return false;
-            } else if (!messageIndex.equals(other.messageIndex))
+                }
+            } else if (!messageIndex.equals(other.messageIndex)) {
                 return false;
-            if (messageType != other.messageType)
+            }
+            if (messageType != other.messageType) {
                 return false;
+            }
             return true;
         }
 
@@ -119,7 +120,7 @@ public class Message implements Serializable {
     }
 
     /**
-     * Envia uma mensagem UDP
+     * Envia uma mensagem UDP.
      *
      * @param message Mensagem a ser enviada
      * @param address Endereço IP do destinatário
@@ -130,12 +131,7 @@ public class Message implements Serializable {
         InetAddress destinationAddress;
         try {
             destinationAddress = InetAddress.getByName(address);
-            ByteArrayOutputStream byteOutputStream = new ByteArrayOutputStream();
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(new BufferedOutputStream(byteOutputStream));
-
-            objectOutputStream.writeObject(message);
-            objectOutputStream.flush();
-            byte[] messageInBytes = byteOutputStream.toByteArray();
+            byte[] messageInBytes = MessageCodec.encode(message);
 
             DatagramPacket packet = new DatagramPacket(messageInBytes, messageInBytes.length, destinationAddress, port);
             socketUDP.send(packet);
@@ -151,7 +147,7 @@ public class Message implements Serializable {
      * @return devolve uma instância construída da Message recebida.
      */
     public static Message receiveUdpMessage(DatagramSocket socketUDP) {
-        byte[] receivedBytes = new byte[8 * 1024];
+        byte[] receivedBytes = new byte[ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE];
         DatagramPacket packet = new DatagramPacket(receivedBytes, receivedBytes.length);
 
         try {
@@ -160,21 +156,11 @@ public class Message implements Serializable {
             return null;
         }
 
-        try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(packet.getData());
-            ObjectInputStream inputObject = new ObjectInputStream(new BufferedInputStream(byteArrayInputStream));) {
-            return (Message) inputObject.readObject();
-        } catch (ClassNotFoundException | IOException e) {
-            return null;
-        }
+        return MessageCodec.decode(packet.getData(), packet.getOffset(), packet.getLength());
     }
 
-    public static Message deserializarBytes(byte[] bytes) throws IOException, ClassNotFoundException {
-        ByteArrayInputStream byteStream = new ByteArrayInputStream(bytes);
-        ObjectInputStream objectStream = new ObjectInputStream(byteStream);
-        Message message =  (Message) objectStream.readObject();
-        objectStream.close();
-
-        return message;
+    public static Message deserializarBytes(byte[] bytes) {
+        return MessageCodec.decode(bytes, 0, bytes.length);
     }
 
     @Override
@@ -185,23 +171,124 @@ public class Message implements Serializable {
     /**
      * Define quais os tipos de pacotes que podem ser enviado.
      * Para mensagens padrão é utilizado o PACKAGE, enquanto para ACK é utilizado o ACKNOWLEDGE.
+     * WINDOW_PROBE é a sonda enviada pelo Sender quando a janela anunciada pelo Receiver é zero, e WINDOW_UPDATE
+     * é a resposta do Receiver com o espaço disponível no buffer. PARITY carrega o XOR de um bloco de pacotes, usado
+     * pelo Receiver para reconstruir um pacote perdido sem reenvio. OPEN e ACCEPT formam o handshake que negocia os
+     * parâmetros da conexão. SKIP é enviado pelo Sender no lugar de uma mensagem cujo tempo de vida expirou, para que
+     * o Receiver avance a janela sem ela.
      */
-    public static enum MessageType {
+    public enum MessageType {
+        /**
+         * Mensagem de dados da aplicação.
+         */
         PACKAGE,
-        ACKNOWLEDGE
+        /**
+         * Confirmação de recebimento de um PACKAGE.
+         */
+        ACKNOWLEDGE,
+        /**
+         * Sonda de janela zero enviada pelo Sender.
+         */
+        WINDOW_PROBE,
+        /**
+         * Espaço disponível no buffer do Receiver.
+         */
+        WINDOW_UPDATE,
+        /**
+         * XOR de um bloco de pacotes, usado pelo FEC.
+         */
+        PARITY,
+        /**
+         * Início do handshake, com os parâmetros propostos.
+         */
+        OPEN,
+        /**
+         * Resposta ao handshake, com os parâmetros negociados.
+         */
+        ACCEPT,
+        /**
+         * Mantém a sessão ativa enquanto o Sender está ocioso.
+         */
+        KEEP_ALIVE,
+        /**
+         * Substitui uma mensagem cujo tempo de vida expirou.
+         */
+        SKIP
     }
 
     /**
      * Define os tipos de mensagens que podem estar contidas no pacote, as mensagens de texto são enviadas
      * via body.
      */
-    public static enum MessageBodyType {
+    public enum MessageBodyType {
+        /**
+         * Texto da mensagem.
+         */
         BODY("body"),
-        INDEX("index");
-
+        /**
+         * Índice da mensagem.
+         */
+        INDEX("index"),
+        /**
+         * Janela anunciada pelo Receiver.
+         */
+        WINDOW("window"),
+        /**
+         * Quantidade de pacotes do bloco protegido por um PARITY.
+         */
+        GROUP_SIZE("groupSize"),
+        /**
+         * XOR dos tamanhos dos frames do bloco de um PARITY.
+         */
+        LENGTH("length"),
+        /**
+         * XOR dos frames do bloco de um PARITY.
+         */
+        PARITY("parity"),
+        /**
+         * Tamanho máximo do datagrama, negociado no handshake.
+         */
+        MAX_DATAGRAM_SIZE("maxDatagramSize"),
+        /**
+         * Tamanho da janela, negociado no handshake.
+         */
+        WINDOW_LENGTH("windowLength"),
+        /**
+         * Intervalo de reenvio, negociado no handshake.
+         */
+        RESEND_PERIOD("resendPeriod"),
+        /**
+         * Política de ACK, negociada no handshake.
+         */
+        ACK_POLICY("ackPolicy"),
+        /**
+         * Funcionalidades opcionais, negociadas no handshake.
+         */
+        FEATURES("features"),
+        /**
+         * Stream ao qual a mensagem pertence.
+         */
+        STREAM("stream"),
+        /**
+         * Posição da mensagem dentro do seu stream.
+         */
+        STREAM_INDEX("streamIndex"),
+        /**
+         * Índices confirmados junto com um pacote de dados.
+         */
+        ACKS("acks"),
+        /**
+         * Número de sequência do conjunto de ACKs e da janela.
+         */
+        ACK_SEQUENCE("ackSequence");
+
+        /**
+         * Chave do campo no corpo da mensagem.
+         */
+        @SuppressWarnings("checkstyle:VisibilityModifier")
         public final String label;
 
-        private MessageBodyType(String label) {
+        MessageBodyType(String label) {
             this.label = label;
         }
     }
@@ -216,18 +303,23 @@ public class Message implements Serializable {
 
     @Override
     public boolean equals(Object obj) {
-        if (this == obj)
+        if (this == obj) {
             return true;
-        if (obj == null)
+        }
+        if (obj == null) {
             return false;
-        if (getClass() != obj.getClass())
+        }
+        if (getClass() != obj.getClass()) {
             return false;
+        }
         Message other = (Message) obj;
         if (header == null) {
-            if (other.header != null)
+            if (other.header != null) {
                 return false;
-        } else if (!header.equals(other.header))
+            }
+        } else if (!header.equals(other.header)) {
             return false;
+        }
         return true;
     }
 }
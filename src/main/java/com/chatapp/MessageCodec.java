@@ -0,0 +1,265 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageType;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Codifica e decodifica o formato binário dos pacotes trocados entre Sender e Receiver.
+ *
+ * O formato é composto por um cabeçalho de tamanho fixo seguido pelos campos do corpo da mensagem:
+ *
+ * <pre>
+ * [tipo: 1 byte][flags: 1 byte][índice: 8 bytes][quantidade de campos: 2 bytes]
+ * [tamanho da chave: 2 bytes][chave UTF-8][tag do valor: 1 byte][tamanho do valor: 4 bytes][valor] ...
+ * [CRC32C: 4 bytes]
+ * </pre>
+ *
+ * Como o cabeçalho tem posições fixas, o {@link MessageView} consegue ler tipo e índice diretamente do buffer recebido,
+ * sem construir instâncias de Message. O CRC32C ao final cobre todos os bytes anteriores e é verificado antes de
+ * qualquer decodificação, de forma que pacotes corrompidos ou truncados são descartados sem lançar exceções.
+ *
+ * @author Maik Henrique
+ */
+public final class MessageCodec {
+
+    static final int TYPE_OFFSET = 0;
+    static final int FLAGS_OFFSET = 1;
+    static final int INDEX_OFFSET = 2;
+    static final int FIELD_COUNT_OFFSET = 10;
+    static final int HEADER_LENGTH = 12;
+    static final int CHECKSUM_LENGTH = Integer.BYTES;
+
+    static final byte FLAG_HAS_INDEX = 1;
+
+    static final byte TAG_STRING = 1;
+    static final byte TAG_INTEGER = 2;
+    static final byte TAG_LONG = 3;
+    static final byte TAG_BYTES = 4;
+
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+    private static final int UTF8_ONE_BYTE_MAX = 0x7F;
+    private static final int UTF8_TWO_BYTES_MAX = 0x7FF;
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Converte uma mensagem para o formato binário. Somente strings, inteiros, longs e arrays de bytes são aceitos como
+     * valores dos campos; o formato não carrega objetos serializados, que exigiriam desserializar bytes recebidos da
+     * rede.
+     *
+     * @param message Mensagem a ser codificada
+     * @return bytes do pacote
+     * @throws IllegalArgumentException Caso algum campo tenha um valor de outro tipo
+     */
+    public static byte[] encode(Message message) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Long messageIndex = message.getHeader().getMessageIndex();
+        Map<String, Object> fields = message.getMessages();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put((byte) message.getHeader().getMessageType().ordinal());
+        header.put(messageIndex == null ? 0 : FLAG_HAS_INDEX);
+        header.putLong(messageIndex == null ? 0 : messageIndex);
+        header.putShort((short) fields.size());
+        output.write(header.array(), 0, HEADER_LENGTH);
+
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            writeField(output, field.getKey(), field.getValue());
+        }
+
+        output.write(new byte[CHECKSUM_LENGTH], 0, CHECKSUM_LENGTH);
+        byte[] frame = output.toByteArray();
+        int checksumOffset = frame.length - CHECKSUM_LENGTH;
+        ByteBuffer.wrap(frame, checksumOffset, CHECKSUM_LENGTH).putInt(checksum(frame, 0, checksumOffset));
+
+        return frame;
+    }
+
+    /**
+     * Calcula o tamanho do pacote que {@link #encode(Message)} produziria, sem codificá-lo. Usado para rejeitar na
+     * thread da aplicação as mensagens maiores que o tamanho máximo de datagrama negociado.
+     *
+     * @param message Mensagem a ser medida
+     * @return Tamanho do pacote em bytes, incluindo cabeçalho e trailer
+     * @throws IllegalArgumentException Caso algum campo tenha um valor de outro tipo
+     */
+    public static int encodedLength(Message message) {
+        int length = HEADER_LENGTH + CHECKSUM_LENGTH;
+
+        for (Map.Entry<String, Object> field : message.getMessages().entrySet()) {
+            length += fieldLength(field.getKey(), valueLength(field.getKey(), field.getValue()));
+        }
+
+        return length;
+    }
+
+    /**
+     * @param key Chave do campo
+     * @param valueLength Tamanho do valor já codificado
+     * @return Tamanho do campo no pacote, incluindo a chave, a tag e o tamanho do valor
+     */
+    static int fieldLength(String key, int valueLength) {
+        return Short.BYTES + utf8Length(key) + 1 + Integer.BYTES + valueLength;
+    }
+
+    /**
+     * Verifica o CRC32C do trailer do pacote. O java.util.zip.CRC32C é intrínseco da JIT, assim o custo da verificação
+     * é pequeno se comparado à decodificação que ela evita para pacotes inválidos.
+     *
+     * @param frame Buffer recebido
+     * @param offset Início do pacote
+     * @param length Tamanho do pacote, incluindo o trailer
+     * @return true se o pacote tem tamanho mínimo e o checksum confere
+     */
+    public static boolean hasValidChecksum(byte[] frame, int offset, int length) {
+        if (length < HEADER_LENGTH + CHECKSUM_LENGTH || offset + length > frame.length) {
+            return false;
+        }
+
+        int checksumOffset = offset + length - CHECKSUM_LENGTH;
+        int expected = ByteBuffer.wrap(frame, checksumOffset, CHECKSUM_LENGTH).getInt();
+        return checksum(frame, offset, length - CHECKSUM_LENGTH) == expected;
+    }
+
+    /**
+     * @return CRC32C dos bytes, o valor gravado no trailer de checksum
+     */
+    static int checksum(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Constrói uma instância completa de Message a partir dos bytes recebidos.
+     *
+     * @param bytes Buffer recebido
+     * @param offset Início do pacote no buffer
+     * @param length Tamanho do pacote
+     * @return Mensagem decodificada ou null caso o pacote seja inválido
+     */
+    public static Message decode(byte[] bytes, int offset, int length) {
+        MessageView view = new MessageView();
+        return view.wrap(bytes, offset, length) ? view.toMessage() : null;
+    }
+
+    static MessageType toMessageType(byte ordinal) {
+        return ordinal >= 0 && ordinal < MESSAGE_TYPES.length ? MESSAGE_TYPES[ordinal] : null;
+    }
+
+    private static void writeField(ByteArrayOutputStream output, String key, Object value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte tag;
+        byte[] valueBytes;
+
+        if (value instanceof String) {
+            tag = TAG_STRING;
+            valueBytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+        } else if (value instanceof Integer) {
+            tag = TAG_INTEGER;
+            valueBytes = ByteBuffer.allocate(Integer.BYTES).putInt((Integer) value).array();
+        } else if (value instanceof Long) {
+            tag = TAG_LONG;
+            valueBytes = ByteBuffer.allocate(Long.BYTES).putLong((Long) value).array();
+        } else if (value instanceof byte[]) {
+            tag = TAG_BYTES;
+            valueBytes = (byte[]) value;
+        } else {
+            throw new IllegalArgumentException("Tipo de valor não suportado no campo " + key + ": "
+                    + (value == null ? null : value.getClass().getName()));
+        }
+
+        ByteBuffer fieldHeader = ByteBuffer.allocate(Short.BYTES + keyBytes.length + 1 + Integer.BYTES);
+        fieldHeader.putShort((short) keyBytes.length).put(keyBytes).put(tag).putInt(valueBytes.length);
+        output.write(fieldHeader.array(), 0, fieldHeader.capacity());
+        output.write(valueBytes, 0, valueBytes.length);
+    }
+
+    private static int valueLength(String key, Object value) {
+        if (value instanceof String) {
+            return utf8Length((String) value);
+        } else if (value instanceof Integer) {
+            return Integer.BYTES;
+        } else if (value instanceof Long) {
+            return Long.BYTES;
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+
+        throw new IllegalArgumentException("Tipo de valor não suportado no campo " + key + ": "
+                + (value == null ? null : value.getClass().getName()));
+    }
+
+    /**
+     * Tamanho em UTF-8 sem alocar o array de bytes; um surrogate isolado conta como o '?' de substituição do encoder.
+     */
+    private static int utf8Length(String value) {
+        int length = 0;
+        int i = 0;
+
+        while (i < value.length()) {
+            int codePoint = value.codePointAt(i);
+            i += Character.charCount(codePoint);
+            length++;
+
+            if (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE) {
+                continue;
+            }
+            if (codePoint > UTF8_ONE_BYTE_MAX) {
+                length++;
+            }
+            if (codePoint > UTF8_TWO_BYTES_MAX) {
+                length++;
+            }
+            if (codePoint > Character.MAX_VALUE) {
+                length++;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * @param tag Tag do valor lida do pacote
+     * @param length Tamanho do valor lido do pacote
+     * @return true se a tag é conhecida e o tamanho é compatível com ela
+     */
+    static boolean isValidValue(byte tag, int length) {
+        switch (tag) {
+            case TAG_STRING:
+            case TAG_BYTES:
+                return length >= 0;
+            case TAG_INTEGER:
+                return length == Integer.BYTES;
+            case TAG_LONG:
+                return length == Long.BYTES;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Lê um valor já validado com {@link #isValidValue(byte, int)}.
+     */
+    static Object readValue(byte tag, byte[] bytes, int offset, int length) {
+        switch (tag) {
+            case TAG_STRING:
+                return new String(bytes, offset, length, StandardCharsets.UTF_8);
+            case TAG_INTEGER:
+                return ByteBuffer.wrap(bytes, offset, length).getInt();
+            case TAG_LONG:
+                return ByteBuffer.wrap(bytes, offset, length).getLong();
+            case TAG_BYTES:
+                byte[] copy = new byte[length];
+                System.arraycopy(bytes, offset, copy, 0, length);
+                return copy;
+            default:
+                throw new IllegalArgumentException("Tag de valor desconhecida: " + tag);
+        }
+    }
+}
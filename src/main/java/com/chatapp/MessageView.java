@@ -0,0 +1,229 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageType;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Flyweight de leitura sobre um pacote no formato do {@link MessageCodec}.
+ *
+ * Tipo e índice são lidos diretamente do buffer recebido e os campos do corpo só são decodificados quando acessados,
+ * assim o Receiver pode validar, ordenar e descartar pacotes sem construir instâncias de Message. Somente as mensagens
+ * entregues para a aplicação pagam o custo de {@link #toMessage()}.
+ *
+ * A instância pode ser reutilizada com {@link #wrap(byte[], int, int)} e não copia o buffer, portanto quem a mantém
+ * deve garantir que o buffer não seja reescrito.
+ */
+public final class MessageView {
+
+    private static final int BYTE_MASK = 0xFF;
+    private static final long INT_MASK = 0xFFFFFFFFL;
+    /**
+     * Maior caractere codificado em UTF-8 com um único byte.
+     */
+    private static final char MAX_ASCII = 0x7F;
+
+    private byte[] buffer;
+    private int offset;
+    private int length;
+
+    /**
+     * Aponta a view para um novo pacote, verificando o checksum antes de qualquer leitura e validando que o cabeçalho e
+     * os limites de todos os campos estão dentro do buffer e que todos os valores têm uma tag conhecida.
+     *
+     * @param source Buffer recebido
+     * @param sourceOffset Início do pacote
+     * @param sourceLength Tamanho do pacote, incluindo o trailer de checksum
+     * @return false se o pacote está truncado, corrompido ou tem um valor de tipo desconhecido
+     */
+    public boolean wrap(byte[] source, int sourceOffset, int sourceLength) {
+        this.buffer = source;
+        this.offset = sourceOffset;
+        this.length = sourceLength;
+
+        if (!MessageCodec.hasValidChecksum(buffer, offset, length) || getMessageType() == null) {
+            return false;
+        }
+
+        return findField(null) == length - MessageCodec.CHECKSUM_LENGTH;
+    }
+
+    public MessageType getMessageType() {
+        return MessageCodec.toMessageType(buffer[offset + MessageCodec.TYPE_OFFSET]);
+    }
+
+    public boolean hasMessageIndex() {
+        return (buffer[offset + MessageCodec.FLAGS_OFFSET] & MessageCodec.FLAG_HAS_INDEX) != 0;
+    }
+
+    /**
+     * @return Índice do pacote, sem checar a flag, ou seja, 0 caso o pacote não tenha índice
+     */
+    public long getMessageIndex() {
+        return readLong(offset + MessageCodec.INDEX_OFFSET);
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return Tamanho do pacote, incluindo o trailer de checksum
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getFieldCount() {
+        return readShort(offset + MessageCodec.FIELD_COUNT_OFFSET);
+    }
+
+    public boolean hasField(String key) {
+        return findField(key) >= 0;
+    }
+
+    /**
+     * Decodifica somente o campo pedido.
+     *
+     * @param key Chave do campo, como os labels de MessageBodyType
+     * @return Valor decodificado ou null caso o campo não exista
+     */
+    public Object getField(String key) {
+        int position = findField(key);
+
+        if (position < 0) {
+            return null;
+        }
+
+        int valuePosition = position + Short.BYTES + readShort(position);
+        return MessageCodec.readValue(buffer[valuePosition], buffer, valuePosition + 1 + Integer.BYTES,
+                readInt(valuePosition + 1));
+    }
+
+    /**
+     * @return Cópia dos bytes do pacote, independente do buffer original
+     */
+    public byte[] toBytes() {
+        byte[] copy = new byte[length];
+        System.arraycopy(buffer, offset, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * @return Nova view sobre uma cópia dos bytes do pacote, sem validá-lo novamente, para ser mantida depois que o
+     *         buffer original for reutilizado
+     */
+    public MessageView detach() {
+        MessageView copy = new MessageView();
+        copy.buffer = toBytes();
+        copy.offset = 0;
+        copy.length = length;
+        return copy;
+    }
+
+    /**
+     * Materializa a mensagem completa, com cabeçalho e todos os campos do corpo.
+     *
+     * @return Nova instância de Message
+     */
+    public Message toMessage() {
+        Message message = new Message(getMessageType(), hasMessageIndex() ? getMessageIndex() : null);
+        int position = offset + MessageCodec.HEADER_LENGTH;
+
+        for (int i = 0; i < getFieldCount(); i++) {
+            int keyLength = readShort(position);
+            String key = new String(buffer, position + Short.BYTES, keyLength, StandardCharsets.UTF_8);
+            int valuePosition = position + Short.BYTES + keyLength;
+            int valueLength = readInt(valuePosition + 1);
+            int valueStart = valuePosition + 1 + Integer.BYTES;
+
+            message.addMessage(key, MessageCodec.readValue(buffer[valuePosition], buffer, valueStart, valueLength));
+            position = valueStart + valueLength;
+        }
+
+        return message;
+    }
+
+    /**
+     * Percorre os campos somente pelos tamanhos, sem decodificar valores.
+     *
+     * @param key Chave procurada, ou null para somente validar os limites
+     * @return Posição absoluta do campo encontrado; quando key é null, o tamanho total percorrido; -1 caso o campo não
+     *         exista ou os limites sejam inválidos
+     */
+    private int findField(String key) {
+        int end = offset + length - MessageCodec.CHECKSUM_LENGTH;
+        int position = offset + MessageCodec.HEADER_LENGTH;
+
+        for (int i = 0; i < getFieldCount(); i++) {
+            if (position + Short.BYTES > end) {
+                return -1;
+            }
+
+            int keyLength = readShort(position);
+            int valuePosition = position + Short.BYTES + keyLength;
+
+            if (valuePosition + 1 + Integer.BYTES > end) {
+                return -1;
+            }
+
+            int valueStart = valuePosition + 1 + Integer.BYTES;
+            int valueLength = readInt(valuePosition + 1);
+
+            // compara com o espaço restante antes de somar, um tamanho próximo de Integer.MAX_VALUE estouraria o int
+            if (!MessageCodec.isValidValue(buffer[valuePosition], valueLength) || valueLength > end - valueStart) {
+                return -1;
+            }
+
+            int next = valueStart + valueLength;
+
+            if (key != null && keyEquals(position + Short.BYTES, keyLength, key)) {
+                return position;
+            }
+
+            position = next;
+        }
+
+        return key == null ? position - offset : -1;
+    }
+
+    private boolean keyEquals(int position, int keyLength, String key) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) > MAX_ASCII) {
+                return key.equals(new String(buffer, position, keyLength, StandardCharsets.UTF_8));
+            }
+        }
+
+        if (keyLength != key.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < keyLength; i++) {
+            if (buffer[position + i] != (byte) key.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int readShort(int position) {
+        return ((buffer[position] & BYTE_MASK) << Byte.SIZE) | (buffer[position + 1] & BYTE_MASK);
+    }
+
+    private int readInt(int position) {
+        return (readShort(position) << Short.SIZE) | readShort(position + Short.BYTES);
+    }
+
+    private long readLong(int position) {
+        return ((long) readInt(position) << Integer.SIZE) | (readInt(position + Integer.BYTES) & INT_MASK);
+    }
+
+    @Override
+    public String toString() {
+        return "MessageView [messageIndex=" + getMessageIndex() + ", messageType=" + getMessageType() + "]";
+    }
+}
@@ -0,0 +1,301 @@
+package com.chatapp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Captura binária dos pacotes enviados e recebidos, gravada em um arquivo mapeado em memória.
+ *
+ * Cada registro guarda o instante em nanossegundos do {@link Clock} da captura (System.nanoTime, ou o relógio virtual
+ * de uma simulação, portanto só as diferenças entre registros têm significado), a direção, o endereço do outro lado e
+ * os bytes do pacote exatamente como trafegaram. Gravar um registro é somente uma cópia para a região mapeada; o
+ * sistema operacional descarrega as páginas no arquivo em segundo plano. Quando a região atual enche, a próxima é
+ * mapeada a partir do fim dos dados.
+ *
+ * Formato do arquivo, big-endian: magic (4 bytes), versão (4 bytes) e, para cada registro, o tamanho do restante do
+ * registro (4 bytes), o instante (8 bytes), a direção (1 byte), o tamanho do endereço IP (1 byte), o endereço IP, a
+ * porta (2 bytes) e o pacote. Um tamanho zero marca o fim dos dados, caso o arquivo não tenha sido fechado.
+ *
+ * A captura é ligada no Sender e no Receiver com a propriedade de sistema {@value #CAPTURE_FILE_PROPERTY}.
+ */
+public final class PacketCapture implements AutoCloseable {
+
+    /**
+     * Propriedade de sistema com o caminho do arquivo da captura.
+     */
+    public static final String CAPTURE_FILE_PROPERTY = "chatapp.capture";
+
+    static final int MAGIC = 0x43485043;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_LENGTH = 8;
+    /**
+     * Tamanho padrão de cada região mapeada, 4 Mb.
+     */
+    static final int DEFAULT_REGION_SIZE = 4 * 1024 * 1024;
+    private static final int RECORD_FIXED_LENGTH = 8 + 1 + 1 + 2;
+
+    /**
+     * Direção do pacote do ponto de vista de quem gravou a captura.
+     */
+    public enum Direction {
+        /**
+         * Pacote transmitido por quem gravou a captura.
+         */
+        SENT,
+        /**
+         * Pacote recebido por quem gravou a captura.
+         */
+        RECEIVED
+    }
+
+    private final FileChannel channel;
+    private final Clock clock;
+    private final int regionSize;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+    private boolean closed;
+
+    PacketCapture(Path file, int regionSize) throws IOException {
+        this(file, regionSize, Clock.SYSTEM);
+    }
+
+    /**
+     * @param file Arquivo da captura, truncado se já existir
+     * @param regionSize Tamanho de cada região mapeada
+     * @param clock Relógio dos instantes gravados
+     * @throws IOException
+     */
+    PacketCapture(Path file, int regionSize, Clock clock) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.clock = clock;
+        this.regionSize = regionSize;
+        this.regionStart = 0;
+        this.region = channel.map(FileChannel.MapMode.READ_WRITE, 0, regionSize);
+        this.region.putInt(MAGIC).putInt(VERSION);
+        this.position = FILE_HEADER_LENGTH;
+    }
+
+    /**
+     * Cria o arquivo de captura, sobrescrevendo um arquivo existente.
+     *
+     * @param file Arquivo de captura
+     * @return Captura pronta para gravar
+     * @throws IOException
+     */
+    public static PacketCapture create(Path file) throws IOException {
+        return new PacketCapture(file, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Cria o arquivo de captura com os instantes de um relógio próprio, usado nas simulações para que a captura possa
+     * ser reproduzida com {@link CaptureReplay#replay(Path, Direction, InMemoryNetwork, VirtualClock, Receiver,
+     * SocketAddress)}.
+     *
+     * @param file Arquivo de captura
+     * @param clock Relógio dos instantes gravados
+     * @return Captura pronta para gravar
+     * @throws IOException
+     */
+    public static PacketCapture create(Path file, Clock clock) throws IOException {
+        return new PacketCapture(file, DEFAULT_REGION_SIZE, clock);
+    }
+
+    /**
+     * @return Captura do arquivo indicado na propriedade {@value #CAPTURE_FILE_PROPERTY}, ou null se não definida
+     * @throws IOException
+     */
+    public static PacketCapture fromSystemProperty() throws IOException {
+        String file = System.getProperty(CAPTURE_FILE_PROPERTY);
+        return file == null || file.isEmpty() ? null : create(Paths.get(file));
+    }
+
+    /**
+     * Grava um pacote. Pode ser chamado por várias threads; uma falha de I/O encerra a captura sem afetar o protocolo.
+     *
+     * @param direction Direção do pacote
+     * @param peer Endereço IP e porta do outro lado
+     * @param frame Buffer com o pacote
+     * @param offset Início do pacote no buffer
+     * @param length Tamanho do pacote
+     */
+    public synchronized void record(Direction direction, SocketAddress peer, byte[] frame, int offset, int length) {
+        if (closed) {
+            return;
+        }
+
+        InetSocketAddress peerAddress = (InetSocketAddress) peer;
+        byte[] address = peerAddress.getAddress().getAddress();
+        int recordLength = RECORD_FIXED_LENGTH + address.length + length;
+
+        try {
+            ensureCapacity(Integer.BYTES + recordLength);
+        } catch (IOException e) {
+            e.printStackTrace();
+            closed = true;
+            return;
+        }
+
+        region.position((int) (position - regionStart));
+        region.putInt(recordLength)
+                .putLong(clock.nanoTime())
+                .put((byte) direction.ordinal())
+                .put((byte) address.length)
+                .put(address)
+                .putShort((short) peerAddress.getPort())
+                .put(frame, offset, length);
+        position += Integer.BYTES + recordLength;
+    }
+
+    /**
+     * Mapeia uma nova região a partir do fim dos dados caso o registro não caiba na região atual, mantendo espaço para
+     * o marcador de fim.
+     */
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length + Integer.BYTES <= regionStart + region.capacity()) {
+            return;
+        }
+
+        regionStart = position;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart,
+                Math.max(regionSize, length + Integer.BYTES));
+    }
+
+    /**
+     * Descarta o espaço mapeado e não usado no fim do arquivo.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+
+        closed = true;
+        region.force();
+        channel.truncate(position);
+        channel.close();
+    }
+
+    /**
+     * Pacote lido de uma captura.
+     */
+    public static final class CapturedPacket {
+        private final long timestampNanos;
+        private final Direction direction;
+        private final InetSocketAddress peer;
+        private final byte[] frame;
+
+        /**
+         * @param timestampNanos Instante da gravação no relógio da captura
+         * @param direction Direção do pacote
+         * @param peer Endereço do outro lado
+         * @param frame Bytes do pacote
+         */
+        CapturedPacket(long timestampNanos, Direction direction, InetSocketAddress peer, byte[] frame) {
+            this.timestampNanos = timestampNanos;
+            this.direction = direction;
+            this.peer = peer;
+            this.frame = frame;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public Direction getDirection() {
+            return direction;
+        }
+
+        public InetSocketAddress getPeer() {
+            return peer;
+        }
+
+        public byte[] getFrame() {
+            return frame;
+        }
+    }
+
+    /**
+     * Leitura sequencial de uma captura, mapeando o arquivo inteiro somente para leitura.
+     */
+    public static final class Reader implements AutoCloseable {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Reader(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @param file Arquivo de captura
+         * @return Leitor posicionado no primeiro registro
+         * @throws IOException Caso o arquivo não seja uma captura ou seja grande demais para um único mapeamento
+         */
+        public static Reader open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+
+            try {
+                if (channel.size() < FILE_HEADER_LENGTH || channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Arquivo de captura inválido: " + file);
+                }
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                    throw new IOException("Arquivo de captura inválido: " + file);
+                }
+
+                return new Reader(channel, buffer);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return Próximo pacote, ou null no fim dos dados ou em um registro incompleto
+         */
+        public CapturedPacket next() {
+            if (buffer.remaining() < Integer.BYTES) {
+                return null;
+            }
+
+            int recordLength = buffer.getInt();
+
+            if (recordLength < RECORD_FIXED_LENGTH || recordLength > buffer.remaining()) {
+                return null;
+            }
+
+            try {
+                long timestampNanos = buffer.getLong();
+                Direction direction = Direction.values()[buffer.get()];
+                byte[] address = new byte[buffer.get()];
+                buffer.get(address);
+                int port = Short.toUnsignedInt(buffer.getShort());
+                byte[] frame = new byte[recordLength - RECORD_FIXED_LENGTH - address.length];
+                buffer.get(frame);
+
+                return new CapturedPacket(timestampNanos, direction,
+                        new InetSocketAddress(InetAddress.getByAddress(address), port), frame);
+            } catch (IOException | BufferUnderflowException | ArrayIndexOutOfBoundsException
+                    | NegativeArraySizeException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.chatapp;
+
+import com.chatapp.ConnectionParameters.AckPolicy;
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import com.chatapp.TimerQueue.ScheduledTask;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Ponta de uma conversa bidirecional: as duas metades do SR, envio e recebimento, sobre um único transporte.
+ *
+ * A metade de envio segue o {@link SenderEventLoop}, com a mesma {@link SenderSession} e os frames guardados no
+ * {@link FrameSlab}; a metade de recebimento usa a mesma {@link ReceiverSession} do Receiver. Com a política
+ * {@link AckPolicy#DELAYED}, os índices recebidos não são confirmados na hora: eles vão no campo ACKS do próximo pacote
+ * de dados enviado ao outro lado, junto com a janela disponível, e só são enviados em um ACK avulso se nenhum dado sair
+ * em {@link #DEFAULT_ACKNOWLEDGE_DELAY_MILLIS}, ou se acumularem meia janela. Em uma conversa, em que cada lado
+ * responde ao outro, quase todos os ACKs viajam nos dados e a quantidade de datagramas cai para perto da metade.
+ *
+ * Os reenvios transmitem o frame como foi codificado na primeira transmissão, com os ACKs e a janela daquele momento.
+ * Confirmar de novo um índice não tem efeito, mas a janela de um frame reenviado ou atrasado pode estar vencida; por
+ * isso cada conjunto de ACKs e janela leva um número de sequência crescente, o campo ACK_SEQUENCE, e a janela só é
+ * aplicada quando vem com um número maior que o do último aplicado. Streams, FEC, KEEP_ALIVE e tempo de vida não são
+ * usados pelo Peer.
+ *
+ * Uma única thread é dona de todo o estado, como em todo {@link ProtocolEventLoop}, e o handler da aplicação é
+ * executado nela; em simulações o teste conduz o event loop com {@link #poll()}.
+ */
+public final class Peer extends ProtocolEventLoop {
+
+    /**
+     * Atraso máximo de um ACK à espera de um pacote de dados no sentido contrário, bem menor que o período de reenvio.
+     */
+    public static final long DEFAULT_ACKNOWLEDGE_DELAY_MILLIS = 20L;
+
+    private final SocketAddress remoteAddress;
+    private final ConnectionParameters localParameters;
+
+    /**
+     * Metade de envio: handshake, janela e janela anunciada pelo outro lado.
+     */
+    private final SenderSession<InFlightFrame> sendSession;
+    private final CompletableFuture<ConnectionParameters> acceptedParameters;
+    private final FrameSlab frameSlab;
+    /**
+     * Número de sequência dos ACKs com a última janela aplicada; janelas com números menores ou iguais são vencidas.
+     */
+    private long advertisedWindowSequence;
+
+    /**
+     * Metade de recebimento: janela e buffer do SR para as mensagens do outro lado.
+     */
+    private final ReceiverSession session;
+    private final Queue<MessageView> deliveryQueue;
+    private final Receiver.DeliveryHandler deliveryHandler;
+    /**
+     * Índices recebidos e ainda não confirmados, enviados no próximo pacote de dados ou no ACK avulso.
+     */
+    private final ByteBuffer unsentAcknowledges;
+    /**
+     * Bytes reservados em cada frame de dados para os ACKs, a janela e o número de sequência que podem ir junto.
+     */
+    private final int reservedFrameLength;
+    /**
+     * Número de sequência do último conjunto de ACKs e janela enviado ao outro lado.
+     */
+    private long acknowledgeSequence;
+    private ScheduledTask acknowledgeTask;
+
+    /**
+     * @param port Porta local, usada para enviar e receber
+     * @param remoteAddress Endereço do outro lado
+     * @param localParameters Parâmetros propostos para a metade de envio e limites locais da metade de recebimento
+     * @param deliveryHandler Handler da aplicação, executado na thread do event loop
+     * @throws IOException
+     */
+    public Peer(int port, SocketAddress remoteAddress, ConnectionParameters localParameters,
+            Receiver.DeliveryHandler deliveryHandler) throws IOException {
+        this(DatagramTransport.bind(port), remoteAddress, localParameters, deliveryHandler, Clock.SYSTEM);
+    }
+
+    /**
+     * @param transport Transporte do Peer, fechado junto com ele
+     * @param remoteAddress Endereço do outro lado
+     * @param localParameters Parâmetros propostos para a metade de envio e limites locais da metade de recebimento
+     * @param deliveryHandler Handler da aplicação, executado na thread do event loop
+     * @param clock Relógio dos temporizadores
+     */
+    public Peer(Transport transport, SocketAddress remoteAddress, ConnectionParameters localParameters,
+            Receiver.DeliveryHandler deliveryHandler, Clock clock) {
+        super(transport, clock, "peer-event-loop", localParameters.getMaxDatagramSize(),
+                localParameters.getWindowLength());
+        this.remoteAddress = remoteAddress;
+        this.localParameters = localParameters;
+        this.sendSession = new SenderSession<>(remoteAddress, localParameters);
+        this.acceptedParameters = new CompletableFuture<>();
+        this.frameSlab = new FrameSlab(localParameters.getWindowLength(), localParameters.getMaxDatagramSize());
+
+        this.session = new ReceiverSession(remoteAddress, clock.nanoTime());
+        this.session.reset(localParameters);
+        this.deliveryQueue = new ArrayDeque<>();
+        this.deliveryHandler = deliveryHandler;
+        this.unsentAcknowledges = ByteBuffer.allocate(localParameters.getWindowLength() * Long.BYTES);
+        this.reservedFrameLength = MessageCodec.fieldLength(MessageBodyType.ACKS.label, unsentAcknowledges.capacity())
+                + MessageCodec.fieldLength(MessageBodyType.WINDOW.label, Integer.BYTES)
+                + MessageCodec.fieldLength(MessageBodyType.ACK_SEQUENCE.label, Long.BYTES);
+    }
+
+    /**
+     * Faz o handshake da metade de envio, reenviando o OPEN até receber o ACCEPT. O outro lado faz o seu próprio
+     * handshake para a direção contrária. Deve ser chamado após {@link #start()} e antes do primeiro envio.
+     *
+     * @param timeoutMillis Tempo máximo de espera pelo ACCEPT
+     * @return Parâmetros negociados para a metade de envio
+     * @throws IOException Caso o outro lado não responda dentro do tempo
+     */
+    public ConnectionParameters connect(long timeoutMillis) throws IOException {
+        return awaitAccept(beginConnect(), timeoutMillis);
+    }
+
+    /**
+     * Inicia o handshake sem bloquear, usado pelas simulações que conduzem o event loop com {@link #poll()}.
+     *
+     * @return Futuro completado com os parâmetros negociados quando o ACCEPT chegar
+     */
+    public CompletableFuture<ConnectionParameters> beginConnect() {
+        submit(() -> beginHandshake(sendSession,
+                MessageCodec.encode(sendSession.getParameters().toMessage(MessageType.OPEN))));
+        return acceptedParameters;
+    }
+
+    /**
+     * Enfileira o envio de uma mensagem ao outro lado, pode ser chamado por qualquer thread, inclusive pelo handler.
+     *
+     * @param message Mensagem com o índice já definido
+     * @throws IllegalArgumentException Caso a mensagem, com os ACKs que podem ir junto, não caiba em um datagrama
+     */
+    public void send(Message message) {
+        checkFrameLength(message, reservedFrameLength);
+        submitSend(() -> register(message));
+    }
+
+    /**
+     * @return Espaço livre na janela de envio, considerando a janela anunciada pelo outro lado
+     */
+    @Override
+    protected int computeAvailableSlots() {
+        return sendSession.getAvailableSlots();
+    }
+
+    /**
+     * Entrega à aplicação as mensagens que ficaram em ordem nos frames desta rodada.
+     */
+    @Override
+    protected void afterFrames() {
+        deliver();
+    }
+
+    private void deliver() {
+        MessageView message;
+
+        while ((message = deliveryQueue.poll()) != null) {
+            deliveryHandler.deliver(message.toMessage());
+        }
+    }
+
+    @Override
+    protected void handleFrame(SocketAddress source, MessageView frame) {
+        if (!source.equals(remoteAddress)) {
+            return;
+        }
+
+        switch (frame.getMessageType()) {
+            case OPEN:
+                acceptConnection(frame);
+                break;
+            case ACCEPT:
+                handleAccept(frame);
+                break;
+            case WINDOW_PROBE:
+                flushAcknowledges();
+                break;
+            case ACKNOWLEDGE:
+            case WINDOW_UPDATE:
+                handleAcknowledges(frame);
+                break;
+            case PACKAGE:
+                handleAcknowledges(frame);
+                handleData(frame);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Metade de recebimento: guarda o pacote na janela, move para a fila de entrega o que ficou em ordem e registra o
+     * índice para confirmação. Com o buffer cheio, o pacote é descartado e o outro lado recebe somente a janela.
+     */
+    private void handleData(MessageView frame) {
+        if (!frame.hasMessageIndex() || !frame.hasField(MessageBodyType.BODY.label)
+                || !ReceiverSession.hasValidStream(frame)) {
+            return;
+        }
+
+        long messageIndex = frame.getMessageIndex();
+
+        if (session.isDuplicatedMessage(messageIndex)) {
+            queueAcknowledge(messageIndex);
+            return;
+        }
+
+        if (session.isBufferFull() && messageIndex != session.getWindowStartIndex()) {
+            flushAcknowledges();
+            return;
+        }
+
+        session.receive(messageIndex, frame);
+        session.advance(deliveryQueue);
+        queueAcknowledge(messageIndex);
+    }
+
+    /**
+     * Com ACKs imediatos, ou com meia janela de ACKs pendentes, envia o ACK avulso na hora; caso contrário, agenda o
+     * seu envio caso nenhum pacote de dados saia antes.
+     */
+    private void queueAcknowledge(long messageIndex) {
+        unsentAcknowledges.putLong(messageIndex);
+
+        int pendingCount = unsentAcknowledges.position() / Long.BYTES;
+
+        if (AckPolicy.IMMEDIATE.equals(session.getParameters().getAckPolicy())
+                || pendingCount >= Math.max(1, session.getParameters().getWindowLength() / 2)
+                || !unsentAcknowledges.hasRemaining()) {
+            flushAcknowledges();
+        } else if (acknowledgeTask == null) {
+            acknowledgeTask = getTimers().schedule(DEFAULT_ACKNOWLEDGE_DELAY_MILLIS, 0, () -> {
+                acknowledgeTask = null;
+                flushAcknowledges();
+            });
+        }
+    }
+
+    /**
+     * Envia um ACK avulso com todos os índices pendentes e a janela disponível.
+     */
+    private void flushAcknowledges() {
+        Message acknowledge = new Message(MessageType.ACKNOWLEDGE, null);
+        attachAcknowledges(acknowledge);
+        getMetrics().increment(ProtocolMetrics.Counter.STANDALONE_ACKNOWLEDGES);
+        transmit(remoteAddress, acknowledge);
+    }
+
+    /**
+     * Acrescenta à mensagem os índices pendentes, a janela disponível e o próximo número de sequência dos ACKs,
+     * cancelando o ACK avulso agendado.
+     */
+    private void attachAcknowledges(Message message) {
+        byte[] acknowledges = new byte[unsentAcknowledges.position()];
+        unsentAcknowledges.flip();
+        unsentAcknowledges.get(acknowledges);
+        unsentAcknowledges.clear();
+
+        message.addMessage(MessageBodyType.ACKS.label, acknowledges);
+        message.addMessage(MessageBodyType.WINDOW.label, session.getAvailableWindow());
+        message.addMessage(MessageBodyType.ACK_SEQUENCE.label, ++acknowledgeSequence);
+
+        TimerQueue.cancel(acknowledgeTask);
+        acknowledgeTask = null;
+    }
+
+    /**
+     * Metade de envio: aplica os ACKs e a janela anunciada que vieram no pacote, avulsos ou junto com os dados.
+     */
+    private void handleAcknowledges(MessageView frame) {
+        Object acknowledges = frame.getField(MessageBodyType.ACKS.label);
+
+        if (acknowledges instanceof byte[]) {
+            ByteBuffer indexes = ByteBuffer.wrap((byte[]) acknowledges);
+
+            while (indexes.remaining() >= Long.BYTES) {
+                InFlightFrame item = sendSession.acknowledge(indexes.getLong());
+
+                if (item != null) {
+                    item.releaseFrame(frameSlab);
+                }
+            }
+        }
+
+        updateAdvertisedWindow(frame);
+        sendSession.advanceWindow();
+    }
+
+    /**
+     * Adiciona a mensagem à janela de envio e a transmite, levando os ACKs pendentes da metade de recebimento. O frame
+     * é codificado uma única vez e reenviado como está até o ACK.
+     */
+    private void register(Message message) {
+        if (unsentAcknowledges.position() > 0) {
+            getMetrics().increment(ProtocolMetrics.Counter.PIGGYBACKED_ACKNOWLEDGES);
+            attachAcknowledges(message);
+        }
+
+        InFlightFrame item = new InFlightFrame();
+        item.storeFrame(frameSlab, MessageCodec.encode(message));
+        sendSession.add(message.getHeader().getMessageIndex(), item);
+
+        transmit(remoteAddress, item);
+        long resendPeriod = sendSession.getParameters().getResendPeriod();
+        item.setRetransmissionTask(getTimers().schedule(resendPeriod, resendPeriod, () -> {
+            getMetrics().increment(ProtocolMetrics.Counter.RETRANSMITTED_PACKETS);
+            transmit(remoteAddress, item);
+        }));
+    }
+
+    /**
+     * Trata o OPEN do outro lado, que inicia a metade de recebimento. Um OPEN repetido só recebe o mesmo ACCEPT; um
+     * OPEN novo indica que o outro lado reiniciou, e com ele a sequência dos seus ACKs.
+     */
+    private void acceptConnection(MessageView openMessage) {
+        ConnectionParameters offer = ConnectionParameters.fromMessage(openMessage);
+
+        if (offer == null) {
+            return;
+        }
+
+        if (offer.getInitialSequenceNumber() != session.getParameters().getInitialSequenceNumber()
+                || session.isPristine()) {
+            session.reset(localParameters.negotiate(offer));
+            deliveryQueue.clear();
+            unsentAcknowledges.clear();
+            advertisedWindowSequence = 0;
+            TimerQueue.cancel(acknowledgeTask);
+            acknowledgeTask = null;
+        }
+
+        transmit(remoteAddress, session.getParameters().toMessage(MessageType.ACCEPT));
+    }
+
+    /**
+     * Aplica os parâmetros negociados para a metade de envio. ACCEPTs repetidos ou de outro número de sequência são
+     * ignorados.
+     */
+    private void handleAccept(MessageView acceptMessage) {
+        ConnectionParameters negotiated = ConnectionParameters.fromMessage(acceptMessage);
+
+        if (!sendSession.accept(negotiated)) {
+            return;
+        }
+
+        ensureReceiveCapacity(negotiated.getMaxDatagramSize());
+        limitFrameLength(negotiated.getMaxDatagramSize());
+        acceptedParameters.complete(negotiated);
+    }
+
+    /**
+     * Atualiza a janela anunciada pelo outro lado. A janela de um frame reenviado ou fora de ordem, com número de
+     * sequência dos ACKs já superado, é ignorada.
+     */
+    private void updateAdvertisedWindow(MessageView frame) {
+        Object window = frame.getField(MessageBodyType.WINDOW.label);
+        Object sequence = frame.getField(MessageBodyType.ACK_SEQUENCE.label);
+
+        if (!(window instanceof Integer) || !(sequence instanceof Long)
+                || (Long) sequence <= advertisedWindowSequence) {
+            return;
+        }
+
+        advertisedWindowSequence = (Long) sequence;
+        updateAdvertisedWindow(sendSession, (Integer) window);
+    }
+
+    /**
+     * Elemento da janela de envio, somente com o frame codificado e o estado do ACK.
+     */
+    static final class InFlightFrame extends SenderSession.InFlight {
+    }
+}
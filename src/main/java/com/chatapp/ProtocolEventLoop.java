@@ -0,0 +1,462 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageType;
+import com.chatapp.TimerQueue.ScheduledTask;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Event loop comum ao {@link SenderEventLoop}, ao {@link FanOutSender} e ao {@link Peer}.
+ *
+ * Uma única thread é dona do transporte, dos temporizadores e de todo o estado do protocolo, sendo acordada pelo
+ * transporte quando chegam pacotes ou quando as threads da aplicação enfileiram submissões. Como o estado só é acessado
+ * por essa thread, nenhum método precisa ser sincronizado; a aplicação só enxerga o espaço livre na janela, publicado
+ * em um campo volátil. Em simulações o event loop não é iniciado: o teste chama {@link #poll()} na sua própria thread
+ * e avança o relógio virtual até {@link #nextDeadlineNanos()}.
+ *
+ * Além do laço, a classe cuida da captura, do KEEP_ALIVE em ociosidade e, para cada {@link SenderSession}, do reenvio
+ * do OPEN e das sondas de janela zero. As subclasses tratam os frames recebidos e calculam o espaço livre na janela.
+ */
+abstract class ProtocolEventLoop implements Runnable, AutoCloseable {
+
+    private final Transport transport;
+    private final Clock clock;
+    private final ProtocolMetrics metrics;
+    private final String threadName;
+
+    /**
+     * Fila de submissões das threads da aplicação, consumida somente pelo event loop.
+     */
+    private final Queue<Runnable> submissions;
+    /**
+     * Envios enfileirados e ainda não processados, descontados do espaço livre na janela.
+     */
+    private final AtomicInteger queuedSubmissions;
+    private final TimerQueue timers;
+
+    private ByteBuffer receiveBuffer;
+    /**
+     * Captura dos pacotes enviados e recebidos, nula quando desligada.
+     */
+    private PacketCapture capture;
+    private final MessageView receivedView;
+    private long lastTransmissionNanos;
+
+    /**
+     * Tamanho máximo dos frames enviados: o proposto até o ACCEPT e depois o negociado. Lido pelas threads da
+     * aplicação ao enfileirar um envio.
+     */
+    private volatile int maxFrameLength;
+    private volatile int availableSlots;
+    private final Object windowMonitor;
+    private volatile boolean running;
+    private Thread loopThread;
+
+    /**
+     * @param transport Transporte do event loop, fechado junto com ele
+     * @param clock Relógio dos temporizadores
+     * @param threadName Nome da thread do event loop
+     * @param maxDatagramSize Tamanho inicial do buffer de recebimento
+     * @param windowLength Espaço livre inicial na janela
+     */
+    ProtocolEventLoop(Transport transport, Clock clock, String threadName, int maxDatagramSize, int windowLength) {
+        this.transport = transport;
+        this.clock = clock;
+        this.metrics = new ProtocolMetrics();
+        this.threadName = threadName;
+
+        this.submissions = new ConcurrentLinkedQueue<>();
+        this.queuedSubmissions = new AtomicInteger();
+        this.timers = new TimerQueue(clock);
+
+        this.receiveBuffer = ByteBuffer.allocate(maxDatagramSize);
+        this.maxFrameLength = maxDatagramSize;
+        this.receivedView = new MessageView();
+
+        this.windowMonitor = new Object();
+        this.availableSlots = windowLength;
+    }
+
+    /**
+     * Inicializa a thread do event loop.
+     */
+    public void start() {
+        startTimers();
+        running = true;
+        loopThread = new Thread(this, threadName);
+        loopThread.start();
+    }
+
+    /**
+     * Prepara o event loop para ser conduzido por {@link #poll()} na thread da simulação, sem iniciar a thread própria.
+     */
+    public void startPolling() {
+        startTimers();
+    }
+
+    private void startTimers() {
+        lastTransmissionNanos = clock.nanoTime();
+        onStart();
+    }
+
+    public ProtocolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Liga a gravação de todos os pacotes enviados e recebidos. Deve ser chamado antes de {@link #start()}; a captura
+     * continua pertencendo a quem a criou, que deve fechá-la após {@link #close()}.
+     */
+    public void enableCapture(PacketCapture packetCapture) {
+        this.capture = packetCapture;
+    }
+
+    /**
+     * @return Espaço livre na janela, descontados os envios ainda não processados pelo event loop
+     */
+    public int getAvailableSlots() {
+        return availableSlots - queuedSubmissions.get();
+    }
+
+    /**
+     * Bloqueia a thread da aplicação até que haja espaço na janela.
+     *
+     * @param reservedSlots Posições já reservadas pela aplicação para mensagens ainda não enviadas
+     * @throws InterruptedException
+     */
+    public void awaitWindowSpace(int reservedSlots) throws InterruptedException {
+        synchronized (windowMonitor) {
+            while (getAvailableSlots() <= reservedSlots) {
+                windowMonitor.wait();
+            }
+        }
+    }
+
+    /**
+     * Laço da thread do event loop. Frames e submissões já são protegidos individualmente; um erro inesperado que ainda
+     * escape, como o de um temporizador, é contabilizado e impresso sem encerrar a thread, do contrário as threads da
+     * aplicação esperando espaço na janela nunca seriam acordadas.
+     */
+    @Override
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    public void run() {
+        while (running) {
+            try {
+                awaitEvents();
+                poll();
+            } catch (IOException e) {
+                if (running) {
+                    e.printStackTrace();
+                }
+            } catch (RuntimeException e) {
+                reportUnexpectedError(e);
+            }
+        }
+    }
+
+    /**
+     * Executa uma rodada do event loop sem bloquear: pacotes recebidos, envios enfileirados e temporizadores vencidos.
+     * Chamado pela thread do event loop ou, em simulações, pela thread do teste.
+     *
+     * @throws IOException
+     */
+    public void poll() throws IOException {
+        readFrames();
+        runSubmissions();
+        timers.runExpired();
+        publishAvailableSlots();
+    }
+
+    /**
+     * @return Instante do próximo temporizador, ou Long.MAX_VALUE se não houver nenhum
+     */
+    public long nextDeadlineNanos() {
+        return timers.nextDeadlineNanos();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        transport.wakeup();
+
+        if (loopThread != null && loopThread != Thread.currentThread()) {
+            try {
+                loopThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        transport.close();
+    }
+
+    /**
+     * Executado em {@link #start()} ou em {@link #startPolling()}, antes da primeira rodada, para agendar os
+     * temporizadores periódicos da subclasse.
+     */
+    protected void onStart() {
+    }
+
+    /**
+     * Trata um frame íntegro recebido do transporte. A view só é válida durante a chamada.
+     */
+    protected abstract void handleFrame(SocketAddress source, MessageView frame);
+
+    /**
+     * Executado após tratar todos os frames recebidos em uma rodada, antes das submissões.
+     */
+    protected void afterFrames() {
+    }
+
+    /**
+     * @return Espaço livre na janela segundo o estado atual do protocolo, sem descontar as submissões enfileiradas
+     */
+    protected abstract int computeAvailableSlots();
+
+    protected final Clock getClock() {
+        return clock;
+    }
+
+    protected final TimerQueue getTimers() {
+        return timers;
+    }
+
+    /**
+     * Enfileira uma tarefa para a thread do event loop, pode ser chamado por qualquer thread.
+     */
+    protected final void submit(Runnable submission) {
+        submissions.add(submission);
+        transport.wakeup();
+    }
+
+    /**
+     * Enfileira um envio que ocupa uma posição da janela, descontada do espaço livre até o event loop processá-lo.
+     */
+    protected final void submitSend(Runnable registration) {
+        queuedSubmissions.incrementAndGet();
+        submit(() -> {
+            queuedSubmissions.decrementAndGet();
+            registration.run();
+        });
+    }
+
+    /**
+     * Aumenta o buffer de recebimento caso o tamanho máximo de datagrama negociado seja maior.
+     */
+    protected final void ensureReceiveCapacity(int maxDatagramSize) {
+        if (receiveBuffer.capacity() < maxDatagramSize) {
+            receiveBuffer = ByteBuffer.allocate(maxDatagramSize);
+        }
+    }
+
+    /**
+     * Reduz o tamanho máximo dos frames enviados ao tamanho de datagrama negociado, se ele for menor.
+     */
+    protected final void limitFrameLength(int maxDatagramSize) {
+        if (maxDatagramSize < maxFrameLength) {
+            maxFrameLength = maxDatagramSize;
+        }
+    }
+
+    /**
+     * Rejeita na thread da aplicação, antes que o índice da mensagem seja usado, uma mensagem cujo frame não caberia
+     * em um datagrama. Rejeitá-la no event loop deixaria uma lacuna na janela que o Receiver esperaria para sempre.
+     *
+     * @param message Mensagem a ser enviada
+     * @param reservedLength Bytes dos campos que o event loop ainda pode acrescentar à mensagem
+     * @throws IllegalArgumentException Caso o frame seja maior que o tamanho máximo de datagrama
+     */
+    protected final void checkFrameLength(Message message, int reservedLength) {
+        int frameLength = MessageCodec.encodedLength(message) + reservedLength;
+
+        if (frameLength > maxFrameLength) {
+            throw new IllegalArgumentException(String.format(ConsoleMessageConstants.FRAME_TOO_LARGE, frameLength,
+                    maxFrameLength));
+        }
+    }
+
+    /**
+     * Agenda o KEEP_ALIVE, enviado a cada período somente se nada foi transmitido durante o último período.
+     *
+     * @return Tarefa periódica, cancelada caso o KEEP_ALIVE não seja negociado
+     */
+    protected final ScheduledTask scheduleKeepAlive(long periodMillis, Runnable sendKeepAlive) {
+        return timers.schedule(periodMillis, periodMillis, () -> {
+            if (clock.nanoTime() - lastTransmissionNanos >= TimeUnit.MILLISECONDS.toNanos(periodMillis)) {
+                sendKeepAlive.run();
+            }
+        });
+    }
+
+    /**
+     * Transmite o OPEN ao Receiver da sessão e agenda o seu reenvio até o ACCEPT.
+     */
+    protected final void beginHandshake(SenderSession<?> session, byte[] openFrame) {
+        transmit(session.getAddress(), openFrame, 0, openFrame.length);
+        session.scheduleHandshake(timers, () -> transmit(session.getAddress(), openFrame, 0, openFrame.length));
+    }
+
+    /**
+     * Aplica a janela anunciada pelo Receiver da sessão; enquanto ela for zero, sondas com o início da janela são
+     * transmitidas a cada período de reenvio.
+     *
+     * @return true se a janela ficou zero e as sondas começaram agora
+     */
+    protected final boolean updateAdvertisedWindow(SenderSession<?> session, int windowSize) {
+        return session.updateAdvertisedWindow(windowSize, timers,
+            () -> transmit(session.getAddress(), new Message(MessageType.WINDOW_PROBE, session.getWindowStartIndex())));
+    }
+
+    /**
+     * Transmite o frame guardado no elemento da janela de envio.
+     */
+    protected final void transmit(SocketAddress address, SenderSession.InFlight item) {
+        transmit(address, item.getFrame(), item.getFrameOffset(), item.getFrameLength());
+    }
+
+    protected final void transmit(SocketAddress address, Message message) {
+        byte[] frame = MessageCodec.encode(message);
+        transmit(address, frame, 0, frame.length);
+    }
+
+    /**
+     * Transmite o frame, registrando-o na captura e como a última transmissão para o KEEP_ALIVE. Um erro de envio é
+     * somente impresso, o reenvio por timeout recupera o pacote.
+     */
+    protected final void transmit(SocketAddress address, byte[] frame, int offset, int length) {
+        lastTransmissionNanos = clock.nanoTime();
+
+        if (capture != null) {
+            capture.record(PacketCapture.Direction.SENT, address, frame, offset, length);
+        }
+
+        try {
+            transport.send(address, frame, offset, length);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Espera o ACCEPT do handshake iniciado pela thread da aplicação.
+     *
+     * @return Parâmetros negociados
+     * @throws IOException Caso o Receiver não responda dentro do tempo
+     */
+    protected static ConnectionParameters awaitAccept(CompletableFuture<ConnectionParameters> accepted,
+            long timeoutMillis) throws IOException {
+        try {
+            return accepted.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            throw new IOException(ConsoleMessageConstants.HANDSHAKE_TIMEOUT, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ConsoleMessageConstants.HANDSHAKE_TIMEOUT, e);
+        }
+    }
+
+    /**
+     * Bloqueia no transporte até a chegada de pacotes, de uma submissão ou do próximo temporizador.
+     */
+    private void awaitEvents() throws IOException {
+        long deadline = timers.nextDeadlineNanos();
+
+        if (!submissions.isEmpty()) {
+            transport.await(0);
+        } else if (deadline == Long.MAX_VALUE) {
+            transport.await(-1);
+        } else {
+            transport.await(Math.max(0, deadline - clock.nanoTime()));
+        }
+    }
+
+    private void readFrames() throws IOException {
+        receiveBuffer.clear();
+
+        SocketAddress source;
+
+        while ((source = transport.receive(receiveBuffer)) != null) {
+            if (capture != null) {
+                capture.record(PacketCapture.Direction.RECEIVED, source, receiveBuffer.array(), 0,
+                        receiveBuffer.position());
+            }
+
+            if (receivedView.wrap(receiveBuffer.array(), 0, receiveBuffer.position())) {
+                handleReceivedFrame(source);
+            } else {
+                metrics.increment(ProtocolMetrics.Counter.CORRUPTED_FRAMES);
+            }
+            receiveBuffer.clear();
+        }
+
+        afterFrames();
+    }
+
+    /**
+     * Um frame que provoque um erro inesperado é descartado, sem impedir o tratamento dos frames seguintes.
+     */
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private void handleReceivedFrame(SocketAddress source) {
+        try {
+            handleFrame(source, receivedView);
+        } catch (RuntimeException e) {
+            reportUnexpectedError(e);
+        }
+    }
+
+    /**
+     * Uma submissão que falhe é descartada, as demais continuam sendo executadas.
+     */
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private void runSubmissions() {
+        Runnable submission;
+
+        while ((submission = submissions.poll()) != null) {
+            try {
+                submission.run();
+            } catch (RuntimeException e) {
+                reportUnexpectedError(e);
+            }
+        }
+    }
+
+    private void reportUnexpectedError(RuntimeException e) {
+        metrics.increment(ProtocolMetrics.Counter.UNEXPECTED_ERRORS);
+        e.printStackTrace();
+    }
+
+    /**
+     * Publica para as threads da aplicação o espaço livre na janela e acorda quem estiver esperando por ele.
+     */
+    private void publishAvailableSlots() {
+        int slots = computeAvailableSlots();
+
+        if (slots == availableSlots) {
+            return;
+        }
+
+        availableSlots = slots;
+
+        synchronized (windowMonitor) {
+            windowMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Define em formato de constantes as mensagens que serão impressas no console, tem o intuito de padronizar e
+     * centralizar.
+     */
+    static class ConsoleMessageConstants {
+        public static final String HANDSHAKE_TIMEOUT = "O Receiver não respondeu ao pedido de conexão";
+        public static final String FRAME_TOO_LARGE =
+                "Mensagem de %d bytes maior que o tamanho máximo de datagrama de %d bytes";
+    }
+}
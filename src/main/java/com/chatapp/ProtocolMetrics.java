@@ -0,0 +1,97 @@
+package com.chatapp;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores do protocolo, mantidos por Sender e Receiver e consultados pela aplicação ou pelos testes.
+ *
+ * Os contadores usam LongAdder, já que são incrementados por várias threads e lidos raramente.
+ */
+public final class ProtocolMetrics {
+
+    /**
+     * Eventos contabilizados pelo protocolo.
+     */
+    public enum Counter {
+        /**
+         * Frames descartados por checksum ou limites inválidos.
+         */
+        CORRUPTED_FRAMES,
+        /**
+         * Pacotes de dados reenviados por timeout.
+         */
+        RETRANSMITTED_PACKETS,
+        /**
+         * Pacotes PARITY transmitidos pelo FEC.
+         */
+        PARITY_PACKETS,
+        /**
+         * Mensagens da aplicação codificadas em frames; os reenvios e as cópias reutilizam o frame e não são contados.
+         */
+        ENCODED_MESSAGES,
+        /**
+         * Pacotes perdidos reconstruídos a partir de um PARITY.
+         */
+        FEC_RECOVERED_PACKETS,
+        /**
+         * Sessões removidas por ociosidade.
+         */
+        IDLE_SESSIONS_EVICTED,
+        /**
+         * Sessões menos recentemente ativas removidas pelos limites de sessões ou de memória.
+         */
+        LRU_SESSIONS_EVICTED,
+        /**
+         * Mensagens cujo tempo de vida expirou antes do ACK.
+         */
+        EXPIRED_PACKETS,
+        /**
+         * SKIPs recebidos no lugar de mensagens expiradas.
+         */
+        SKIPPED_PACKETS,
+        /**
+         * Receivers removidos do grupo de um FanOutSender.
+         */
+        DROPPED_RECEIVERS,
+        /**
+         * ACKs transmitidos junto com um pacote de dados.
+         */
+        PIGGYBACKED_ACKNOWLEDGES,
+        /**
+         * ACKs transmitidos em um pacote próprio.
+         */
+        STANDALONE_ACKNOWLEDGES,
+        /**
+         * Exceções inesperadas ao tratar um frame ou uma tarefa do event loop, descartados sem parar a thread.
+         */
+        UNEXPECTED_ERRORS
+    }
+
+    private final Map<Counter, LongAdder> counters;
+
+    /**
+     * Cria as métricas com todos os contadores zerados.
+     */
+    public ProtocolMetrics() {
+        this.counters = new EnumMap<>(Counter.class);
+
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+    }
+
+    public void increment(Counter counter) {
+        counters.get(counter).increment();
+    }
+
+    public long get(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ProtocolMetrics " + counters;
+    }
+}
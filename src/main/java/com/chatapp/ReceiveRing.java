@@ -0,0 +1,239 @@
+package com.chatapp;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Anel pré-alocado que liga os estágios do pipeline de recebimento do Receiver.
+ *
+ * A thread ouvinte recebe cada datagrama direto no buffer do próximo slot livre e o publica; as threads de
+ * decodificação reservam os slots publicados em ordem, validam o pacote e o marcam como decodificado, em qualquer ordem
+ * entre si; a thread sequenciadora consome os slots decodificados estritamente na ordem de chegada e libera o slot para
+ * a thread ouvinte. Cada slot passa por um estágio de cada vez, a transferência entre os estágios é feita por campos
+ * voláteis com o número de sequência do slot, sem locks.
+ *
+ * Como a sequenciadora consome na ordem de chegada, o estado das sessões evolui exatamente como se os pacotes fossem
+ * tratados um a um, qualquer que seja a quantidade de threads de decodificação.
+ */
+final class ReceiveRing {
+
+    /**
+     * Quantidade padrão de slots, deve ser potência de 2.
+     */
+    static final int DEFAULT_SIZE = 256;
+
+    private final Slot[] slots;
+    private final int mask;
+
+    /**
+     * Próxima sequência a ser publicada, usada somente pela thread ouvinte.
+     */
+    private long nextPublishSequence;
+    /**
+     * Sequências publicadas e ainda não reservadas, as threads de decodificação dormem nele quando o anel está vazio.
+     */
+    private final Semaphore publishedSlots;
+    private final AtomicLong nextDecodeSequence;
+    /**
+     * Próxima sequência a ser consumida, escrita somente pela sequenciadora e lida pela thread ouvinte para saber se há
+     * slot livre.
+     */
+    private volatile long nextConsumeSequence;
+
+    private volatile Thread producer;
+    private volatile boolean isProducerWaiting;
+    private volatile Thread consumer;
+    private volatile boolean closed;
+
+    /**
+     * @param size Quantidade de slots, potência de 2
+     * @param maxDatagramSize Tamanho do buffer de cada slot
+     */
+    ReceiveRing(int size, int maxDatagramSize) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Tamanho do anel deve ser potência de 2: " + size);
+        }
+
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        this.publishedSlots = new Semaphore(0);
+        this.nextDecodeSequence = new AtomicLong();
+
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot(maxDatagramSize);
+        }
+    }
+
+    /**
+     * Espera até que o próximo slot seja liberado pela sequenciadora. Chamado somente pela thread ouvinte.
+     *
+     * @return Slot livre, com o buffer limpo, no qual o próximo datagrama deve ser recebido
+     * @throws ClosedChannelException Caso o anel seja fechado durante a espera
+     */
+    Slot awaitFreeSlot() throws ClosedChannelException {
+        while (nextPublishSequence - nextConsumeSequence > mask) {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+
+            producer = Thread.currentThread();
+            isProducerWaiting = true;
+
+            if (nextPublishSequence - nextConsumeSequence > mask) {
+                LockSupport.park(this);
+            }
+            isProducerWaiting = false;
+        }
+
+        Slot slot = slots[(int) (nextPublishSequence & mask)];
+        slot.getBuffer().clear();
+        return slot;
+    }
+
+    /**
+     * Publica o slot devolvido por {@link #awaitFreeSlot()} após o recebimento do datagrama.
+     */
+    void publish() {
+        Slot slot = slots[(int) (nextPublishSequence & mask)];
+        slot.publishedSequence = nextPublishSequence++;
+        publishedSlots.release();
+    }
+
+    /**
+     * Reserva o próximo slot publicado para decodificação, dormindo enquanto não houver nenhum.
+     *
+     * @return Sequência reservada, a ser passada para {@link #markDecoded(long)}
+     * @throws InterruptedException Quando o Receiver é fechado
+     */
+    long claimDecode() throws InterruptedException {
+        publishedSlots.acquire();
+        long sequence = nextDecodeSequence.getAndIncrement();
+        Slot slot = slots[(int) (sequence & mask)];
+
+        while (slot.publishedSequence != sequence) {
+            Thread.yield();
+        }
+
+        return sequence;
+    }
+
+    Slot get(long sequence) {
+        return slots[(int) (sequence & mask)];
+    }
+
+    /**
+     * Entrega o slot decodificado para a sequenciadora, acordando-a caso esteja esperando.
+     */
+    void markDecoded(long sequence) {
+        slots[(int) (sequence & mask)].decodedSequence = sequence;
+
+        Thread currentConsumer = consumer;
+        if (currentConsumer != null) {
+            LockSupport.unpark(currentConsumer);
+        }
+    }
+
+    /**
+     * Registra a thread sequenciadora, acordada a cada slot decodificado.
+     */
+    void setConsumer(Thread consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * @return Próximo slot na ordem de chegada, se já foi decodificado, ou null
+     */
+    Slot pollDecoded() {
+        Slot slot = slots[(int) (nextConsumeSequence & mask)];
+        return slot.decodedSequence == nextConsumeSequence ? slot : null;
+    }
+
+    /**
+     * Devolve à thread ouvinte o slot obtido em {@link #pollDecoded()}, depois de tratado.
+     */
+    void release() {
+        nextConsumeSequence++;
+
+        if (isProducerWaiting) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * Acorda a thread ouvinte caso ela esteja esperando por um slot livre, que não será mais liberado.
+     */
+    void close() {
+        closed = true;
+
+        Thread currentProducer = producer;
+        if (currentProducer != null) {
+            LockSupport.unpark(currentProducer);
+        }
+    }
+
+    /**
+     * Posição do anel. Os campos sem volatile são escritos pelo estágio dono do slot e lidos pelo estágio seguinte após
+     * a leitura da sequência volátil que o publicou.
+     */
+    static final class Slot {
+        private final ByteBuffer buffer;
+        private final MessageView message;
+        private SocketAddress peer;
+        /**
+         * Resultado da decodificação: checksum e limites válidos.
+         */
+        private boolean isDecoded;
+        /**
+         * Resultado da validação dos pacotes de dados, PACKAGE ou SKIP.
+         */
+        private boolean isValidData;
+        private volatile long publishedSequence;
+        private volatile long decodedSequence;
+
+        /**
+         * @param maxDatagramSize Tamanho do buffer de recebimento do slot
+         */
+        Slot(int maxDatagramSize) {
+            this.buffer = ByteBuffer.allocate(maxDatagramSize);
+            this.message = new MessageView();
+            this.publishedSequence = -1;
+            this.decodedSequence = -1;
+        }
+
+        ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        MessageView getMessage() {
+            return message;
+        }
+
+        SocketAddress getPeer() {
+            return peer;
+        }
+
+        void setPeer(SocketAddress peer) {
+            this.peer = peer;
+        }
+
+        boolean isDecoded() {
+            return isDecoded;
+        }
+
+        boolean isValidData() {
+            return isValidData;
+        }
+
+        /**
+         * Guarda o resultado do estágio de decodificação para o estágio seguinte.
+         */
+        void setDecodeResult(boolean decoded, boolean validData) {
+            this.isDecoded = decoded;
+            this.isValidData = validData;
+        }
+    }
+}
@@ -1,307 +1,1394 @@
 package com.chatapp;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
+
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.util.HashMap;
-import java.util.Map;
+import java.net.SocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
-import com.chatapp.Message.Header;
-import com.chatapp.Message.MessageBodyType;
-import com.chatapp.Message.MessageType;
-
+/**
+ * Receiver do protocolo.
+ *
+ * Em execução normal, {@link #listenForMessages()} monta um pipeline: a thread chamadora recebe os pacotes direto nos
+ * slots de um anel pré-alocado, um grupo fixo de threads de decodificação valida os pacotes em paralelo e uma única
+ * thread sequenciadora os trata na ordem de chegada, sendo a dona de todo o estado das sessões, que por isso não usa
+ * locks; as mensagens são entregues em ordem na thread de entrega. Em simulações, o teste chama {@link #poll()} na sua
+ * thread, que executa todos os estágios sem criar threads, de forma determinística.
+ *
+ * A sequenciadora não imprime nada por pacote: duplicatas, pacotes em ordem ou fora de ordem, buffer cheio e pacotes
+ * inválidos são avisados a um {@link EventListener}, que somente o Receiver do console usa para as suas impressões.
+ */
 public class Receiver implements AutoCloseable {
 
-    private final DatagramSocket socketUDP;
+    /**
+     * Porta padrão em que o Receiver escuta.
+     */
     public static final int SOCKET_RECEIVED_PORT = 10098;
-    private static final int TRANSFER_PACKET_SIZE = 8 * 1024;
-    private long windowStartIndex;
     /**
-     * Buffer utilizado para atender item 3.7.
-     *
-     * A estrutura de dados escolhida é o PriorityQueue, de forma que ordena-se de forma crescentem as mensagens pelo seu
-     * índice, assim sempre teremos ao topo a mensagem mais antiga.
+     * Maior janela aceita pelo Receiver na negociação, a janela da conexão é a menor entre esta e a proposta pelo
+     * Sender.
+     */
+    public static final int MAX_WINDOW_LENGTH = 32;
+    /**
+     * Tempo padrão sem atividade após o qual uma sessão é removida.
+     */
+    public static final long DEFAULT_SESSION_IDLE_TIMEOUT_MILLIS = 30_000L;
+    /**
+     * Quantidade padrão máxima de sessões simultâneas.
+     */
+    public static final int DEFAULT_MAX_SESSIONS = 4096;
+    /**
+     * Limite padrão da memória retida pelas sessões, 64 Mb.
      */
-    private final Queue<Message> messageBuffer;
+    public static final long DEFAULT_MAX_SESSION_BYTES = 64L * 1024 * 1024;
+    /**
+     * Período padrão entre snapshots do estado das sessões, gravados somente quando algo mudou.
+     */
+    public static final long DEFAULT_SNAPSHOT_PERIOD_MILLIS = 100L;
+    /**
+     * Quantidade padrão de threads de decodificação do pipeline de recebimento.
+     */
+    public static final int DEFAULT_DECODE_WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final long MAX_SWEEP_PERIOD_MILLIS = 1000L;
+    /**
+     * Fração do tempo limite de ociosidade usada como período da varredura.
+     */
+    private static final long SWEEP_PERIODS_PER_IDLE_TIMEOUT = 4;
 
+    private final Transport transport;
+    private final Clock clock;
+    /**
+     * Limites locais usados para negociar os parâmetros no handshake.
+     */
+    private final ConnectionParameters localParameters;
+    /**
+     * Sessões por Sender, cada uma com a sua janela e o seu buffer. Sessões ociosas ou menos recentemente ativas são
+     * removidas, mantendo a memória do Receiver limitada mesmo com muitos Senders de vida curta.
+     */
+    private final SessionTable sessions;
+    /**
+     * Sessões cuja janela parou de avançar por falta de espaço na fila de entrega, na ordem em que pararam.
+     */
+    private final Set<ReceiverSession> blockedSessions;
+    private volatile boolean hasBlockedSessions;
+    private long sweepPeriodNanos;
+    private long nextSweepNanos;
+    /**
+     * Contagens das sessões publicadas pela sequenciadora para leitura por outras threads.
+     */
+    private volatile int sessionCount;
+    private volatile long sessionRetainedBytes;
+    /**
+     * Alterações de configuração pedidas por outras threads, executadas pela sequenciadora.
+     */
+    private final Queue<Runnable> commands;
+    /**
+     * Anel do pipeline de recebimento e slot usado por {@link #poll()}, que executa os estágios na própria thread.
+     */
+    private final ReceiveRing ring;
+    private final ReceiveRing.Slot pollSlot;
+    private volatile SequencerThread sequencerThread;
+    private volatile List<Thread> pipelineThreads;
+    /**
+     * Fila limitada de entrega para a camada de aplicação. As mensagens só saem do buffer da janela quando há espaço
+     * nesta fila, de modo que uma aplicação lenta gera contrapressão no Receiver ao invés de perda de mensagens.
+     */
+    private final BlockingQueue<MessageView> deliveryQueue;
+    private final DeliveryHandler deliveryHandler;
+    private final DeliveryThread deliveryThread;
+    private final ProtocolMetrics metrics;
+    /**
+     * Avisado dos eventos de cada pacote, executado na sequenciadora.
+     */
+    private EventListener eventListener;
+    /**
+     * Captura dos pacotes enviados e recebidos, nula quando desligada.
+     */
+    private volatile PacketCapture capture;
+    /**
+     * Log durável das mensagens entregues, nulo quando desligado, e o listener que grava nele as mensagens que saem da
+     * janela.
+     */
+    private DeliveryLog deliveryLog;
+    private ReceiverSession.DrainListener drainListener;
+    private boolean acknowledgeOnDurability;
+    /**
+     * Primeira falha ao gravar no log de entregas, nula enquanto ele funciona. Com ela o Receiver para, já que as
+     * mensagens seguintes não seriam gravadas e os ACKs adiados nunca seriam enviados.
+     */
+    private volatile IOException deliveryLogFailure;
+    /**
+     * ACKs adiados aguardando o commit da sua mensagem no log, na ordem das sequências do log. Acessado somente pela
+     * sequenciadora.
+     */
+    private final Deque<DurableAcknowledge> durableAcknowledges;
+    /**
+     * Snapshot periódico das sessões, nulo quando desligado. Acessado somente pela sequenciadora, exceto na
+     * restauração e no último snapshot, feito em {@link #close()} com a sequenciadora já parada.
+     */
+    private ReceiverSnapshot snapshot;
+    private long snapshotPeriodNanos;
+    private long nextSnapshotNanos;
+    /**
+     * Marcado onde o estado gravado das sessões muda: recebimento, avanço ou salto da janela, nova conexão e remoção de
+     * sessões.
+     */
+    private boolean isSnapshotDirty;
+    private ByteBuffer snapshotBuffer;
 
     /**
-     * Usado para a configuração do Receiver, requisita somente a porta ouvinte e define automaticamente o IP como localhost
+     * Usado para a configuração do Receiver, requisita somente a porta ouvinte e define automaticamente o IP como
+     * localhost.
      *
      * @param porta
      * @throws IOException
      */
     public Receiver(int porta) throws IOException {
-        this.windowStartIndex = 0;
-        this.socketUDP = new DatagramSocket(porta);
-        this.messageBuffer = new PriorityQueue<>((a, b) -> a.getHeader().getMessageIndex().compareTo(b.getHeader().getMessageIndex()));
+        this(porta, new ConsoleDeliveryHandler());
+    }
+
+    /**
+     * Configura o Receiver com a porta ouvinte e o handler da aplicação que receberá as mensagens em ordem.
+     *
+     * @param porta Porta ouvinte
+     * @param deliveryHandler Handler executado na thread de entrega, fora da sequenciadora
+     * @throws IOException
+     */
+    public Receiver(int porta, DeliveryHandler deliveryHandler) throws IOException {
+        this(porta, deliveryHandler, new ConnectionParameters(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE,
+                MAX_WINDOW_LENGTH, 0, ConnectionParameters.DEFAULT_RESEND_PERIOD,
+                ConnectionParameters.AckPolicy.IMMEDIATE, EnumSet.allOf(ConnectionParameters.Feature.class)));
+    }
+
+    /**
+     * @param porta Porta ouvinte
+     * @param deliveryHandler Handler executado na thread de entrega, fora da sequenciadora
+     * @param localParameters Limites locais de datagrama e janela e funcionalidades suportadas, usados no handshake
+     * @throws IOException
+     */
+    public Receiver(int porta, DeliveryHandler deliveryHandler, ConnectionParameters localParameters)
+            throws IOException {
+        this(DatagramTransport.bind(porta), deliveryHandler, localParameters, Clock.SYSTEM);
+    }
+
+    /**
+     * @param transport Transporte do Receiver, fechado junto com o Receiver
+     * @param deliveryHandler Handler da aplicação
+     * @param localParameters Limites locais de datagrama e janela e funcionalidades suportadas, usados no handshake
+     * @param clock Relógio usado na ociosidade das sessões
+     */
+    public Receiver(Transport transport, DeliveryHandler deliveryHandler, ConnectionParameters localParameters,
+            Clock clock) {
+        this.transport = transport;
+        this.clock = clock;
+        this.localParameters = localParameters;
+        this.sessions = new SessionTable(TimeUnit.MILLISECONDS.toNanos(DEFAULT_SESSION_IDLE_TIMEOUT_MILLIS),
+                DEFAULT_MAX_SESSIONS, DEFAULT_MAX_SESSION_BYTES);
+        this.blockedSessions = new LinkedHashSet<>();
+        this.commands = new ConcurrentLinkedQueue<>();
+        this.ring = new ReceiveRing(ReceiveRing.DEFAULT_SIZE, localParameters.getMaxDatagramSize());
+        this.pollSlot = new ReceiveRing.Slot(localParameters.getMaxDatagramSize());
+        this.pipelineThreads = Collections.emptyList();
+        this.deliveryQueue = new ArrayBlockingQueue<>(localParameters.getWindowLength());
+        this.durableAcknowledges = new ArrayDeque<>();
+        this.metrics = new ProtocolMetrics();
+        scheduleSweep(DEFAULT_SESSION_IDLE_TIMEOUT_MILLIS);
+        this.deliveryHandler = deliveryHandler;
+        this.deliveryThread = new DeliveryThread();
+        this.eventListener = new EventListener() {
+        };
+    }
+
+    public ProtocolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Define quem é avisado dos eventos de cada pacote. Deve ser chamado antes de {@link #listenForMessages()}.
+     */
+    public void setEventListener(EventListener eventListener) {
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * Liga a gravação de todos os pacotes enviados e recebidos. A captura continua pertencendo a quem a criou, que deve
+     * fechá-la após fechar o Receiver.
+     */
+    public void enableCapture(PacketCapture packetCapture) {
+        this.capture = packetCapture;
+    }
+
+    /**
+     * Liga a gravação das mensagens entregues no log durável, na ordem em que saem da janela. Com
+     * acknowledgeOnDurability, o ACK de cada pacote de dados só é enviado após o commit da sua mensagem no log, assim o
+     * Sender só considera entregue o que sobrevive a uma queda do Receiver; os ACKs de pacotes repetidos ficam retidos
+     * até lá. Deve ser chamado antes de {@link #listenForMessages()} ou do primeiro {@link #poll()}; o log continua
+     * pertencendo a quem o criou, que deve fechá-lo após fechar o Receiver.
+     *
+     * @param log Log das mensagens entregues
+     * @param deferAcknowledges true para adiar os ACKs até o commit
+     */
+    public void enableDeliveryLog(DeliveryLog log, boolean deferAcknowledges) {
+        this.deliveryLog = log;
+        this.drainListener = this::logDelivery;
+        this.acknowledgeOnDurability = deferAcknowledges;
+        log.setCommitListener(this::wakeSequencer);
+    }
+
+    /**
+     * Restaura as sessões do último snapshot e liga a gravação periódica de novos snapshots. Assim, após reiniciar, o
+     * Receiver continua as janelas de onde os Senders estão ao invés de voltar ao índice inicial. Um snapshot anterior
+     * aos últimos ACKs enviados é corrigido na chegada dos pacotes, como descrito em
+     * {@link ReceiverSession#skipLeadingGap(long)}. Deve ser chamado antes de {@link #listenForMessages()} ou do
+     * primeiro {@link #poll()}, e após {@link #enableDeliveryLog(DeliveryLog, boolean)} quando o log for usado; o
+     * snapshot continua pertencendo a quem o criou, que deve fechá-lo após fechar o Receiver.
+     *
+     * @param receiverSnapshot Arquivo do snapshot
+     * @param periodMillis Período entre snapshots
+     */
+    public void enableSnapshots(ReceiverSnapshot receiverSnapshot, long periodMillis) {
+        this.snapshot = receiverSnapshot;
+        this.snapshotPeriodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        this.nextSnapshotNanos = clock.nanoTime() + snapshotPeriodNanos;
+        restoreSnapshot(receiverSnapshot.load());
+        publishSessionStats();
+    }
+
+    /**
+     * Altera os limites das sessões, pode ser chamado por qualquer thread. Os novos limites são aplicados pela
+     * sequenciadora e valem a partir do próximo pacote ou da próxima varredura.
+     *
+     * @param idleTimeoutMillis Tempo sem nenhum pacote após o qual a sessão é removida
+     * @param maxSessions Quantidade máxima de sessões
+     * @param maxRetainedBytes Memória máxima retida pelos buffers das sessões
+     */
+    public void configureSessions(long idleTimeoutMillis, int maxSessions, long maxRetainedBytes) {
+        commands.add(() -> {
+            sessions.setLimits(TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis), maxSessions, maxRetainedBytes);
+            scheduleSweep(idleTimeoutMillis);
+        });
+        wakeSequencer();
+    }
+
+    /**
+     * @return Quantidade de sessões ativas na última rodada da sequenciadora
+     */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * @return Memória estimada retida pelas sessões na última rodada da sequenciadora
+     */
+    public long getSessionRetainedBytes() {
+        return sessionRetainedBytes;
+    }
+
+    /**
+     * Agenda a varredura de sessões ociosas com uma fração do tempo limite, assim uma sessão fica no máximo cerca de
+     * 25% além do limite antes de ser removida. A varredura é feita pela sequenciadora, ou por {@link #poll()}.
+     */
+    private void scheduleSweep(long idleTimeoutMillis) {
+        sweepPeriodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, Math.min(MAX_SWEEP_PERIOD_MILLIS,
+                idleTimeoutMillis / SWEEP_PERIODS_PER_IDLE_TIMEOUT)));
+        nextSweepNanos = clock.nanoTime() + sweepPeriodNanos;
+    }
+
+    /**
+     * Executa a varredura de sessões ociosas caso o seu instante já tenha passado.
+     */
+    private void runDueSweep() {
+        long now = clock.nanoTime();
+
+        if (now >= nextSweepNanos) {
+            evictIdleSessions();
+            nextSweepNanos = now + sweepPeriodNanos;
+        }
+    }
+
+    /**
+     * @return Instante da próxima varredura de sessões ociosas ou do próximo snapshot pendente, usado pelas simulações,
+     *         na mesma thread de {@link #poll()}, para avançar o relógio
+     */
+    public long nextDeadlineNanos() {
+        return snapshot != null && isSnapshotDirty ? Math.min(nextSweepNanos, nextSnapshotNanos) : nextSweepNanos;
+    }
+
+    /**
+     * Grava o snapshot das sessões caso o seu instante já tenha passado e alguma sessão tenha mudado.
+     */
+    private void runDueSnapshot() {
+        long now = clock.nanoTime();
+
+        if (snapshot == null || !isSnapshotDirty || now < nextSnapshotNanos) {
+            return;
+        }
+
+        writeSnapshot();
+        nextSnapshotNanos = now + snapshotPeriodNanos;
+    }
+
+    /**
+     * Grava o estado de todas as sessões. Com ACKs adiados até o log de entregas, faz antes o commit do log e envia os
+     * ACKs liberados, assim o snapshot nunca registra como recebida uma mensagem que não está no log e cujo reenvio o
+     * Sender ainda faria.
+     */
+    private void writeSnapshot() {
+        try {
+            if (deliveryLog != null && !durableAcknowledges.isEmpty()) {
+                deliveryLog.commit();
+                releaseDurableAcknowledges();
+            }
+
+            int length = Integer.BYTES;
+            for (ReceiverSession session : sessions.values()) {
+                length += session.getStateLength();
+            }
+
+            if (snapshotBuffer == null || snapshotBuffer.capacity() < length) {
+                snapshotBuffer = ByteBuffer.allocate(Math.max(length, ReceiverSnapshot.DEFAULT_SLOT_SIZE));
+            }
+
+            snapshotBuffer.clear();
+            snapshotBuffer.putInt(sessions.size());
+            for (ReceiverSession session : sessions.values()) {
+                session.writeState(snapshotBuffer);
+            }
+            snapshotBuffer.flip();
+
+            snapshot.store(snapshotBuffer);
+            isSnapshotDirty = false;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Recria as sessões gravadas no snapshot e retoma a entrega das mensagens que estavam prontas. Um snapshot
+     * inválido é descartado por inteiro e o Receiver começa sem sessões.
+     */
+    private void restoreSnapshot(ByteBuffer content) {
+        if (content == null) {
+            return;
+        }
+
+        List<ReceiverSession> restored = new ArrayList<>();
+
+        try {
+            for (int remaining = content.getInt(); remaining > 0; remaining--) {
+                ReceiverSession session = getSession(ReceiverSession.readPeer(content));
+
+                if (!session.restoreState(content, acknowledgeOnDurability)) {
+                    throw new IOException(ConsoleMessageConstants.INVALID_SNAPSHOT);
+                }
+
+                commitSession(session);
+                restored.add(session);
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            System.out.println(ConsoleMessageConstants.INVALID_SNAPSHOT);
+            sessions.clear();
+            blockedSessions.clear();
+            return;
+        }
+
+        restored.forEach(this::updateWindow);
+        System.out.println(String.format(ConsoleMessageConstants.SNAPSHOT_RESTORED, restored.size(),
+                snapshot.getGeneration()));
+    }
+
+    /**
+     * Executa as alterações de configuração pendentes e publica as contagens das sessões. Chamado pela sequenciadora a
+     * cada rodada, ou por {@link #poll()}.
+     */
+    private void runCommands() {
+        Runnable command;
+
+        while ((command = commands.poll()) != null) {
+            command.run();
+        }
+    }
+
+    private void publishSessionStats() {
+        sessionCount = sessions.size();
+        sessionRetainedBytes = sessions.getRetainedBytes();
+        hasBlockedSessions = !blockedSessions.isEmpty();
+    }
+
+    private void wakeSequencer() {
+        Thread sequencer = sequencerThread;
+
+        if (sequencer != null) {
+            LockSupport.unpark(sequencer);
+        }
+    }
+
+    /**
+     * Interface para a camada de aplicação, recebe exatamente uma vez e em ordem cada mensagem do Sender.
+     */
+    public interface DeliveryHandler {
+        /**
+         * Chamado pela thread de entrega do Receiver, portanto um processamento lento não bloqueia o recebimento de
+         * pacotes.
+         *
+         * @param message Mensagem entregue em ordem
+         */
+        void deliver(Message message);
+    }
+
+    /**
+     * Handler padrão, somente imprime no console o corpo das mensagens entregues.
+     */
+    static class ConsoleDeliveryHandler implements DeliveryHandler {
+        @Override
+        public void deliver(Message message) {
+            Object body = message.getMessages().get(MessageBodyType.BODY.label);
+            System.out.println(String.format(ConsoleMessageConstants.DELIVERED_MESSAGE,
+                    message.getHeader().getMessageIndex(), body));
+        }
+    }
+
+    /**
+     * Eventos do tratamento de cada pacote, avisados pela sequenciadora ou pela thread de {@link #poll()}. Como são
+     * executados no caminho de cada pacote, as implementações devem ser rápidas.
+     */
+    public interface EventListener {
+        /**
+         * Pacote descartado por checksum ou limites inválidos.
+         */
+        default void onCorruptedFrame() {
+        }
+
+        /**
+         * Pacote íntegro, mas com tipo ou campos inválidos.
+         */
+        default void onInvalidMessage() {
+        }
+
+        /**
+         * @param messageIndex Índice já recebido, confirmado novamente
+         */
+        default void onDuplicatedMessage(long messageIndex) {
+        }
+
+        /**
+         * @param messageIndex Índice rejeitado por falta de espaço no buffer da janela
+         */
+        default void onBufferFull(long messageIndex) {
+        }
+
+        /**
+         * @param messageIndex Índice recebido no início da janela
+         */
+        default void onOrderedMessage(long messageIndex) {
+        }
+
+        /**
+         * @param messageIndex Índice recebido à frente de lacunas da janela
+         * @param missingIndexes Índices ainda não recebidos antes dele, calculados somente se pedidos
+         */
+        default void onUnorderedMessage(long messageIndex, Supplier<String> missingIndexes) {
+        }
+
+        /**
+         * @param messageIndex Índice expirado no Sender, pulado pela janela
+         */
+        default void onSkippedMessage(long messageIndex) {
+        }
+
+        /**
+         * @param messageIndex Índice reconstruído a partir da paridade do bloco
+         */
+        default void onRecoveredMessage(long messageIndex) {
+        }
+    }
+
+    /**
+     * Imprime no console os eventos de cada pacote, instalado somente pelo {@link #main(String[])}.
+     */
+    static class ConsoleEventListener implements EventListener {
+        @Override
+        public void onCorruptedFrame() {
+            System.out.println(ConsoleMessageConstants.ERROR_TO_RECEIVE_MESSAGE);
+        }
+
+        @Override
+        public void onInvalidMessage() {
+            System.out.println(ConsoleMessageConstants.INVALID_MESSAGE);
+        }
+
+        @Override
+        public void onDuplicatedMessage(long messageIndex) {
+            System.out.println(String.format(ConsoleMessageConstants.DUPLICATED_MESSAGE, messageIndex));
+        }
+
+        @Override
+        public void onBufferFull(long messageIndex) {
+            System.out.println(ConsoleMessageConstants.BUFFER_FULL_ERROR);
+        }
+
+        @Override
+        public void onOrderedMessage(long messageIndex) {
+            System.out.println(String.format(ConsoleMessageConstants.ORDERED_MESSAGE, messageIndex));
+        }
+
+        @Override
+        public void onUnorderedMessage(long messageIndex, Supplier<String> missingIndexes) {
+            System.out.println(String.format(ConsoleMessageConstants.UNORDERED_MESSAGE, messageIndex,
+                    missingIndexes.get()));
+        }
+
+        @Override
+        public void onSkippedMessage(long messageIndex) {
+            System.out.println(String.format(ConsoleMessageConstants.SKIPPED_MESSAGE, messageIndex));
+        }
+
+        @Override
+        public void onRecoveredMessage(long messageIndex) {
+            System.out.println(String.format(ConsoleMessageConstants.RECOVERED_MESSAGE, messageIndex));
+        }
     }
 
     /**
-     * Define em formato de constantes as mensagens que serão impressas no console, tem o intuito de padronizar e centralizar
+     * Define em formato de constantes as mensagens que serão impressas no console, tem o intuito de padronizar e
+     * centralizar.
      */
     static class ConsoleMessageConstants {
-        public final static String DUPLICATED_MESSAGE = "Mensagem de id %d recebida de forma duplicada";
-        public final static String UNORDERED_MESSAGE = "Mensagem de id %d recebida fora de ordem, ainda não recebidos os identificadores [%s]";
-        public final static String ORDERED_MESSAGE = "Mensagem de id %d recebida na ordem, entregando para a camada de aplicação";
-        public final static String ERROR_TO_RECEIVE_MESSAGE = "Ocorreu um erro ao receber a mensagem";
-        public final static String INVALID_MESSAGE = "Mensagem recebida é inválida!";
-        public final static String BUFFER_FULL_ERROR = "Buffer cheio, rejeitando a mensagem";
+        public static final String DUPLICATED_MESSAGE = "Mensagem de id %d recebida de forma duplicada";
+        public static final String UNORDERED_MESSAGE =
+                "Mensagem de id %d recebida fora de ordem, ainda não recebidos os identificadores [%s]";
+        public static final String ORDERED_MESSAGE =
+                "Mensagem de id %d recebida na ordem, entregando para a camada de aplicação";
+        public static final String ERROR_TO_RECEIVE_MESSAGE = "Ocorreu um erro ao receber a mensagem";
+        public static final String INVALID_MESSAGE = "Mensagem recebida é inválida!";
+        public static final String BUFFER_FULL_ERROR = "Buffer cheio, rejeitando a mensagem";
+        public static final String CONNECTION_ACCEPTED = "Conexão aceita com os parâmetros %s";
+        public static final String RECOVERED_MESSAGE = "Mensagem de id %d reconstruída a partir da paridade do bloco";
+        public static final String DELIVERED_MESSAGE = "Mensagem de id %d entregue para a aplicação: %s";
+        public static final String IDLE_SESSION_EVICTED = "Sessão de %s removida por inatividade";
+        public static final String LRU_SESSION_EVICTED = "Sessão de %s removida para liberar memória";
+        public static final String SKIPPED_MESSAGE = "Mensagem de id %d expirou no Sender, a janela avançará sem ela";
+        public static final String SNAPSHOT_RESTORED = "%d sessões restauradas do snapshot de geração %d";
+        public static final String INVALID_SNAPSHOT = "Snapshot das sessões inválido, o Receiver inicia sem sessões";
+        public static final String RESUMED_WINDOW_ADVANCED = "Janela da sessão restaurada de %s avançou para %d";
+        public static final String DELIVERY_LOG_FAILED = "Falha ao gravar no log de entregas, o Receiver foi parado";
     }
 
     /**
-     * Ouvinte do receveir, ou seja, fica esperando por mensagens UDP na thread principal e quando uma mensagem é recebida
-     * cria uma nova thread com o ListenerThread para que o tratamento seja em paralelo e não bloqueie o recebimento de novas
-     * mensagens
+     * Ouvinte do receveir, ou seja, fica esperando por mensagens UDP na thread principal, com a quantidade padrão de
+     * threads de decodificação.
      *
      * @throws IOException
      * @throws ClassNotFoundException
      */
     public void listenForMessages() throws IOException, ClassNotFoundException {
+        listenForMessages(DEFAULT_DECODE_WORKERS);
+    }
+
+    /**
+     * Ouvinte do receveir: recebe os pacotes UDP na thread chamadora direto nos slots livres do anel e os publica para
+     * as threads de decodificação, que validam checksum, limites e campos em paralelo. A sequenciadora trata os pacotes
+     * decodificados na ordem de chegada, então a quantidade de threads de decodificação não altera a ordem nem o estado
+     * das sessões. Com o anel cheio, a thread ouvinte espera a sequenciadora liberar slots e os pacotes ficam no buffer
+     * do socket.
+     *
+     * @param decodeWorkers Quantidade de threads de decodificação
+     * @throws IOException Quando o Receiver é fechado ou a gravação no log de entregas falha
+     */
+    public void listenForMessages(int decodeWorkers) throws IOException {
+        SequencerThread sequencer = new SequencerThread();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(sequencer);
+        for (int i = 0; i < decodeWorkers; i++) {
+            threads.add(new DecodeWorker(i));
+        }
+
+        ring.setConsumer(sequencer);
+        sequencerThread = sequencer;
+        pipelineThreads = threads;
+
+        if (deliveryLog != null) {
+            deliveryLog.startCommitter();
+        }
+        deliveryThread.start();
+        threads.forEach(Thread::start);
+
         while (true) {
-            byte[] receivedBytes = new byte[TRANSFER_PACKET_SIZE];
-            DatagramPacket packet = new DatagramPacket(receivedBytes, receivedBytes.length);
-            socketUDP.receive(packet);
-            new MessageHandlerThread(packet).start();
+            transport.await(-1);
+            checkDeliveryLog();
+
+            ReceiveRing.Slot slot = ring.awaitFreeSlot();
+            while (receive(slot)) {
+                ring.publish();
+                slot = ring.awaitFreeSlot();
+            }
+        }
+    }
+
+    /**
+     * Executa uma rodada do Receiver sem bloquear e sem criar threads: recebe, decodifica e trata os pacotes
+     * disponíveis um a um, executa a varredura de sessões ociosas se for o momento e entrega as mensagens da fila.
+     * Com o log de entregas ligado, termina com o commit das mensagens da rodada e o envio dos ACKs adiados. Usado
+     * pelas simulações no lugar de {@link #listenForMessages()}.
+     *
+     * @throws IOException Caso a gravação no log de entregas falhe
+     */
+    public void poll() throws IOException {
+        runCommands();
+
+        pollSlot.getBuffer().clear();
+        while (receive(pollSlot)) {
+            decode(pollSlot);
+            handleFrame(pollSlot);
+            pollSlot.getBuffer().clear();
+        }
+
+        runDueSweep();
+        publishSessionStats();
+
+        MessageView message;
+        while ((message = deliveryQueue.poll()) != null) {
+            drainWindow();
+            deliveryHandler.deliver(message.toMessage());
+        }
+
+        if (deliveryLog != null) {
+            checkDeliveryLog();
+            deliveryLog.commit();
+            releaseDurableAcknowledges();
+        }
+
+        runDueSnapshot();
+    }
+
+    /**
+     * @throws IOException Caso uma mensagem não tenha sido gravada no log de entregas
+     */
+    private void checkDeliveryLog() throws IOException {
+        IOException failure = deliveryLogFailure;
+
+        if (failure != null) {
+            throw new IOException(ConsoleMessageConstants.DELIVERY_LOG_FAILED, failure);
+        }
+    }
+
+    /**
+     * Recebe um pacote sem bloquear no buffer do slot, já limpo, e o grava na captura.
+     *
+     * @return false se não houver pacote disponível
+     */
+    private boolean receive(ReceiveRing.Slot slot) throws IOException {
+        SocketAddress peer = transport.receive(slot.getBuffer());
+
+        if (peer == null) {
+            return false;
+        }
+
+        slot.setPeer(peer);
+
+        PacketCapture currentCapture = capture;
+        if (currentCapture != null) {
+            currentCapture.record(PacketCapture.Direction.RECEIVED, peer, slot.getBuffer().array(), 0,
+                    slot.getBuffer().position());
         }
+
+        return true;
     }
 
+    /**
+     * Estágio de decodificação: verifica checksum e limites e valida os pacotes de dados. Não acessa as sessões, por
+     * isso pode ser executado em paralelo. Um erro inesperado marca o pacote como inválido em vez de parar o worker,
+     * do contrário a sequenciadora ficaria esperando para sempre por um slot que nunca seria decodificado.
+     */
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private void decode(ReceiveRing.Slot slot) {
+        try {
+            ByteBuffer buffer = slot.getBuffer();
+            boolean isDecoded = slot.getMessage().wrap(buffer.array(), 0, buffer.position());
+            slot.setDecodeResult(isDecoded, isDecoded && isValidMessage(slot.getMessage()));
+        } catch (RuntimeException e) {
+            slot.setDecodeResult(false, false);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Para as threads do pipeline e grava o último snapshot antes de fechar o transporte, assim os ACKs liberados pelo
+     * commit final do log ainda podem ser enviados. A sequenciadora é parada sem interrupção, que fecharia o canal caso
+     * ela estivesse enviando uma resposta.
+     */
     @Override
     public void close() throws Exception {
-        socketUDP.close();
+        ring.close();
+        deliveryThread.interrupt();
+
+        SequencerThread sequencer = sequencerThread;
+        for (Thread thread : pipelineThreads) {
+            if (thread != sequencer) {
+                thread.interrupt();
+            }
+        }
+
+        if (sequencer != null) {
+            sequencer.shutdown();
+            sequencer.join();
+        }
+
+        if (snapshot != null) {
+            writeSnapshot();
+        }
+
+        transport.close();
     }
 
     /**
-     * Faz o tratamento de mensagens UDP recebidas do Sender e faz o redirecionamento da resposta ACK caso o pacote recebido
-     * seja válido.
+     * Thread consumidora da fila de entrega, executa o handler da aplicação fora da sequenciadora.
+     * Após retirar uma mensagem da fila, acorda a sequenciadora caso alguma janela esteja parada por falta de espaço na
+     * fila, para que ela retome as entregas.
      */
-    class MessageHandlerThread extends Thread {
-        private DatagramPacket receivedPacket;
+    class DeliveryThread extends Thread {
 
-        public MessageHandlerThread(DatagramPacket receivedPacket) {
-            this.receivedPacket = receivedPacket;
+        DeliveryThread() {
+            super("receiver-delivery");
         }
 
-        /**
-         * A ideia é validar a mensagem e iniciar uma nova thread para fazer o envio do ACK.
-         * A partir do sucesso ou não do tratamento da mensagem no método handleReceivedMessage, faz-se ou não
-         * o envio da mensagem de ACK de volta para o Sender.
-         */
         @Override
         public void run() {
-            Optional<Message> optionalMessage = readClientMessage();
+            while (!isInterrupted()) {
+                MessageView message;
+                try {
+                    message = deliveryQueue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
 
-            if (optionalMessage.isEmpty()) {
-                System.out.println(ConsoleMessageConstants.ERROR_TO_RECEIVE_MESSAGE);
-                return;
+                if (hasBlockedSessions) {
+                    wakeSequencer();
+                }
+                deliveryHandler.deliver(message.toMessage());
             }
+        }
+    }
+
+    /**
+     * Thread de decodificação do pipeline, reserva os slots publicados na ordem e os decodifica.
+     */
+    class DecodeWorker extends Thread {
 
-            Message senderMessage = optionalMessage.get();
+        DecodeWorker(int id) {
+            super("receiver-decode-" + id);
+        }
 
-            if (!isValidMessage(senderMessage)) {
-                System.out.println(ConsoleMessageConstants.INVALID_MESSAGE);
-                return;
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                long sequence;
+                try {
+                    sequence = ring.claimDecode();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                // o slot é liberado mesmo em caso de erro, senão a sequenciadora pararia nele
+                try {
+                    decode(ring.get(sequence));
+                } finally {
+                    ring.markDecoded(sequence);
+                }
             }
+        }
+    }
 
-            boolean isMessageSuccessfullyHandled = handleReceivedMessage(senderMessage);
+    /**
+     * Thread sequenciadora, única dona do estado das sessões. Trata os slots decodificados na ordem de chegada, retoma
+     * as janelas paradas quando há espaço na fila de entrega, aplica as configurações pendentes, envia os ACKs cujas
+     * mensagens já foram gravadas no log e faz a varredura de sessões ociosas, dormindo até o próximo slot, o próximo
+     * pedido, o próximo commit do log ou a próxima varredura.
+     */
+    class SequencerThread extends Thread {
 
-            if (isMessageSuccessfullyHandled) {
-                new MessageSenderThread(receivedPacket, senderMessage.getHeader()).start();
-            }
+        private volatile boolean isStopped;
 
+        SequencerThread() {
+            super("receiver-sequencer");
         }
 
         /**
-         * Converte o array de bytes recebidos em uma instância de Message
-         * @return Uma instância de mensagem ou um optional vazio caso a mensagem lida seja inválida ou corrompida.
+         * Termina a thread após a rodada em andamento.
          */
-        private Optional<Message> readClientMessage() {
-            byte[] receivedData = this.receivedPacket.getData();
-
-            try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(receivedData);
-                ObjectInputStream inputObject = new ObjectInputStream(new BufferedInputStream(byteArrayInputStream));
-            ) {
-                Message receivedMessage = (Message) inputObject.readObject();
-                return Optional.of(receivedMessage);
-            } catch (ClassNotFoundException | IOException e) {
-                e.printStackTrace();
+        void shutdown() {
+            isStopped = true;
+            LockSupport.unpark(this);
+        }
+
+        @Override
+        public void run() {
+            while (!isStopped) {
+                ReceiveRing.Slot slot;
+
+                while ((slot = ring.pollDecoded()) != null) {
+                    handleFrame(slot);
+                    ring.release();
+                }
+
+                runCommands();
+                releaseDurableAcknowledges();
+                runDueSweep();
+                runDueSnapshot();
+                publishSessionStats();
+
+                // a flag de janelas paradas é publicada antes de olhar a fila, assim uma retirada feita pela thread de
+                // entrega sem ver a flag é vista aqui e nenhuma janela dorme parada até a próxima varredura
+                if (hasBlockedSessions && deliveryQueue.remainingCapacity() > 0) {
+                    drainWindow();
+                    continue;
+                }
+
+                LockSupport.parkNanos(this, nextDeadlineNanos() - clock.nanoTime());
             }
+        }
+    }
 
-            return Optional.empty();
+    /**
+     * Estágio de sequenciamento: faz o tratamento das mensagens UDP recebidas do Sender e responde ao Sender com o ACK
+     * caso o pacote recebido seja válido. Executado somente pela sequenciadora, ou diretamente por {@link #poll()}.
+     *
+     * A partir do sucesso ou não do tratamento da mensagem no método handleReceivedMessage, faz-se ou não o envio da
+     * mensagem de ACK de volta para o Sender. Um erro inesperado em um pacote não pode parar a sequenciadora, por isso
+     * ele é somente impresso.
+     */
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private void handleFrame(ReceiveRing.Slot slot) {
+        try {
+            handleFrame(slot.getPeer(), slot.getMessage(), slot.isDecoded(), slot.isValidData());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void handleFrame(SocketAddress peer, MessageView senderMessage, boolean isDecoded, boolean isValidData) {
+        if (!isDecoded) {
+            metrics.increment(ProtocolMetrics.Counter.CORRUPTED_FRAMES);
+            eventListener.onCorruptedFrame();
+            return;
+        }
+
+        if (MessageType.KEEP_ALIVE.equals(senderMessage.getMessageType())) {
+            keepAlive(peer);
+            return;
+        }
+
+        if (MessageType.OPEN.equals(senderMessage.getMessageType())) {
+            Message reply = acceptConnection(peer, senderMessage);
+            if (reply != null) {
+                sendReply(peer, reply);
+            }
+            return;
+        }
+
+        if (isWindowProbe(senderMessage)) {
+            sendReply(peer, createProbeReply(peer));
+            return;
+        }
+
+        if (MessageType.PARITY.equals(senderMessage.getMessageType())) {
+            recoverFromParity(peer, senderMessage).ifPresent(recovered -> handleRecoveredMessage(peer, recovered));
+            return;
+        }
+
+        if (!isValidData) {
+            eventListener.onInvalidMessage();
+            return;
+        }
+
+        handlePackage(peer, senderMessage);
+
+        if (MessageType.PACKAGE.equals(senderMessage.getMessageType())) {
+            recoverFromData(peer, senderMessage).ifPresent(recovered -> handleRecoveredMessage(peer, recovered));
         }
     }
 
     /**
-     * Valida mensagens, simplesmente checa se tem mensagem no corpo e se o tipo da mensagem é PACKAGE
-     * @param message Mensagem recebida do Sender
-     * @return true se a mensagem é válida
+     * Trata um pacote de dados e responde ao Sender com o ACK, ou somente com a janela caso o buffer esteja cheio. Um
+     * ACK adiado até o commit no log não é respondido aqui.
      */
-    private boolean isValidMessage(Message message) {
-        Header header = message.getHeader();
+    private void handlePackage(SocketAddress peer, MessageView senderMessage) {
+        boolean isMessageSuccessfullyHandled = handleReceivedMessage(peer, senderMessage);
 
-        if (header == null || !MessageType.PACKAGE.equals(header.getMessageType()) || header.getMessageIndex() == null) {
-            return false;
+        if (isMessageSuccessfullyHandled && acknowledgeOnDurability
+                && getSession(peer).isAcknowledgeDeferred(senderMessage.getMessageIndex())) {
+            return;
         }
 
-        Map<String, Object> messages = message.getMessages();
+        Message reply = isMessageSuccessfullyHandled
+                ? createWindowMessage(peer, MessageType.ACKNOWLEDGE, senderMessage.getMessageIndex())
+                : createWindowMessage(peer, MessageType.WINDOW_UPDATE, null);
 
-        if (messages == null || !messages.containsKey(MessageBodyType.BODY.label)) {
-            return false;
+        sendReply(peer, reply);
+    }
+
+    /**
+     * Pacote reconstruído a partir da paridade do bloco, tratado como se tivesse chegado pela rede.
+     */
+    private void handleRecoveredMessage(SocketAddress peer, MessageView recoveredMessage) {
+        if (!isValidMessage(recoveredMessage)) {
+            return;
         }
 
-        return true;
+        if (!isDuplicatedMessage(peer, recoveredMessage.getMessageIndex())) {
+            metrics.increment(ProtocolMetrics.Counter.FEC_RECOVERED_PACKETS);
+            eventListener.onRecoveredMessage(recoveredMessage.getMessageIndex());
+        }
+
+        handlePackage(peer, recoveredMessage);
+    }
+
+    /**
+     * Busca a sessão do Sender, criando-a caso não exista, e registra a atividade. Deve ser chamado pela sequenciadora
+     * e seguido de {@link #commitSession(ReceiverSession)} em todos os caminhos, que aplica os limites de sessões e de
+     * memória à sessão criada.
+     */
+    private ReceiverSession getSession(SocketAddress peer) {
+        return sessions.get(peer, clock.nanoTime());
+    }
+
+    /**
+     * Busca a sessão do Sender sem criá-la, para os pacotes que somente consultam o estado da sessão.
+     *
+     * @return Sessão do Sender, ou null se não houver
+     */
+    private ReceiverSession findSession(SocketAddress peer) {
+        return sessions.find(peer, clock.nanoTime());
+    }
+
+    /**
+     * Atualiza a memória contabilizada para a sessão e remove as sessões menos recentemente ativas caso os limites
+     * tenham sido excedidos.
+     */
+    private void commitSession(ReceiverSession session) {
+        sessions.refresh(session);
+
+        for (ReceiverSession evicted : sessions.evictOverflow(session)) {
+            isSnapshotDirty = true;
+            blockedSessions.remove(evicted);
+            metrics.increment(ProtocolMetrics.Counter.LRU_SESSIONS_EVICTED);
+            System.out.println(String.format(ConsoleMessageConstants.LRU_SESSION_EVICTED, evicted.getPeer()));
+        }
+    }
+
+    /**
+     * Executado periodicamente pela sequenciadora, remove as sessões sem atividade há mais que o tempo limite.
+     */
+    private void evictIdleSessions() {
+        List<ReceiverSession> evictedSessions = sessions.evictIdle(clock.nanoTime());
+        isSnapshotDirty |= !evictedSessions.isEmpty();
+
+        for (ReceiverSession evicted : evictedSessions) {
+            blockedSessions.remove(evicted);
+            metrics.increment(ProtocolMetrics.Counter.IDLE_SESSIONS_EVICTED);
+            System.out.println(String.format(ConsoleMessageConstants.IDLE_SESSION_EVICTED, evicted.getPeer()));
+        }
+    }
+
+    /**
+     * KEEP_ALIVE de um Sender ocioso, somente renova a atividade da sessão.
+     */
+    private void keepAlive(SocketAddress peer) {
+        commitSession(getSession(peer));
+    }
+
+    /**
+     * Trata o OPEN do handshake, negociando a proposta do Sender contra os limites locais. Um OPEN com um novo número
+     * de sequência inicial inicia uma nova conexão, reposicionando a janela da sessão; um OPEN repetido, enviado porque
+     * o ACCEPT se perdeu, só recebe o mesmo ACCEPT novamente.
+     *
+     * @param peer Endereço do Sender
+     * @param openMessage OPEN recebido do Sender
+     * @return ACCEPT com os parâmetros negociados, ou null caso o OPEN seja inválido
+     */
+    private Message acceptConnection(SocketAddress peer, MessageView openMessage) {
+        ConnectionParameters offer = ConnectionParameters.fromMessage(openMessage);
+
+        if (offer == null) {
+            eventListener.onInvalidMessage();
+            return null;
+        }
+
+        ReceiverSession session = getSession(peer);
+        ConnectionParameters negotiated = localParameters.negotiate(offer);
+        boolean isNewConnection = offer.getInitialSequenceNumber() != session.getParameters().getInitialSequenceNumber()
+                || session.isPristine();
+
+        if (isNewConnection) {
+            session.reset(negotiated);
+            isSnapshotDirty = true;
+            blockedSessions.remove(session);
+            durableAcknowledges.removeIf(acknowledge -> acknowledge.session == session);
+            System.out.println(String.format(ConsoleMessageConstants.CONNECTION_ACCEPTED, negotiated));
+        }
+
+        commitSession(session);
+        return session.getParameters().toMessage(MessageType.ACCEPT);
+    }
+
+    /**
+     * Repassa a paridade ao decodificador FEC da sessão, criado no primeiro pacote PARITY.
+     */
+    private Optional<MessageView> recoverFromParity(SocketAddress peer, MessageView parityMessage) {
+        ReceiverSession session = getSession(peer);
+        Optional<MessageView> recovered = session.getFecDecoder().onParityFrame(parityMessage);
+        commitSession(session);
+        return recovered;
+    }
+
+    /**
+     * Repassa o pacote de dados ao decodificador FEC, somente para sessões que negociaram o FEC ou já receberam
+     * paridade, assim as demais não retêm cópias dos pacotes.
+     */
+    private Optional<MessageView> recoverFromData(SocketAddress peer, MessageView dataMessage) {
+        ReceiverSession session = getSession(peer);
+
+        if (!session.usesFec()) {
+            return Optional.empty();
+        }
+
+        Optional<MessageView> recovered = session.getFecDecoder().onDataFrame(dataMessage);
+        commitSession(session);
+        return recovered;
+    }
+
+    /**
+     * @param message Mensagem recebida do Sender
+     * @return true se a mensagem é uma sonda de janela zero
+     */
+    private boolean isWindowProbe(MessageView message) {
+        return MessageType.WINDOW_PROBE.equals(message.getMessageType());
+    }
+
+    /**
+     * Valida mensagens, simplesmente checa se o tipo da mensagem é PACKAGE com mensagem no corpo ou SKIP, que não tem
+     * corpo, e se os campos de stream, quando presentes, são válidos.
+     *
+     * @param message Mensagem recebida do Sender
+     * @return true se a mensagem é válida
+     */
+    private boolean isValidMessage(MessageView message) {
+        boolean hasValidType = MessageType.PACKAGE.equals(message.getMessageType())
+                ? message.hasField(MessageBodyType.BODY.label)
+                : MessageType.SKIP.equals(message.getMessageType());
+
+        return hasValidType && message.hasMessageIndex() && ReceiverSession.hasValidStream(message);
     }
 
     /**
      * Implementação auxiliar para atingir os itens de 3.2 ao 3.5 - Tratamento dos diferentes tipos de envio de mensagem
      *
-     * Caso o buffer esteja cheio e a mensagem não seja a esperada para completar a lacuna de início da janela, então a mensagem
-     * é considerada inválida e o método retorna false e logo não é enviado um ACK para o Sender.
+     * Caso o buffer esteja cheio e a mensagem não seja a esperada para completar a lacuna de início da janela, então a
+     * mensagem é considerada inválida e o método retorna false e logo não é enviado um ACK para o Sender.
      *
      * 3.3 - Fora de ordem
-     *  Todo pacote recebido que é válido, é adicionado ao buffer, como o buffer é ordenado pelo índice dos pacotes, temos
-     *  para a impressão de mensagem de reconhecimento que se o elemento que está no topo do buffer não tem índice igual ao valor do ponteiro
-     *  início da janela (windowStartIndex), este é considerado fora de ordem e então o ponteiro não é atualizado e nenhum item do buffer é removido,
-     *  mas como a implementação segue o princípio de enviar ACKs indivíduais do SR, então um ACK para este pacote é enviado.
+     *  Todo pacote recebido que é válido, é adicionado ao buffer, como o buffer é ordenado pelo índice dos pacotes,
+     *  temos para a impressão de mensagem de reconhecimento que se o elemento que está no topo do buffer não tem índice
+     *  igual ao valor do ponteiro início da janela (windowStartIndex), este é considerado fora de ordem e então o
+     *  ponteiro não é atualizado e nenhum item do buffer é removido, mas como a implementação segue o princípio de
+     *  enviar ACKs indivíduais do SR, então um ACK para este pacote é enviado.
      *
-     *  Caso seja o pacote que completa a primeira lacuna da janela, ou seja, tem índice igual a windowStartIndex, o valor de windowStartIndex
-     *  é incrementado e o correspondente elemento do topo do buffer é removido e isso se repete enquanto o valor do índice do
-     *  pacote for igual à windowStartIndex.
+     *  Caso seja o pacote que completa a primeira lacuna da janela, ou seja, tem índice igual a windowStartIndex, o
+     *  valor de windowStartIndex é incrementado e o correspondente elemento do topo do buffer é removido e isso se
+     *  repete enquanto o valor do índice do pacote for igual à windowStartIndex.
+     *
+     *  Com streams, a ordem de entrega é a de cada stream: o pacote é entregue quando é o próximo do seu stream, e a
+     *  janela só avança sobre pacotes já entregues, assim uma perda em um stream não atrasa a entrega dos demais.
      *
      * 3.4 - Mensagem duplicada
-     *  A verificação de mensagens duplicadas é feita segundo duas bases, o buffer e o ponteiro de início da janela, assim
-     *  caso a mensagem recebida esteja no buffer, ou seu índice seja menor que índice de início da janela, a mensagem é
-     *  então considerada como duplicada e então true é retornado, permitindo a resposta de ACK.
+     *  A verificação de mensagens duplicadas é feita segundo duas bases, o buffer e o ponteiro de início da janela,
+     *  assim caso a mensagem recebida esteja no buffer, ou seu índice seja menor que índice de início da janela, a
+     *  mensagem é então considerada como duplicada e então true é retornado, permitindo a resposta de ACK.
      *
      * 3.5 - Pacotes lentos
-     *  Não tem impacto no Receiver a não ser que outra mensagem seja recebida antes, de modo que nesses casos o tratamento é o
-     *  mesmo que para pacotes fora de ordem.
+     *  Não tem impacto no Receiver a não ser que outra mensagem seja recebida antes, de modo que nesses casos o
+     *  tratamento é o mesmo que para pacotes fora de ordem.
+     *
+     *  Um SKIP, enviado pelo Sender quando o tempo de vida da mensagem expira, é tratado como a própria mensagem, mas
+     *  não é entregue: a janela e o stream avançam sobre ele e o Sender recebe o ACK do índice. Se a mensagem original
+     *  chegar depois, ela é considerada duplicada.
      *
      * @param message
      * @return
      */
-    private synchronized boolean handleReceivedMessage(Message message) {
-        long messageIndex = message.getHeader().getMessageIndex();
+    private boolean handleReceivedMessage(SocketAddress peer, MessageView message) {
+        ReceiverSession session = getSession(peer);
+        long messageIndex = message.getMessageIndex();
 
-        boolean isDuplicatedMessage = messageIndex < this.windowStartIndex || messageBuffer.contains(message);
-        if (isDuplicatedMessage) {
-            System.out.println(String.format(ConsoleMessageConstants.DUPLICATED_MESSAGE, messageIndex));
+        if (session.isResumed()) {
+            resynchronize(session, messageIndex);
+        }
+
+        if (session.isDuplicatedMessage(messageIndex)) {
+            commitSession(session);
+            eventListener.onDuplicatedMessage(messageIndex);
             return true;
         }
 
-        if (isBufferFull() && messageIndex != this.windowStartIndex) {
-            System.out.println(ConsoleMessageConstants.BUFFER_FULL_ERROR);
+        if (session.isBufferFull() && messageIndex != session.getWindowStartIndex()) {
+            commitSession(session);
+            eventListener.onBufferFull(messageIndex);
             return false;
         }
 
-        boolean isAdded = messageBuffer.offer(message);
+        boolean isInOrder = session.receive(messageIndex, message);
+        isSnapshotDirty = true;
 
-        if (!isAdded) {
-            return false;
+        if (acknowledgeOnDurability && session.isAwaitingDelivery(messageIndex)) {
+            session.deferAcknowledge(messageIndex);
         }
 
-        boolean isCurrentExpectedMessage = messageBuffer.peek().getHeader().getMessageIndex().equals(this.windowStartIndex);
-
-        if (messageBuffer.peek().equals(message) && isCurrentExpectedMessage) {
-            System.out.println(String.format(ConsoleMessageConstants.ORDERED_MESSAGE, messageIndex));
+        if (MessageType.SKIP.equals(message.getMessageType())) {
+            metrics.increment(ProtocolMetrics.Counter.SKIPPED_PACKETS);
+            eventListener.onSkippedMessage(messageIndex);
+        } else if (isInOrder) {
+            eventListener.onOrderedMessage(messageIndex);
         } else {
-            String missingMessages = getMissingIndexes(messageIndex);
-            System.out.println(String.format(ConsoleMessageConstants.UNORDERED_MESSAGE, messageIndex, missingMessages));
+            eventListener.onUnorderedMessage(messageIndex, () -> session.getMissingIndexes(messageIndex));
         }
 
-        updateWindow();
+        updateWindow(session);
+        commitSession(session);
 
         return true;
     }
 
     /**
-     * Implementação auxiliar para atingir os itens de 3.7 - Buffer e janela do SR
-     * A ideia da implementação é avançar o ponteiro da janela e remover elementos do buffer enquanto o elemento
-     * do topo tiver índice igual a windowStartIndex
+     * Pula as lacunas do início da janela de uma sessão restaurada que o Sender já considera confirmadas, entregando
+     * em ordem as mensagens do buffer entre elas.
      */
-    private void updateWindow() {
-        while (!messageBuffer.isEmpty() && messageBuffer.peek().getHeader().getMessageIndex().equals(this.windowStartIndex)) {
-            messageBuffer.poll();
-            this.windowStartIndex++;
+    private void resynchronize(ReceiverSession session, long messageIndex) {
+        long limit = messageIndex - session.getParameters().getWindowLength() + 1;
+        boolean isAdvanced = false;
+
+        while (session.skipLeadingGap(limit)) {
+            updateWindow(session);
+            isAdvanced = true;
+        }
+
+        if (isAdvanced) {
+            System.out.println(String.format(ConsoleMessageConstants.RESUMED_WINDOW_ADVANCED, session.getPeer(),
+                    session.getWindowStartIndex()));
         }
     }
 
+    private boolean isDuplicatedMessage(SocketAddress peer, long messageIndex) {
+        ReceiverSession session = findSession(peer);
+        return session != null && session.isDuplicatedMessage(messageIndex);
+    }
+
     /**
-     * Implementação auxiliar para atingir o item de 3.7 - Buffer
-     * O buffer é considerado cheio se o tamanho da janela é igual ao número de elementos no buffer
-     * @return true se o buffer está cheio
+     * Implementação auxiliar para atingir os itens de 3.7 - Buffer e janela do SR.
+     * A ideia da implementação é avançar o ponteiro da janela da sessão e mover elementos do buffer para a fila de
+     * entrega.
+     * Caso a fila de entrega esteja cheia, a janela para de avançar e as mensagens permanecem no buffer até que a
+     * aplicação consuma as anteriores.
      */
-    private boolean isBufferFull() {
-        return Sender.WINDOW_LENGTH == messageBuffer.size();
+    private void updateWindow(ReceiverSession session) {
+        isSnapshotDirty = true;
+
+        if (session.advance(deliveryQueue, drainListener)) {
+            blockedSessions.remove(session);
+        } else {
+            blockedSessions.add(session);
+        }
     }
 
     /**
-     * Implementação auxiliar para atingir o item de 4.2 - Impressão dos pacotes faltantes
-     *
-     * @param lastReceivedIndex - Índice do último pacote recebido
-     * @return Elementos que faltam para completar lacuna
+     * Chamado pela sequenciadora quando há espaço na fila de entrega, retomando o avanço das janelas que foram
+     * interrompidas por contrapressão, na ordem em que pararam.
      */
-    private String getMissingIndexes(long lastReceivedIndex) {
-        StringBuilder builder = new StringBuilder();
+    private void drainWindow() {
+        Iterator<ReceiverSession> iterator = blockedSessions.iterator();
+
+        while (iterator.hasNext()) {
+            ReceiverSession session = iterator.next();
+            long windowStartIndex = session.getWindowStartIndex();
+            long bufferedBytes = session.getBufferedBytes();
+            boolean isDrained = session.advance(deliveryQueue, drainListener);
+            sessions.refresh(session);
 
-        Map<Long, Message> alreadyReceivedMessages = new HashMap<>();
+            // cada mensagem entregue sai do buffer, então o snapshot só muda se o buffer ou a janela mudaram
+            if (session.getWindowStartIndex() != windowStartIndex || session.getBufferedBytes() != bufferedBytes) {
+                isSnapshotDirty = true;
+            }
 
-        for (Message message : messageBuffer) {
-            long messageIndex = message.getHeader().getMessageIndex();
-            if (messageIndex >= this.windowStartIndex && messageIndex < lastReceivedIndex) {
-                alreadyReceivedMessages.put(messageIndex, message);
+            if (!isDrained) {
+                return;
             }
+            iterator.remove();
         }
+    }
+
+    /**
+     * Cria uma mensagem de resposta ao Sender anunciando o espaço disponível no buffer, assim o Sender limita a
+     * quantidade de pacotes em trânsito ao invés de depender de reenvios por timeout quando o Receiver está
+     * sobrecarregado.
+     *
+     * @param peer Endereço do Sender
+     * @param messageType ACKNOWLEDGE para confirmar um pacote ou WINDOW_UPDATE para somente anunciar a janela
+     * @param messageIndex Índice do pacote confirmado, nulo para WINDOW_UPDATE
+     * @return Mensagem com o tamanho da janela disponível no corpo
+     */
+    private Message createWindowMessage(SocketAddress peer, MessageType messageType, Long messageIndex) {
+        return createWindowMessage(getSession(peer), messageType, messageIndex);
+    }
 
-        for (long i = this.windowStartIndex; i < lastReceivedIndex; i++) {
-            if (!alreadyReceivedMessages.containsKey(i)) {
-                builder.append(" " + i + " ");
+    private static Message createWindowMessage(ReceiverSession session, MessageType messageType, Long messageIndex) {
+        return createWindowMessage(session.getAvailableWindow(), messageType, messageIndex);
+    }
+
+    private static Message createWindowMessage(int availableWindow, MessageType messageType, Long messageIndex) {
+        Message message = new Message(messageType, messageIndex);
+        message.addMessage(MessageBodyType.WINDOW.label, availableWindow);
+        return message;
+    }
+
+    /**
+     * Responde à sonda de janela zero com a janela da sessão. Um Sender sem sessão recebe a janela de uma sessão nova
+     * sem que ela seja criada, assim sondas forjadas de muitos endereços não ocupam a tabela fora dos seus limites.
+     */
+    private Message createProbeReply(SocketAddress peer) {
+        ReceiverSession session = findSession(peer);
+
+        return session != null
+                ? createWindowMessage(session, MessageType.WINDOW_UPDATE, null)
+                : createWindowMessage(ConnectionParameters.defaults().getWindowLength(), MessageType.WINDOW_UPDATE,
+                        null);
+    }
+
+    /**
+     * Grava no log a mensagem que saiu da janela e, se o seu ACK foi adiado, o enfileira até o commit. Uma falha no
+     * log é guardada e acorda a thread ouvinte, que para o Receiver lançando a falha; seguir em frente deixaria o ACK
+     * retido para sempre e o Sender reenviando a mensagem sem fim.
+     */
+    private void logDelivery(ReceiverSession session, long messageIndex, MessageView message) {
+        try {
+            long sequence = deliveryLog.append(session.getPeer(), message.getBuffer(), message.getOffset(),
+                    message.getLength());
+
+            if (session.isAcknowledgeDeferred(messageIndex)) {
+                durableAcknowledges.add(new DurableAcknowledge(session, messageIndex, sequence));
             }
+        } catch (IOException e) {
+            if (deliveryLogFailure == null) {
+                deliveryLogFailure = e;
+            }
+            transport.wakeup();
         }
+    }
 
-        return builder.toString();
+    /**
+     * Envia os ACKs adiados cujas mensagens já foram gravadas com fsync, descartando os de sessões removidas.
+     */
+    private void releaseDurableAcknowledges() {
+        if (durableAcknowledges.isEmpty()) {
+            return;
+        }
+
+        long durableSequence = deliveryLog.getDurableSequence();
+
+        while (!durableAcknowledges.isEmpty() && durableAcknowledges.peekFirst().sequence <= durableSequence) {
+            DurableAcknowledge acknowledge = durableAcknowledges.pollFirst();
+            ReceiverSession session = acknowledge.session;
+
+            if (!session.isEvicted() && session.releaseAcknowledge(acknowledge.messageIndex)) {
+                sendReply(session.getPeer(), createWindowMessage(session, MessageType.ACKNOWLEDGE,
+                        acknowledge.messageIndex));
+            }
+        }
     }
 
     /**
-     * Thread usada para enviar mensagens ao Sender
+     * ACK adiado até o commit da mensagem de sequência sequence no log de entregas.
      */
-    class MessageSenderThread extends Thread {
+    static final class DurableAcknowledge {
+        private final ReceiverSession session;
+        private final long messageIndex;
+        private final long sequence;
 
-        private final Header header;
-        private final DatagramPacket datagramPacket;
+        /**
+         * @param session Sessão do Sender que aguarda o ACK
+         * @param messageIndex Índice da mensagem reconhecida
+         * @param sequence Sequência da mensagem no log de entregas
+         */
+        DurableAcknowledge(ReceiverSession session, long messageIndex, long sequence) {
+            this.session = session;
+            this.messageIndex = messageIndex;
+            this.sequence = sequence;
+        }
+    }
 
-        public MessageSenderThread(final DatagramPacket datagramPacket, Header header) {
-            this.header = header;
-            this.datagramPacket = datagramPacket;
+    /**
+     * Envia uma resposta ao Sender, codificando-a uma única vez para o envio e para a captura.
+     */
+    private void sendReply(SocketAddress peer, Message message) {
+        byte[] frame = MessageCodec.encode(message);
+        PacketCapture currentCapture = capture;
+
+        if (currentCapture != null) {
+            currentCapture.record(PacketCapture.Direction.SENT, peer, frame, 0, frame.length);
         }
 
-        @Override
-        public void run() {
-            Message message = new Message(MessageType.ACKNOWLEDGE, header.getMessageIndex());
-            Message.sendUdpMessage(message, datagramPacket.getAddress().getHostAddress(), datagramPacket.getPort(), socketUDP);
+        try {
+            transport.send(peer, frame, 0, frame.length);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
     private static int readServerPort() {
         System.out.println("Digite a porta do Receiver:");
-        try (Scanner scanner = new Scanner(System.in)){
+        try (Scanner scanner = new Scanner(System.in)) {
             return scanner.nextInt();
-        } catch (Exception e) {
+        } catch (NoSuchElementException e) {
             return SOCKET_RECEIVED_PORT;
         }
     }
 
+    /**
+     * Inicia o Receiver na porta digitada pelo usuário e imprime no console os eventos dos pacotes recebidos.
+     *
+     * @param args Não utilizados
+     */
+    @SuppressWarnings("checkstyle:IllegalCatch")
     public static void main(String[] args) {
         int porta = readServerPort();
 
-        try (Receiver Receiver = new Receiver(porta)){
-            Receiver.listenForMessages();
+        try (PacketCapture capture = PacketCapture.fromSystemProperty();
+                ReceiverSnapshot snapshot = ReceiverSnapshot.fromSystemProperty();
+                Receiver receiver = new Receiver(porta)) {
+            receiver.setEventListener(new ConsoleEventListener());
+            receiver.enableCapture(capture);
+            if (snapshot != null) {
+                receiver.enableSnapshots(snapshot, DEFAULT_SNAPSHOT_PERIOD_MILLIS);
+            }
+            receiver.listenForMessages();
         } catch (Exception e) {
             e.printStackTrace();
         }
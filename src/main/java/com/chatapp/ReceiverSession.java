@@ -0,0 +1,596 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Estado do Receiver para um Sender: parâmetros da conexão, janela do SR, buffer de mensagens fora de ordem, streams e
+ * decodificador FEC, além do instante da última atividade usado na remoção de sessões ociosas.
+ *
+ * A janela do SR é uma só para a conexão, indexada pelo índice global dos pacotes, mas a ordem de entrega é por stream:
+ * uma mensagem é entregue assim que todas as anteriores do seu stream foram entregues, mesmo que falte um pacote de
+ * outro stream. Mensagens sem stream, de Senders que não negociaram streams, formam um stream implícito ordenado pelo
+ * índice global, com o mesmo comportamento de antes.
+ *
+ * Não é thread-safe, todo acesso é feito pela thread sequenciadora do Receiver.
+ */
+final class ReceiverSession {
+
+    /**
+     * Estimativa do custo fixo de uma sessão, somado aos buffers retidos na contabilidade de memória.
+     */
+    static final long SESSION_OVERHEAD_BYTES = 512;
+    static final long STREAM_OVERHEAD_BYTES = 64;
+    /**
+     * Stream das mensagens sem os campos de stream.
+     */
+    static final int IMPLICIT_STREAM = -1;
+    /**
+     * Marca no buffer os pacotes já entregues cujo índice ainda não saiu da janela, aguardando uma lacuna anterior.
+     */
+    private static final MessageView HANDED_OFF = new MessageView();
+    /**
+     * Máscara que lê a porta gravada em um short como valor sem sinal.
+     */
+    private static final int PORT_MASK = 0xFFFF;
+    private static final int IPV4_ADDRESS_LENGTH = 4;
+    private static final int IPV6_ADDRESS_LENGTH = 16;
+
+    private final SocketAddress peer;
+    private ConnectionParameters parameters;
+    private long windowStartIndex;
+    /**
+     * Buffer utilizado para atender item 3.7.
+     *
+     * A estrutura de dados escolhida é o TreeMap indexado pelo índice dos pacotes, de forma que as mensagens ficam
+     * ordenadas de forma crescente e sempre teremos como primeira entrada a mensagem mais antiga. Os valores são views
+     * sobre os bytes recebidos, assim nenhuma Message é construída para pacotes que ainda aguardam a janela. Pacotes já
+     * entregues pelo seu stream ficam marcados com HANDED_OFF até a janela passar por eles.
+     */
+    private final NavigableMap<Long, MessageView> messageBuffer;
+    private long bufferedBytes;
+    private final Map<Integer, StreamState> streams;
+    /**
+     * Streams cuja próxima mensagem já chegou e aguarda espaço na fila de entrega, na ordem em que ficaram prontos.
+     */
+    private final Set<StreamState> readyStreams;
+    private FecDecoder fecDecoder;
+    /**
+     * Índices cujo ACK só será enviado quando a mensagem estiver gravada no log de entregas.
+     */
+    private final Set<Long> deferredAcknowledges;
+    private long lastActivityNanos;
+    /**
+     * true para a sessão restaurada de um snapshot, até o próximo OPEN do Sender.
+     */
+    private boolean resumed;
+    /**
+     * Bytes desta sessão já somados ao total da tabela de sessões.
+     */
+    private long accountedBytes;
+    private boolean evicted;
+
+    /**
+     * @param peer Endereço do Sender
+     * @param nowNanos Instante da criação, tomado como a última atividade da sessão
+     */
+    ReceiverSession(SocketAddress peer, long nowNanos) {
+        this.peer = peer;
+        this.parameters = ConnectionParameters.defaults();
+        this.windowStartIndex = parameters.getInitialSequenceNumber();
+        this.messageBuffer = new TreeMap<>();
+        this.streams = new HashMap<>();
+        this.readyStreams = new LinkedHashSet<>();
+        this.deferredAcknowledges = new HashSet<>();
+        this.lastActivityNanos = nowNanos;
+    }
+
+    SocketAddress getPeer() {
+        return peer;
+    }
+
+    long getAccountedBytes() {
+        return accountedBytes;
+    }
+
+    void setAccountedBytes(long accountedBytes) {
+        this.accountedBytes = accountedBytes;
+    }
+
+    ConnectionParameters getParameters() {
+        return parameters;
+    }
+
+    long getWindowStartIndex() {
+        return windowStartIndex;
+    }
+
+    long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    void touch(long nowNanos) {
+        lastActivityNanos = nowNanos;
+    }
+
+    boolean isEvicted() {
+        return evicted;
+    }
+
+    /**
+     * @return true se a sessão ainda não recebeu nenhum pacote de dados desde o início da conexão
+     */
+    boolean isPristine() {
+        return windowStartIndex == parameters.getInitialSequenceNumber() && messageBuffer.isEmpty();
+    }
+
+    /**
+     * Inicia uma nova conexão com os parâmetros negociados, descartando o estado da conexão anterior.
+     */
+    void reset(ConnectionParameters negotiated) {
+        messageBuffer.clear();
+        bufferedBytes = 0;
+        streams.clear();
+        readyStreams.clear();
+        deferredAcknowledges.clear();
+        fecDecoder = null;
+        parameters = negotiated;
+        windowStartIndex = negotiated.getInitialSequenceNumber();
+        resumed = false;
+    }
+
+    /**
+     * Libera o estado da sessão removida da tabela, que deixa de ser contabilizada.
+     */
+    void evict() {
+        reset(parameters);
+        evicted = true;
+    }
+
+    /**
+     * @return true se o FEC foi negociado ou se o Sender já enviou paridade sem handshake
+     */
+    boolean usesFec() {
+        return fecDecoder != null || parameters.hasFeature(ConnectionParameters.Feature.FEC);
+    }
+
+    /**
+     * @return Decodificador FEC da sessão, criado no primeiro uso
+     */
+    FecDecoder getFecDecoder() {
+        if (fecDecoder == null) {
+            fecDecoder = new FecDecoder();
+        }
+        return fecDecoder;
+    }
+
+    boolean isDuplicatedMessage(long messageIndex) {
+        return messageIndex < windowStartIndex || messageBuffer.containsKey(messageIndex);
+    }
+
+    /**
+     * @return true se o pacote está no buffer aguardando a entrega, ou seja, não é um SKIP nem um índice de stream
+     *         repetido
+     */
+    boolean isAwaitingDelivery(long messageIndex) {
+        MessageView message = messageBuffer.get(messageIndex);
+        return message != null && message != HANDED_OFF;
+    }
+
+    void deferAcknowledge(long messageIndex) {
+        deferredAcknowledges.add(messageIndex);
+    }
+
+    boolean isAcknowledgeDeferred(long messageIndex) {
+        return deferredAcknowledges.contains(messageIndex);
+    }
+
+    /**
+     * @return true se o ACK estava adiado e ainda pertence à conexão atual da sessão
+     */
+    boolean releaseAcknowledge(long messageIndex) {
+        return deferredAcknowledges.remove(messageIndex);
+    }
+
+    /**
+     * O buffer é considerado cheio se o tamanho da janela é igual ao número de elementos no buffer.
+     */
+    boolean isBufferFull() {
+        return parameters.getWindowLength() <= messageBuffer.size();
+    }
+
+    /**
+     * @return Quantidade de posições livres no buffer de recebimento
+     */
+    int getAvailableWindow() {
+        return Math.max(0, parameters.getWindowLength() - messageBuffer.size());
+    }
+
+    /**
+     * @param message Pacote de dados
+     * @return true se o pacote não tem os campos de stream ou se eles são válidos
+     */
+    static boolean hasValidStream(MessageView message) {
+        Object stream = message.getField(MessageBodyType.STREAM.label);
+        Object streamIndex = message.getField(MessageBodyType.STREAM_INDEX.label);
+
+        if (stream == null && streamIndex == null) {
+            return true;
+        }
+
+        return stream instanceof Integer && (Integer) stream >= 0 && (Integer) stream < ConnectionParameters.MAX_STREAMS
+                && streamIndex instanceof Long && (Long) streamIndex >= 0;
+    }
+
+    /**
+     * Guarda um pacote novo no buffer e no seu stream. Um índice de stream repetido com um novo índice global não é
+     * entregue novamente, só ocupa a janela até ela passar por ele. Um SKIP ocupa a posição da mensagem expirada no
+     * buffer e no stream como se já tivesse sido entregue, assim a janela e o stream avançam sobre ela. O pacote
+     * guardado é copiado, já que o buffer de recebimento é reutilizado pelo anel do Receiver.
+     *
+     * @param messageIndex Índice global do pacote
+     * @param message PACKAGE ou SKIP, com os campos de stream válidos ou sem eles
+     * @return true se o pacote é o próximo do seu stream
+     */
+    boolean receive(long messageIndex, MessageView message) {
+        Object streamField = message.getField(MessageBodyType.STREAM.label);
+        int streamId = streamField == null ? IMPLICIT_STREAM : (Integer) streamField;
+        long streamIndex = streamField == null
+                ? messageIndex
+                : (Long) message.getField(MessageBodyType.STREAM_INDEX.label);
+
+        StreamState stream = streams.get(streamId);
+        if (stream == null) {
+            stream = new StreamState(streamId == IMPLICIT_STREAM ? parameters.getInitialSequenceNumber() : 0);
+            streams.put(streamId, stream);
+        }
+
+        if (streamIndex < stream.nextIndex || stream.pending.containsKey(streamIndex)) {
+            messageBuffer.put(messageIndex, HANDED_OFF);
+            return false;
+        }
+
+        if (MessageType.SKIP.equals(message.getMessageType())) {
+            messageBuffer.put(messageIndex, HANDED_OFF);
+        } else {
+            MessageView retained = message.detach();
+            messageBuffer.put(messageIndex, retained);
+            bufferedBytes += retained.getBuffer().length;
+        }
+        stream.pending.put(streamIndex, messageIndex);
+
+        if (streamIndex != stream.nextIndex) {
+            return false;
+        }
+
+        readyStreams.add(stream);
+        return true;
+    }
+
+    /**
+     * Move para a fila de entrega as mensagens dos streams prontos, na ordem de cada stream, e avança o ponteiro da
+     * janela sobre os pacotes já entregues.
+     *
+     * @param deliveryQueue Fila de entrega compartilhada entre as sessões
+     * @return false caso algum stream tenha parado por falta de espaço na fila de entrega
+     */
+    boolean advance(Queue<MessageView> deliveryQueue) {
+        return advance(deliveryQueue, null);
+    }
+
+    /**
+     * @param deliveryQueue Fila de entrega compartilhada entre as sessões
+     * @param listener Avisado de cada mensagem movida para a fila de entrega, na ordem de entrega, ou null
+     * @return false caso algum stream tenha parado por falta de espaço na fila de entrega
+     */
+    boolean advance(Queue<MessageView> deliveryQueue, DrainListener listener) {
+        Iterator<StreamState> iterator = readyStreams.iterator();
+        boolean isDrained = true;
+
+        while (iterator.hasNext()) {
+            if (!drainStream(iterator.next(), deliveryQueue, listener)) {
+                isDrained = false;
+                break;
+            }
+            iterator.remove();
+        }
+
+        while (!messageBuffer.isEmpty() && messageBuffer.firstKey() == windowStartIndex
+                && messageBuffer.firstEntry().getValue() == HANDED_OFF) {
+            messageBuffer.pollFirstEntry();
+            windowStartIndex++;
+        }
+
+        return isDrained;
+    }
+
+    private boolean drainStream(StreamState stream, Queue<MessageView> deliveryQueue, DrainListener listener) {
+        Long messageIndex;
+
+        while ((messageIndex = stream.pending.get(stream.nextIndex)) != null) {
+            MessageView message = messageBuffer.get(messageIndex);
+
+            if (message != HANDED_OFF) {
+                if (!deliveryQueue.offer(message)) {
+                    return false;
+                }
+
+                messageBuffer.put(messageIndex, HANDED_OFF);
+                bufferedBytes -= message.getBuffer().length;
+
+                if (listener != null) {
+                    listener.onDrained(this, messageIndex, message);
+                }
+            }
+
+            stream.pending.remove(stream.nextIndex);
+            stream.nextIndex++;
+        }
+
+        return true;
+    }
+
+    boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Em uma sessão restaurada de um snapshot antigo, o Sender pode já ter recebido o ACK de índices que a sessão não
+     * tem, e que portanto nunca serão reenviados. Pelo invariante do SR, o Sender só envia o índice i com todos os
+     * índices até i - janela já confirmados, então a lacuna do início da janela abaixo desse limite pode ser pulada.
+     * Somente o stream implícito é avançado; com streams explícitos não se sabe a qual stream a lacuna pertence.
+     *
+     * @param limit Primeiro índice que ainda pode não ter sido confirmado ao Sender
+     * @return true se a janela avançou sobre uma lacuna
+     */
+    boolean skipLeadingGap(long limit) {
+        if (windowStartIndex >= limit || streams.size() > 1
+                || (streams.size() == 1 && !streams.containsKey(IMPLICIT_STREAM))) {
+            return false;
+        }
+
+        long target = messageBuffer.isEmpty() ? limit : Math.min(limit, messageBuffer.firstKey());
+
+        if (target <= windowStartIndex) {
+            return false;
+        }
+
+        windowStartIndex = target;
+
+        StreamState stream = streams.get(IMPLICIT_STREAM);
+        if (stream == null) {
+            streams.put(IMPLICIT_STREAM, new StreamState(target));
+        } else if (stream.nextIndex < target) {
+            stream.nextIndex = target;
+            if (stream.pending.containsKey(target)) {
+                readyStreams.add(stream);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Grava o estado da sessão no snapshot: endereço do Sender, parâmetros, início da janela, streams e o buffer da
+     * janela com os pacotes como recebidos. O decodificador FEC e os ACKs adiados não são gravados.
+     *
+     * @param target Buffer com pelo menos {@link #getStateLength()} bytes restantes
+     */
+    void writeState(ByteBuffer target) {
+        InetSocketAddress peerAddress = (InetSocketAddress) peer;
+        byte[] address = peerAddress.getAddress().getAddress();
+        byte[] parametersFrame = MessageCodec.encode(parameters.toMessage(MessageType.ACCEPT));
+
+        target.put((byte) address.length)
+                .put(address)
+                .putShort((short) peerAddress.getPort())
+                .putInt(parametersFrame.length)
+                .put(parametersFrame)
+                .putLong(windowStartIndex)
+                .putInt(streams.size());
+
+        for (Map.Entry<Integer, StreamState> stream : streams.entrySet()) {
+            target.putInt(stream.getKey())
+                    .putLong(stream.getValue().nextIndex)
+                    .putInt(stream.getValue().pending.size());
+
+            for (Map.Entry<Long, Long> pending : stream.getValue().pending.entrySet()) {
+                target.putLong(pending.getKey()).putLong(pending.getValue());
+            }
+        }
+
+        target.putInt(messageBuffer.size());
+
+        for (Map.Entry<Long, MessageView> buffered : messageBuffer.entrySet()) {
+            MessageView message = buffered.getValue();
+            target.putLong(buffered.getKey());
+
+            if (message == HANDED_OFF) {
+                target.putInt(-1);
+            } else {
+                target.putInt(message.getLength()).put(message.getBuffer(), message.getOffset(), message.getLength());
+            }
+        }
+    }
+
+    /**
+     * @return Tamanho do estado gravado por {@link #writeState(ByteBuffer)}
+     */
+    int getStateLength() {
+        int length = 1 + ((InetSocketAddress) peer).getAddress().getAddress().length + Short.BYTES + Integer.BYTES
+                + MessageCodec.encode(parameters.toMessage(MessageType.ACCEPT)).length + Long.BYTES + Integer.BYTES;
+
+        for (StreamState stream : streams.values()) {
+            length += Integer.BYTES + Long.BYTES + Integer.BYTES + stream.pending.size() * 2 * Long.BYTES;
+        }
+
+        length += Integer.BYTES;
+
+        for (MessageView message : messageBuffer.values()) {
+            length += Long.BYTES + Integer.BYTES + (message == HANDED_OFF ? 0 : message.getLength());
+        }
+
+        return length;
+    }
+
+    /**
+     * Lê o endereço do Sender no início do estado gravado por {@link #writeState(ByteBuffer)}.
+     *
+     * @throws UnknownHostException Caso o tamanho gravado não seja o de um endereço IPv4 ou IPv6
+     */
+    static SocketAddress readPeer(ByteBuffer source) throws UnknownHostException {
+        int length = source.get();
+
+        // getByAddress rejeita os demais tamanhos, mas um tamanho negativo falharia antes, ao alocar o array
+        if (length != IPV4_ADDRESS_LENGTH && length != IPV6_ADDRESS_LENGTH) {
+            throw new UnknownHostException("Tamanho de endereço inválido: " + length);
+        }
+
+        byte[] address = new byte[length];
+        source.get(address);
+        return new InetSocketAddress(InetAddress.getByAddress(address), source.getShort() & PORT_MASK);
+    }
+
+    /**
+     * Restaura o restante do estado gravado por {@link #writeState(ByteBuffer)}, após o endereço já lido com
+     * {@link #readPeer(ByteBuffer)}, substituindo o estado atual da sessão. Os streams cuja próxima mensagem está no
+     * buffer ficam prontos para a entrega.
+     *
+     * @param source Buffer posicionado nos parâmetros da sessão
+     * @param deferAcknowledges true para adiar o ACK dos pacotes restaurados que aguardam a entrega, como no log de
+     *        entregas com ACK após o commit
+     * @return false se os parâmetros ou algum pacote gravado forem inválidos
+     */
+    boolean restoreState(ByteBuffer source, boolean deferAcknowledges) {
+        int parametersLength = source.getInt();
+
+        if (parametersLength < 0 || parametersLength > source.remaining()) {
+            return false;
+        }
+
+        byte[] parametersFrame = new byte[parametersLength];
+        source.get(parametersFrame);
+
+        MessageView parametersMessage = new MessageView();
+        ConnectionParameters restored = parametersMessage.wrap(parametersFrame, 0, parametersFrame.length)
+                ? ConnectionParameters.fromMessage(parametersMessage)
+                : null;
+
+        if (restored == null) {
+            return false;
+        }
+
+        reset(restored);
+        windowStartIndex = source.getLong();
+
+        for (int streamCount = source.getInt(); streamCount > 0; streamCount--) {
+            int streamId = source.getInt();
+            StreamState stream = new StreamState(source.getLong());
+
+            for (int pendingCount = source.getInt(); pendingCount > 0; pendingCount--) {
+                stream.pending.put(source.getLong(), source.getLong());
+            }
+
+            streams.put(streamId, stream);
+            if (stream.pending.containsKey(stream.nextIndex)) {
+                readyStreams.add(stream);
+            }
+        }
+
+        for (int bufferedCount = source.getInt(); bufferedCount > 0; bufferedCount--) {
+            long messageIndex = source.getLong();
+            int length = source.getInt();
+
+            if (length < 0) {
+                messageBuffer.put(messageIndex, HANDED_OFF);
+                continue;
+            }
+
+            if (length > source.remaining()) {
+                return false;
+            }
+
+            byte[] frame = new byte[length];
+            source.get(frame);
+
+            MessageView message = new MessageView();
+            if (!message.wrap(frame, 0, length)) {
+                return false;
+            }
+
+            messageBuffer.put(messageIndex, message);
+            bufferedBytes += length;
+            if (deferAcknowledges) {
+                deferredAcknowledges.add(messageIndex);
+            }
+        }
+
+        resumed = true;
+        return true;
+    }
+
+    /**
+     * @param lastReceivedIndex - Índice do último pacote recebido
+     * @return Elementos que faltam para completar lacuna
+     */
+    String getMissingIndexes(long lastReceivedIndex) {
+        StringBuilder builder = new StringBuilder();
+
+        for (long i = windowStartIndex; i < lastReceivedIndex; i++) {
+            if (!messageBuffer.containsKey(i)) {
+                builder.append(" " + i + " ");
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @return Estimativa da memória retida pela sessão: custo fixo, buffer da janela e pacotes do FEC
+     */
+    long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    long getRetainedBytes() {
+        long fecBytes = fecDecoder == null ? 0 : fecDecoder.getRetainedBytes();
+        return SESSION_OVERHEAD_BYTES + streams.size() * STREAM_OVERHEAD_BYTES + bufferedBytes + fecBytes;
+    }
+
+    /**
+     * Recebe as mensagens no momento em que saem da janela para a fila de entrega.
+     */
+    interface DrainListener {
+        void onDrained(ReceiverSession session, long messageIndex, MessageView message);
+    }
+
+    /**
+     * Ordem de entrega de um stream: o próximo índice esperado e os pacotes que chegaram antes dele.
+     */
+    static final class StreamState {
+        private long nextIndex;
+        /**
+         * Índice no stream para o índice global dos pacotes que aguardam uma lacuna do stream.
+         */
+        private final Map<Long, Long> pending;
+
+        StreamState(long firstIndex) {
+            this.nextIndex = firstIndex;
+            this.pending = new HashMap<>();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.chatapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Arquivo mapeado em memória com o snapshot do estado das sessões do Receiver, restaurado ao reiniciar.
+ *
+ * O arquivo tem dois slots de mesmo tamanho e cada snapshot é gravado no slot que não contém o último, seguido de um
+ * force; assim uma queda durante a gravação deixa o slot novo inválido e o anterior intacto. Cada slot tem um cabeçalho
+ * big-endian com magic (4 bytes), versão (4 bytes), geração (8 bytes), tamanho do conteúdo (4 bytes) e o CRC32C do
+ * conteúdo (4 bytes); na leitura vale o slot válido de maior geração. Quando um snapshot não cabe no slot, um arquivo
+ * com slots maiores é gravado ao lado e substitui o atual com um move atômico.
+ *
+ * O snapshot é ligado no Receiver com a propriedade de sistema {@value #SNAPSHOT_FILE_PROPERTY}. O conteúdo é definido
+ * pelo Receiver. Não é thread-safe, é usado somente pela thread sequenciadora do Receiver.
+ */
+public final class ReceiverSnapshot implements AutoCloseable {
+
+    /**
+     * Propriedade de sistema com o caminho do arquivo do snapshot.
+     */
+    public static final String SNAPSHOT_FILE_PROPERTY = "chatapp.snapshot";
+    /**
+     * Tamanho inicial de cada slot, 64 Kb.
+     */
+    public static final int DEFAULT_SLOT_SIZE = 64 * 1024;
+
+    static final int MAGIC = 0x43485353;
+    static final int VERSION = 1;
+    /**
+     * Posições dos campos do cabeçalho a partir do início do slot; o magic fica na posição 0.
+     */
+    static final int VERSION_OFFSET = 4;
+    static final int GENERATION_OFFSET = 8;
+    static final int LENGTH_OFFSET = 16;
+    static final int CRC_OFFSET = 20;
+    static final int SLOT_HEADER_LENGTH = CRC_OFFSET + Integer.BYTES;
+    private static final String GROWTH_SUFFIX = ".tmp";
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer region;
+    private int slotSize;
+    /**
+     * Slot com o último snapshot válido, -1 se não houver nenhum.
+     */
+    private int latestSlot;
+    private long generation;
+
+    /**
+     * @param file Arquivo do snapshot, criado se não existir
+     * @param slotSize Tamanho de cada slot de um arquivo novo; um arquivo existente mantém o seu tamanho
+     * @throws IOException
+     */
+    ReceiverSnapshot(Path file, int slotSize) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long size = channel.size();
+        this.slotSize = size >= 2L * SLOT_HEADER_LENGTH ? (int) (size / 2) : slotSize;
+        this.region = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * this.slotSize);
+        this.latestSlot = -1;
+
+        for (int slot = 0; slot < 2; slot++) {
+            long slotGeneration = region.getLong(slotOffset(slot) + GENERATION_OFFSET);
+
+            if (isValid(slot) && (latestSlot < 0 || slotGeneration > generation)) {
+                latestSlot = slot;
+                generation = slotGeneration;
+            }
+        }
+    }
+
+    /**
+     * Abre o snapshot do arquivo, mantendo o último snapshot gravado caso ele já exista.
+     *
+     * @param file Arquivo do snapshot
+     * @return Snapshot pronto para leitura e gravação
+     * @throws IOException
+     */
+    public static ReceiverSnapshot open(Path file) throws IOException {
+        return new ReceiverSnapshot(file, DEFAULT_SLOT_SIZE);
+    }
+
+    /**
+     * @return Snapshot do arquivo indicado na propriedade {@value #SNAPSHOT_FILE_PROPERTY}, ou null se não definida
+     * @throws IOException
+     */
+    public static ReceiverSnapshot fromSystemProperty() throws IOException {
+        String file = System.getProperty(SNAPSHOT_FILE_PROPERTY);
+        return file == null || file.isEmpty() ? null : open(Paths.get(file));
+    }
+
+    /**
+     * @return Cópia do conteúdo do último snapshot válido, ou null se o arquivo não tiver nenhum
+     */
+    ByteBuffer load() {
+        if (latestSlot < 0) {
+            return null;
+        }
+
+        int offset = slotOffset(latestSlot);
+        ByteBuffer content = region.duplicate();
+        content.position(offset + SLOT_HEADER_LENGTH);
+        content.limit(offset + SLOT_HEADER_LENGTH + region.getInt(offset + LENGTH_OFFSET));
+
+        ByteBuffer copy = ByteBuffer.allocate(content.remaining());
+        copy.put(content).flip();
+        return copy;
+    }
+
+    /**
+     * Grava um novo snapshot, que só substitui o anterior após o force.
+     *
+     * @param content Conteúdo do snapshot, da posição até o limite
+     * @throws IOException
+     */
+    void store(ByteBuffer content) throws IOException {
+        if (content.remaining() > slotSize - SLOT_HEADER_LENGTH) {
+            grow(content);
+            return;
+        }
+
+        int slot = latestSlot == 0 ? 1 : 0;
+        writeSlot(region, slotOffset(slot), generation + 1, content);
+        region.force();
+        latestSlot = slot;
+        generation++;
+    }
+
+    /**
+     * @return Geração do último snapshot válido, 0 se não houver nenhum
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Grava o snapshot no primeiro slot de um arquivo novo, com o dobro do tamanho necessário, e o move sobre o atual.
+     */
+    private void grow(ByteBuffer content) throws IOException {
+        int grownSlotSize = Math.max(slotSize * 2, Integer.highestOneBit(SLOT_HEADER_LENGTH + content.remaining()) * 2);
+        Path grownFile = file.resolveSibling(file.getFileName() + GROWTH_SUFFIX);
+
+        try (FileChannel grownChannel = FileChannel.open(grownFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer grownRegion = grownChannel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * grownSlotSize);
+            writeSlot(grownRegion, 0, generation + 1, content);
+            grownRegion.force();
+        }
+
+        channel.close();
+        Files.move(grownFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        slotSize = grownSlotSize;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2L * slotSize);
+        latestSlot = 0;
+        generation++;
+    }
+
+    private void syncDirectory() {
+        Path directory = file.toAbsolutePath().getParent();
+
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            // nem todo sistema de arquivos permite o fsync do diretório, o move já foi feito de qualquer forma
+        }
+    }
+
+    private static void writeSlot(ByteBuffer target, int offset, long slotGeneration, ByteBuffer content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content.duplicate());
+
+        ByteBuffer slot = target.duplicate();
+        slot.position(offset);
+        slot.putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(slotGeneration)
+                .putInt(content.remaining())
+                .putInt((int) crc.getValue())
+                .put(content.duplicate());
+    }
+
+    private boolean isValid(int slot) {
+        int offset = slotOffset(slot);
+        int length = region.getInt(offset + LENGTH_OFFSET);
+
+        if (region.getInt(offset) != MAGIC || region.getInt(offset + VERSION_OFFSET) != VERSION || length < 0
+                || length > slotSize - SLOT_HEADER_LENGTH) {
+            return false;
+        }
+
+        ByteBuffer content = region.duplicate();
+        content.position(offset + SLOT_HEADER_LENGTH);
+        content.limit(offset + SLOT_HEADER_LENGTH + length);
+
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+        return (int) crc.getValue() == region.getInt(offset + CRC_OFFSET);
+    }
+
+    private int slotOffset(int slot) {
+        return slot * slotSize;
+    }
+}
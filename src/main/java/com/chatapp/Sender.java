@@ -1,105 +1,168 @@
 package com.chatapp;
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
+
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
 import java.io.Console;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Stack;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 
-import com.chatapp.Message.Header;
-import com.chatapp.Message.MessageBodyType;
-import com.chatapp.Message.MessageType;
-
-public final class Sender implements AutoCloseable{
-
+/**
+ * Aplicação de console que envia ao Receiver as mensagens digitadas pelo usuário, com o tipo de envio escolhido
+ * no menu.
+ */
+public final class Sender implements AutoCloseable {
+
+    private static final String DEFAULT_RECEIVER_IP_ADDRESS = "127.0.0.1";
+    private static final int SLOW_OPTION = 0;
+    private static final int LOST_OPTION = 1;
+    private static final int OUT_OF_ORDER_OPTION = 2;
+    private static final int DUPLICATED_OPTION = 3;
+    private static final int REGULAR_OPTION = 4;
+    private static final long SLOW_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final long OUT_OF_ORDER_DELAY_MILLIS = 200L;
+    private static final long HANDSHAKE_TIMEOUT_MILLIS = 10_000L;
     /**
-     *  Sets the default package size for transfer, which is by default 8 Kb.
+     * Período dos KEEP_ALIVEs, um terço do tempo limite de ociosidade padrão do Receiver.
      */
-    public static final int PACKET_TRANSFER_SIZE = 1024 * 8;
+    private static final long KEEP_ALIVE_PERIOD_MILLIS = Receiver.DEFAULT_SESSION_IDLE_TIMEOUT_MILLIS / 3;
     private final Console keyboardReader;
+    private final String receiverIpAddress;
     private final int receiverPort;
     private final int listenerPort;
-    private final DatagramSocket udpSocket;
-    private final MessageListenerThread udpMessageListenerThread;
-    public static final int WINDOW_LENGTH = 5;
-    private long windowStartIndex;
-    private ConcurrentHashMap<Long, BufferItem> pendingAcknowledgeBuffer;
     private long currentMessageIndex;
     private SendMessageStrategy sendMessageStrategy;
-    private String RECEIVER_IP_ADDRESS = "127.0.0.1";
-    private Timer timer;
-    private final ConcurrentHashMap<Long, MessageTask> messageTasksMap;
-    private static final long RESENDING_MESSAGE_PERIOD = 1000l;
-    private final Stack<Message> outOfOrderMessages;
+    /**
+     * Motor do protocolo, dono do canal UDP, da janela e dos temporizadores de reenvio.
+     */
+    private final SenderEventLoop sendEngine;
+    /**
+     * Pilha das mensagens fora de ordem, acessada somente pela thread do console.
+     */
+    private final Deque<Message> outOfOrderMessages;
+    /**
+     * Captura dos pacotes, ligada pela propriedade de sistema {@value PacketCapture#CAPTURE_FILE_PROPERTY}.
+     */
+    private final PacketCapture capture;
 
     /**
      * Implementação auxiliar para atingir o item 3.9 - Inicialização do sender
      *
-     * Permite ao usuário configurar qual a porta destino do sender, além de inicializar a thread ouvinte de mensagens.
+     * Permite ao usuário configurar qual o endereço e a porta destino do sender, além de inicializar o event loop do
+     * protocolo e fazer o handshake com o Receiver. O número de sequência inicial é sorteado, assim pacotes atrasados
+     * de uma conexão anterior não são confundidos com os da nova conexão.
      *
-     * @throws IOException
+     * @throws IOException Caso o Receiver não responda ao handshake
      */
     public Sender() throws IOException {
-        this.windowStartIndex = 0;
-        this.pendingAcknowledgeBuffer = new ConcurrentHashMap<>();
-        currentMessageIndex = 0;
-
         this.keyboardReader = System.console();
 
         System.out.println(ConsoleMessageConstants.TARGET_RECEIVER_CONFIGURATION);
 
+        System.out.println(ConsoleMessageConstants.ASK_RECEIVER_IP);
+        String ipAddress = keyboardReader.readLine().trim();
+        this.receiverIpAddress = ipAddress.isEmpty() ? DEFAULT_RECEIVER_IP_ADDRESS : ipAddress;
+
         System.out.println(ConsoleMessageConstants.ASK_RECEIVER_PORT);
         this.receiverPort = Integer.parseInt(keyboardReader.readLine());
 
         System.out.println(ConsoleMessageConstants.ASK_SENDER_PORT);
         this.listenerPort = Integer.parseInt(keyboardReader.readLine());
 
-        this.udpSocket = new DatagramSocket(listenerPort);
-        this.udpMessageListenerThread =  new MessageListenerThread();
-        udpMessageListenerThread.start();
+        ConnectionParameters proposal = new ConnectionParameters(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE,
+                ConnectionParameters.DEFAULT_WINDOW_LENGTH, ThreadLocalRandom.current().nextLong(Integer.MAX_VALUE),
+                ConnectionParameters.DEFAULT_RESEND_PERIOD, ConnectionParameters.AckPolicy.IMMEDIATE,
+                EnumSet.of(ConnectionParameters.Feature.KEEP_ALIVE));
 
-        this.timer = new Timer();
-        this.messageTasksMap = new ConcurrentHashMap<>();
+        this.sendEngine = new SenderEventLoop(listenerPort, new InetSocketAddress(receiverIpAddress, receiverPort),
+                proposal);
+        this.sendEngine.enableKeepAlive(KEEP_ALIVE_PERIOD_MILLIS);
+        this.sendEngine.setEventListener(new ConsoleEventListener());
+        this.capture = PacketCapture.fromSystemProperty();
+        this.sendEngine.enableCapture(capture);
+        this.sendEngine.start();
 
-        this.outOfOrderMessages = new Stack<>();
-    }
+        ConnectionParameters parameters;
+        try {
+            parameters = sendEngine.connect(HANDSHAKE_TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            closeConnection(sendEngine);
+            closeConnection(capture);
+            throw e;
+        }
+        System.out.println(String.format(ConsoleMessageConstants.CONNECTION_ESTABLISHED, parameters));
+        this.currentMessageIndex = parameters.getInitialSequenceNumber();
 
+        this.outOfOrderMessages = new ArrayDeque<>();
+    }
 
     private void setSendMessageStrategy(SendMessageStrategy strategy) {
         this.sendMessageStrategy = strategy;
     }
 
-
     @Override
     public void close() throws IOException {
-        udpSocket.close();
-        timer.cancel();
+        sendEngine.close();
+        closeConnection(capture);
     }
 
     /**
-     * Define em formato de constantes as mensagens que serão impressas no console, tem o intuito de padronizar e centralizar
+     * Imprime no console os eventos da janela de envio do event loop.
+     */
+    static class ConsoleEventListener implements SenderEventLoop.EventListener {
+        @Override
+        public void onAcknowledge(long messageIndex) {
+            System.out.println(String.format(ConsoleMessageConstants.MESSAGE_RECEIVED, messageIndex));
+        }
+
+        @Override
+        public void onRetransmission(long messageIndex) {
+            System.out.println(String.format(ConsoleMessageConstants.RESENDING_PACKAGE_MESSAGE, messageIndex));
+        }
+
+        @Override
+        public void onExpiration(long messageIndex) {
+            System.out.println(String.format(ConsoleMessageConstants.EXPIRED_PACKAGE_MESSAGE, messageIndex));
+        }
+
+        @Override
+        public void onZeroWindow() {
+            System.out.println(ConsoleMessageConstants.ZERO_WINDOW_MESSAGE);
+        }
+    }
+
+    /**
+     * Define em formato de constantes as mensagens que serão impressas no console, tem o intuito de padronizar e
+     * centralizar.
      */
     static class ConsoleMessageConstants {
-        public final static String TARGET_RECEIVER_CONFIGURATION = "Configurando receiver alvo";
-        public final static String ASK_RECEIVER_IP = "Digite o endereço IP do receiver";
-        public final static String ASK_RECEIVER_PORT = "Digite a porta do receiver";
-        public final static String ASK_SENDER_PORT = "Digite a porta ouvinte";
-        public final static String MENU_MESSAGE_REQUEST = "Digite a mensagem que deseja enviar";
-        public final static String MENU_OPENING = "Digite o número do tipo de envio";
-        public final static List<String> MENU_OPTIONS = List.of("lenta", "perda", "fora de ordem", "duplicada", "normal");
-        public final static String MENU_SELECTION_ERROR = "Erro ao escolher opção, tente novamente";
-        public final static String MESSAGE_SENT = "Mensagem \"%s\" enviada como [%s] com id %d";
-        public final static String MESSAGE_RECEIVED = "Mensagem de id %d recebida pelo receiver";
-        public final static String RESENDING_PACKAGE_MESSAGE = "Mensagem de id %d não teve o recebimento confirmado, e portanto será reenviada";
-        public final static String BUFFER_FULL_MESSAGE = "O buffer de mensagem está cheio e enquanto não houver espaço disponível, novas mensagens serão rejeitadas";
+        public static final String TARGET_RECEIVER_CONFIGURATION = "Configurando receiver alvo";
+        public static final String ASK_RECEIVER_IP =
+                "Digite o endereço IP do receiver (vazio para " + DEFAULT_RECEIVER_IP_ADDRESS + ")";
+        public static final String ASK_RECEIVER_PORT = "Digite a porta do receiver";
+        public static final String ASK_SENDER_PORT = "Digite a porta ouvinte";
+        public static final String MENU_MESSAGE_REQUEST = "Digite a mensagem que deseja enviar";
+        public static final String MENU_OPENING = "Digite o número do tipo de envio";
+        public static final List<String> MENU_OPTIONS =
+                List.of("lenta", "perda", "fora de ordem", "duplicada", "normal");
+        public static final String MENU_SELECTION_ERROR = "Erro ao escolher opção, tente novamente";
+        public static final String MESSAGE_SENT = "Mensagem \"%s\" enviada como [%s] com id %d";
+        public static final String MESSAGE_RECEIVED = "Mensagem de id %d recebida pelo receiver";
+        public static final String RESENDING_PACKAGE_MESSAGE =
+                "Mensagem de id %d não teve o recebimento confirmado, e portanto será reenviada";
+        public static final String BUFFER_FULL_MESSAGE = "O buffer de mensagem está cheio e enquanto não houver espaço "
+                + "disponível, novas mensagens serão rejeitadas";
+        public static final String CONNECTION_ESTABLISHED = "Conexão estabelecida com %s";
+        public static final String EXPIRED_PACKAGE_MESSAGE =
+                "Mensagem de id %d expirou sem confirmação, o Receiver será avisado para pular o seu índice";
+        public static final String ZERO_WINDOW_MESSAGE =
+                "O Receiver anunciou janela zero, enviando sondas até que haja espaço disponível";
     }
 
     /**
@@ -122,14 +185,12 @@ public final class Sender implements AutoCloseable{
     class RegularMessageSenderStrategy implements SendMessageStrategy {
 
         /**
-         * Inicializa normalmente a Thread MessageSenderThread, que é quem faz o envio de fato via UDP, também aciona o método
-         * responsável por agendar o reenvio da mensagem de forma periódica, para o caso em que o Receiver responda com sucesso
-         * com um ACK dentro da janela esperada.
+         * Envia normalmente a mensagem pelo event loop, que também agenda o reenvio da mensagem de forma periódica até
+         * que o Receiver responda com um ACK.
          */
         @Override
         public void send(Message message) {
-            new MessageSenderThread(message).start();
-            createResendMessageTask(message);
+            sendEngine.send(message, 0, 1);
         }
     }
 
@@ -139,12 +200,12 @@ public final class Sender implements AutoCloseable{
      */
     class LostMessageSenderStrategy implements SendMessageStrategy {
         /**
-         * A ideia é simplesmente não enviar o pacote e só agendar o reenvio periódico, como não é enviado, então obrigatoriamente
-         * ocorrerá o "reenvio" via agendamento.
+         * A ideia é simplesmente não enviar o pacote e só agendar o reenvio periódico, como não é enviado, então
+         * obrigatoriamente ocorrerá o "reenvio" via agendamento.
          */
         @Override
         public void send(Message message) {
-            createResendMessageTask(message);
+            sendEngine.send(message, 0, 0);
         }
     }
 
@@ -152,40 +213,22 @@ public final class Sender implements AutoCloseable{
      * Implementação de envio de pacote lento.
      * Atende o item 3.6 - Pacotes lentos.
      */
-    class SlowMessageSenderStrategy implements SendMessageStrategy{
+    class SlowMessageSenderStrategy implements SendMessageStrategy {
 
         private final long delay;
 
-        public SlowMessageSenderStrategy(long delay) {
+        SlowMessageSenderStrategy(long delay) {
             this.delay = delay;
         }
 
         /**
-         * A estratégia de implementação é agendar o envio de mensagem com o auxílio da classe TimerTask, após a chamada do método
-         * para a mensagem é enviada uma única vez após um período de tempo em milisegundos definido pelo atributo 'delay'.
+         * A estratégia de implementação é agendar o envio de mensagem no temporizador do event loop, assim a mensagem é
+         * enviada uma única vez após um período de tempo em milisegundos definido pelo atributo 'delay' e só então o
+         * reenvio periódico é agendado.
          */
         @Override
         public void send(Message message) {
-            TimerTask task = new DelayedMessageSenderTask(message);
-            timer.schedule(task, delay);
-        }
-
-        /**
-         * É executado com base no agendamente feito pelo Timer, simplesmente inicializa a Thread para o  envio de mensagens
-         * e adiciona o agendamento periódico para reenvio em caso de atraso/perda do pacote.
-         */
-        private final class DelayedMessageSenderTask extends TimerTask {
-            Message message;
-
-            public DelayedMessageSenderTask(Message message) {
-                this.message = message;
-            }
-
-            @Override
-            public void run() {
-                new MessageSenderThread(message).start();
-                createResendMessageTask(message);
-            }
+            sendEngine.send(message, delay, 1);
         }
     }
 
@@ -196,29 +239,27 @@ public final class Sender implements AutoCloseable{
     class DuplicatedMessageSenderStrategy implements SendMessageStrategy {
 
         /**
-         * A estratégia é bem simples, simplesmente cria duas threads para o envio de mensagem e agenda o reenvio periódico.
+         * A estratégia é bem simples, simplesmente transmite duas cópias da mensagem e agenda o reenvio periódico.
          */
         @Override
         public void send(Message message) {
-            new MessageSenderThread(message).start();
-            new MessageSenderThread(message).start();
-            createResendMessageTask(message);
+            sendEngine.send(message, 0, 2);
         }
     }
 
     /**
     * Implementação de envio de pacote fora de ordem.
     * Atende o item 3.6 - Pacotes fora de ordem.
-    * A estratégia é adicionar à uma Stack que contém as mensagens fora de ordem, assim quando qualquer outro tipo
-    * de mensagem que não seja "fora de ordem" for executado, têm-se a remoção dos elementos da pilha e a chamada para envio como
-    * mensagens do tipo lento, mas que terão delay de 200 ms. Na pilha teremos o armazenamento no formato mais-recente -> mais-antigo,
-    * ainda adiciona-se um delay de 200 ms, para que evite-se de chegarem ao "mesmo tempo".
+    * A estratégia é adicionar à uma pilha que contém as mensagens fora de ordem, assim quando qualquer outro tipo
+    * de mensagem que não seja "fora de ordem" for executado, têm-se a remoção dos elementos da pilha e a chamada para
+    * envio como mensagens do tipo lento, mas que terão delay de 200 ms. Na pilha teremos o armazenamento no formato
+    * mais-recente -> mais-antigo, ainda adiciona-se um delay de 200 ms, para que evite-se de chegarem ao "mesmo tempo".
     */
     class OutOfOrderSenderStrategy implements SendMessageStrategy {
 
         /**
-         * Nessa etapa, simplesmente adiciona a mensagem ao topo da pilha de mensagens fora de ordem e nem mesmo faz o agendamento para
-         * reenvio.
+         * Nessa etapa, simplesmente adiciona a mensagem ao topo da pilha de mensagens fora de ordem e nem mesmo faz o
+         * agendamento para reenvio.
          */
         @Override
         public void send(Message message) {
@@ -227,125 +268,14 @@ public final class Sender implements AutoCloseable{
     }
 
     /**
-     * Representa um elemento do buffer e visa ajudar a contemplar o item 3.7 das funcionalidades.
-     * A ideia é armazenar a mensagem e um booleano que decide se o ACK foi recebido ou não, de modo que só será removido do buffer
-     * quando as lacunas forem preenchidas e a janela atualizada.
-     */
-    class BufferItem {
-        private final Message message;
-        private boolean isPendingAcknowledge;
-
-        public BufferItem(final Message message) {
-            this.message = message;
-            this.isPendingAcknowledge = true;
-        }
-
-        public Message getMessage() {
-            return message;
-        }
-
-        public boolean isPendingAcknowledge() {
-            return isPendingAcknowledge;
-        }
-
-        public void acknowledge() {
-            this.isPendingAcknowledge = false;
-        }
-    }
-
-    /**
-     * Thread ouvinte de pacotes UDP que serão recebidas do Receiver.
-     * Visa auxiliar no atingimento do item 4.1, para o recebimento de pacotes.
-     *
-     */
-    class MessageListenerThread extends Thread {
-
-        private DatagramPacket receivedPacket;
-
-        @Override
-        public void run() {
-            while (true) {
-                listenForMessages();
-            }
-        }
-
-        /**
-         * Quando recebe um pacote UDP, encaminha o tratamento.
-         */
-        private void listenForMessages() {
-            byte[] receivedBytes = new byte[PACKET_TRANSFER_SIZE];
-            receivedPacket = new DatagramPacket(receivedBytes, receivedBytes.length);
-            try {
-                udpSocket.receive(receivedPacket);
-                handleReceivedMessage();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-
-        /**
-         * Faz a conversão do pacote recebido em bytes para o objeto Message e então faz a chamada para a atualização do buffer.
-         */
-        private void handleReceivedMessage() {
-            byte[] receivedData = this.receivedPacket.getData();
-
-            try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(receivedData);
-                ObjectInputStream inputObject = new ObjectInputStream(new BufferedInputStream(byteArrayInputStream))) {
-
-                Message message = (Message) inputObject.readObject();
-                updateBuffer(message);
-            } catch (ClassNotFoundException | IOException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    /**
-     * Implementação visa auxiliar no alcance da funcionalidade 3.2 - Reenvio de pacotes por timeout.
-     * Classe que é chamada para execução pelo Timer para o reenvio de pacotes.
-     * A ideia é simplesmente criar e inicializar a thread para o envio de mensagem de forma direta.
-     */
-    class MessageTask extends TimerTask {
-        private final Message message;
-
-        public MessageTask(final Message message) {
-            this.message = message;
-        }
-
-        @Override
-        public void run() {
-            long messageIndex = message.getHeader().getMessageIndex();
-            System.out.println(String.format(ConsoleMessageConstants.RESENDING_PACKAGE_MESSAGE, messageIndex));
-            new MessageSenderThread(message).start();
-        }
-    }
-
-    /**
-     * Thread usada para envio de mensagens de forma paralela, assim sua execução se dá pelo uso do utilitário para envio de
-     * mensagens da classe Message, com a passagem do Socket e demais parâmetros.
-     */
-    class MessageSenderThread extends Thread {
-
-        private final Message message;
-
-        public MessageSenderThread(final Message message) {
-            this.message = message;
-        }
-
-        @Override
-        public void run() {
-            Message.sendUdpMessage(this.message, RECEIVER_IP_ADDRESS, receiverPort, udpSocket);
-        }
-    }
-
-    /**
-     * Generic implementation to close any AutoCloseable instance
+     * Generic implementation to close any AutoCloseable instance.
      *
      * @param <T>
      * @param closeableInstance
      * @return true if the connection was successfully close, false otherwise
      */
-    private static <T extends AutoCloseable> boolean  closeConnection(T closeableInstance) {
+    @SuppressWarnings("checkstyle:IllegalCatch")
+    private static <T extends AutoCloseable> boolean closeConnection(T closeableInstance) {
         try {
             if (closeableInstance != null) {
                 closeableInstance.close();
@@ -356,103 +286,6 @@ public final class Sender implements AutoCloseable{
         }
     }
 
-    /**
-     * Implementação utilizada para ajudar no alcance do item 3.7 - Implementação de buffer
-     * Valida se a mensagem é do tipo ACK, caso seja e se encontre no buffer, chama o método achknowledge() que é usado
-     * para o reconhecimento do recebimento adequado do ACK.
-     *
-     * O método é sincronizado para evitar acessos concorrentes ao buffer.
-     *
-     * @param receivedMessage Mensagem recebida do Receiver
-     */
-    private synchronized void updateBuffer(Message receivedMessage) {
-        Header header = receivedMessage.getHeader();
-
-        if (!MessageType.ACKNOWLEDGE.equals(header.getMessageType())) {
-            return;
-        }
-
-        long index = header.getMessageIndex();
-
-        pendingAcknowledgeBuffer.computeIfPresent(index, (key, value) -> {
-            value.acknowledge();
-            return value;
-        });
-
-        System.out.println(String.format(ConsoleMessageConstants.MESSAGE_RECEIVED, index));
-
-        updateTasks(index);
-        updateWindow();
-    }
-
-    /**
-     * Implementação usada para auxiliar a completude do item 3.7 - Buffer e implementação do protocolo Selective Repeat
-     * Usado para atualizar a janela do Sender, assim a ideia é pegar o elemento correspondente ao início da janela do buffer e se
-     * estiver presente, irá incrementar o atributo windowStartIndex e removendo o elemento correspondente do buffer.
-     */
-    private synchronized void updateWindow() {
-        BufferItem packageItem = pendingAcknowledgeBuffer.get(this.windowStartIndex);
-
-        while (packageItem != null && !packageItem.isPendingAcknowledge) {
-            pendingAcknowledgeBuffer.remove(this.windowStartIndex);
-            this.windowStartIndex++;
-            packageItem = pendingAcknowledgeBuffer.get(this.windowStartIndex);
-        }
-    }
-
-    /**
-     * A ideia desse método é cancelar os jobs de reenvio da última mensagem que foi recebida, pois já teve seu recebimento
-     * confirmado pelo Receiver, tornando desnecessário o reenvio periódico.
-     *
-     * @param messageIndex Indíce do pacote que foi reconhecido pelo Receiver
-     */
-    private synchronized void updateTasks(long messageIndex) {
-        MessageTask task = messageTasksMap.get(messageIndex);
-
-        if (task == null) {
-            return;
-        }
-
-        task.cancel();
-        messageTasksMap.remove(messageIndex);
-        timer.purge();
-    }
-
-    /**
-     * Implementação auxiliar para atingir o item 3.7 - Implementação do buffer de pacotes e 3.1 - Cabeçalho das mensagens
-     * Adiciona a mensagem que será enviada no buffer e incrementa o atributo currentMessageIndex, que representa o índice do pacote.
-     *
-     * @param message Mensagem recebida via input do usuário para envio ao Receiver
-     */
-    private void saveMessageOnBuffer(Message message) {
-        BufferItem packageItem = new BufferItem(message);
-        pendingAcknowledgeBuffer.put(this.currentMessageIndex, packageItem);
-        this.currentMessageIndex++;
-    }
-
-    /**
-     * Implementação auxiliar para atingir o item 3.7 - Reenvio de pacotes perdidos
-     *
-     * A ideia é usar um atributo de instância Timer que trabalha em uma thread separada com um relógio, este permite agendar tarefas
-     * com instâncias do tipo TimerTask. A ideia é que as mensagens sejam reenviadas a cada 1 segundo.
-     *
-     * https://docs.oracle.com/javase/8/docs/api/java/util/Timer.html
-     * https://docs.oracle.com/javase/8/docs/api/java/util/TimerTask.html
-     *
-     * @param message Mensagem que será agendada para reenvio periódico
-     */
-    private void createResendMessageTask(Message message) {
-        long messageIndex = message.getHeader().getMessageIndex();
-
-        if (messageTasksMap.contains(messageIndex)) {
-            return;
-        }
-
-        MessageTask task = new MessageTask(message);
-        timer.scheduleAtFixedRate(task, RESENDING_MESSAGE_PERIOD, RESENDING_MESSAGE_PERIOD);
-        messageTasksMap.put(messageIndex, task);
-    }
-
     /**
      * Implementação auxiliar para atingir o item 3.6 - Envio de pacotes fora de ordem
      *
@@ -460,16 +293,16 @@ public final class Sender implements AutoCloseable{
      * por meio da estratégia de envio lento de mensagens, fazer o envio com um delay de 200 para evitar casos de
      * que a mensagem seja enviada no mesmo instante.
      *
-     * Conforme são enviadas as mensagens são removidas da Stack.
+     * Conforme são enviadas as mensagens são removidas da pilha.
      *
      * @param userOptionIndex
      */
     private void sendOutOfOrderMessages(long userOptionIndex) {
-        if (userOptionIndex == 2) {
+        if (userOptionIndex == OUT_OF_ORDER_OPTION) {
             return;
         }
 
-        setSendMessageStrategy(new SlowMessageSenderStrategy(TimeUnit.MILLISECONDS.toMillis(200)));
+        setSendMessageStrategy(new SlowMessageSenderStrategy(OUT_OF_ORDER_DELAY_MILLIS));
 
         while (!this.outOfOrderMessages.isEmpty()) {
             Message message = this.outOfOrderMessages.pop();
@@ -489,27 +322,32 @@ public final class Sender implements AutoCloseable{
     private void updateMessageStrategy(int userOptionIndex) {
         SendMessageStrategy sendStrategy = null;
 
-        if (userOptionIndex == 0)
-            sendStrategy = new SlowMessageSenderStrategy(TimeUnit.SECONDS.toMillis(10));
+        if (userOptionIndex == SLOW_OPTION) {
+            sendStrategy = new SlowMessageSenderStrategy(SLOW_DELAY_MILLIS);
+        }
 
-        if (userOptionIndex == 1)
+        if (userOptionIndex == LOST_OPTION) {
             sendStrategy = new LostMessageSenderStrategy();
+        }
 
-        if (userOptionIndex == 2)
+        if (userOptionIndex == OUT_OF_ORDER_OPTION) {
             sendStrategy = new OutOfOrderSenderStrategy();
+        }
 
-        if (userOptionIndex == 3)
+        if (userOptionIndex == DUPLICATED_OPTION) {
             sendStrategy = new DuplicatedMessageSenderStrategy();
+        }
 
-        if (userOptionIndex == 4)
+        if (userOptionIndex == REGULAR_OPTION) {
             sendStrategy = new RegularMessageSenderStrategy();
+        }
 
         setSendMessageStrategy(sendStrategy);
     }
 
     /**
-     * Implementação auxiliar para atingir o item 3.6 - Escolha do usuário pelo tipo de envio e 3.7 - Gerenciamento de buffer e
-     * 3.8 - Impressões relacionadas a mensagens
+     * Implementação auxiliar para atingir o item 3.6 - Escolha do usuário pelo tipo de envio e 3.7 - Gerenciamento de
+     * buffer e 3.8 - Impressões relacionadas a mensagens
      *
      * Menu interativo para o envio de mensagens pelo usuário, assim caso o buffer esteja cheio, não permite
      * o envio de mensagens.
@@ -517,10 +355,15 @@ public final class Sender implements AutoCloseable{
      */
     public void interactiveMenu() {
         while (true) {
-            boolean isBufferFull = pendingAcknowledgeBuffer.size() == WINDOW_LENGTH;
+            boolean isBufferFull = sendEngine.getAvailableSlots() <= outOfOrderMessages.size();
 
             if (isBufferFull) {
                 System.out.println(ConsoleMessageConstants.BUFFER_FULL_MESSAGE);
+                try {
+                    sendEngine.awaitWindowSpace(outOfOrderMessages.size());
+                } catch (InterruptedException e) {
+                    return;
+                }
                 continue;
             }
 
@@ -530,7 +373,8 @@ public final class Sender implements AutoCloseable{
             String senderMessage = keyboardReader.readLine();
 
             System.out.println(ConsoleMessageConstants.MENU_OPENING);
-            IntStream.range(0, optionsList.size()).forEach(index -> System.out.printf("%d - %s", index, optionsList.get(index)));
+            IntStream.range(0, optionsList.size())
+                    .forEach(index -> System.out.printf("%d - %s", index, optionsList.get(index)));
             String userOption = keyboardReader.readLine();
             int userOptionIndex = Integer.valueOf(userOption);
 
@@ -538,8 +382,9 @@ public final class Sender implements AutoCloseable{
 
             Message message = new Message(MessageType.PACKAGE, this.currentMessageIndex);
             message.addMessage(MessageBodyType.BODY.label, senderMessage);
-            System.out.println(String.format(ConsoleMessageConstants.MESSAGE_SENT, senderMessage, optionsList.get(userOptionIndex), this.currentMessageIndex));
-            saveMessageOnBuffer(message);
+            System.out.println(String.format(ConsoleMessageConstants.MESSAGE_SENT, senderMessage,
+                    optionsList.get(userOptionIndex), this.currentMessageIndex));
+            this.currentMessageIndex++;
 
             sendMessageStrategy.send(message);
 
@@ -547,9 +392,14 @@ public final class Sender implements AutoCloseable{
         }
     }
 
+    /**
+     * Conecta ao Receiver configurado pelo usuário e abre o menu de envio.
+     *
+     * @param args Não utilizados
+     */
     public static void main(String[] args) {
-        try (Sender Sender = new Sender();) {
-            Sender.interactiveMenu();
+        try (Sender sender = new Sender()) {
+            sender.interactiveMenu();
         } catch (IOException e) {
             System.err.println(e.getMessage());
         }
@@ -0,0 +1,475 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import com.chatapp.TimerQueue.ScheduledTask;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Motor do Sender baseado em um único event loop.
+ *
+ * Uma única thread é dona do transporte, da janela de envio, dos temporizadores de reenvio e do processamento dos ACKs,
+ * como em todo {@link ProtocolEventLoop}; o estado do SR para o Receiver fica em uma {@link SenderSession}.
+ *
+ * Em simulações o event loop não é iniciado: o teste chama {@link #poll()} na sua própria thread e avança o relógio
+ * virtual até {@link #nextDeadlineNanos()}.
+ *
+ * O motor não imprime nada: ACKs, reenvios, expirações e janelas zero são avisados a um {@link EventListener}, que o
+ * Sender do console usa para as suas impressões.
+ */
+public final class SenderEventLoop extends ProtocolEventLoop {
+
+    /**
+     * Stream usado pelos envios que não indicam um stream.
+     */
+    public static final int DEFAULT_STREAM = 0;
+    /**
+     * Quantidade de transmissões de dados usada em cada amostra da taxa de perda que ajusta o FEC adaptativo.
+     */
+    private static final int LOSS_SAMPLE_SIZE = 64;
+    /**
+     * Bytes dos campos de stream que o event loop acrescenta às mensagens quando os streams são negociados.
+     */
+    private static final int STREAM_FIELDS_LENGTH = MessageCodec.fieldLength(MessageBodyType.STREAM.label,
+            Integer.BYTES) + MessageCodec.fieldLength(MessageBodyType.STREAM_INDEX.label, Long.BYTES);
+
+    private final SocketAddress receiverAddress;
+    private final SenderSession<InFlightMessage> session;
+    private final CompletableFuture<ConnectionParameters> acceptedParameters;
+
+    /**
+     * Frames codificados das mensagens da janela, transmitidos como estão nos reenvios.
+     */
+    private final FrameSlab frameSlab;
+    /**
+     * Próximo índice de cada stream, atribuído na ordem em que os envios chegam ao event loop.
+     */
+    private final Map<Integer, Long> streamIndexes;
+
+    /**
+     * Gerador de paridade, nulo quando o FEC está desligado.
+     */
+    private FecEncoder fecEncoder;
+    /**
+     * Bytes reservados em cada frame para o que o event loop acrescenta: os campos de stream e, com o FEC, o PARITY
+     * que leva o frame inteiro.
+     */
+    private int reservedFrameLength = STREAM_FIELDS_LENGTH;
+    private int sampledTransmissions;
+    private int sampledRetransmissions;
+
+    /**
+     * Período dos KEEP_ALIVEs enviados quando não há outra transmissão, 0 quando desligados.
+     */
+    private long keepAlivePeriodMillis;
+    private ScheduledTask keepAliveTask;
+
+    private EventListener eventListener;
+
+    /**
+     * @param listenerPort Porta local na qual os ACKs são recebidos
+     * @param receiverAddress Endereço do Receiver
+     * @param proposedParameters Parâmetros propostos no handshake, usados como estão caso não haja handshake
+     * @throws IOException
+     */
+    public SenderEventLoop(int listenerPort, SocketAddress receiverAddress, ConnectionParameters proposedParameters)
+            throws IOException {
+        this(DatagramTransport.bind(listenerPort), receiverAddress, proposedParameters, Clock.SYSTEM);
+    }
+
+    /**
+     * @param transport Transporte do Sender, fechado junto com o event loop
+     * @param receiverAddress Endereço do Receiver
+     * @param proposedParameters Parâmetros propostos no handshake, usados como estão caso não haja handshake
+     * @param clock Relógio dos temporizadores
+     */
+    public SenderEventLoop(Transport transport, SocketAddress receiverAddress, ConnectionParameters proposedParameters,
+            Clock clock) {
+        super(transport, clock, "sender-event-loop", proposedParameters.getMaxDatagramSize(),
+                proposedParameters.getWindowLength());
+        this.receiverAddress = receiverAddress;
+        this.session = new SenderSession<>(receiverAddress, proposedParameters);
+        this.acceptedParameters = new CompletableFuture<>();
+
+        this.frameSlab = new FrameSlab(proposedParameters.getWindowLength(), proposedParameters.getMaxDatagramSize());
+        this.streamIndexes = new HashMap<>();
+        this.eventListener = new EventListener() {
+        };
+    }
+
+    @Override
+    protected void onStart() {
+        if (keepAlivePeriodMillis > 0) {
+            keepAliveTask = scheduleKeepAlive(keepAlivePeriodMillis,
+                () -> transmit(receiverAddress, new Message(MessageType.KEEP_ALIVE, null)));
+        }
+    }
+
+    /**
+     * Faz o handshake com o Receiver, reenviando o OPEN periodicamente até receber o ACCEPT. Deve ser chamado pela
+     * thread da aplicação após {@link #start()} e antes do primeiro envio.
+     *
+     * @param timeoutMillis Tempo máximo de espera pelo ACCEPT
+     * @return Parâmetros negociados
+     * @throws IOException Caso o Receiver não responda dentro do tempo
+     */
+    public ConnectionParameters connect(long timeoutMillis) throws IOException {
+        return awaitAccept(beginConnect(), timeoutMillis);
+    }
+
+    /**
+     * Inicia o handshake sem bloquear, usado diretamente pelas simulações que conduzem o event loop com
+     * {@link #poll()}.
+     *
+     * @return Futuro completado com os parâmetros negociados quando o ACCEPT chegar
+     */
+    public CompletableFuture<ConnectionParameters> beginConnect() {
+        submit(() -> beginHandshake(session, MessageCodec.encode(session.getParameters().toMessage(MessageType.OPEN))));
+        return acceptedParameters;
+    }
+
+    /**
+     * Liga o modo FEC, em que um pacote de paridade é enviado para cada bloco de groupSize pacotes de dados. Deve ser
+     * chamado antes de {@link #start()} e, com handshake, a funcionalidade FEC deve estar nos parâmetros propostos;
+     * caso o Receiver não a suporte, o FEC é desligado no ACCEPT.
+     *
+     * @param groupSize Tamanho inicial do bloco, a redundância é 1/groupSize
+     * @param adaptive true para ajustar o tamanho do bloco a partir da taxa de reenvio observada
+     */
+    public void enableForwardErrorCorrection(int groupSize, boolean adaptive) {
+        this.fecEncoder = new FecEncoder(groupSize, adaptive, session.getWindowStartIndex());
+        this.reservedFrameLength = STREAM_FIELDS_LENGTH + FecEncoder.PARITY_OVERHEAD;
+    }
+
+    /**
+     * Liga o envio de KEEP_ALIVEs quando o Sender fica ocioso, evitando que o Receiver remova a sessão por
+     * inatividade. Deve ser chamado antes de {@link #start()}; com handshake, os KEEP_ALIVEs são desligados caso o
+     * Receiver não suporte a funcionalidade.
+     *
+     * @param periodMillis Tempo máximo sem transmissões, deve ser menor que o tempo limite de ociosidade do Receiver
+     */
+    public void enableKeepAlive(long periodMillis) {
+        this.keepAlivePeriodMillis = periodMillis;
+    }
+
+    /**
+     * Define quem é avisado dos eventos da janela de envio. Deve ser chamado antes de {@link #start()}.
+     */
+    public void setEventListener(EventListener eventListener) {
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * Enfileira o envio de uma mensagem, pode ser chamado por qualquer thread.
+     *
+     * @param message Mensagem com o índice já definido
+     * @param delayMillis Atraso para a primeira transmissão; o reenvio periódico só é agendado após ela
+     * @param copies Quantidade de cópias na primeira transmissão, 0 simula a perda do pacote
+     */
+    public void send(Message message, long delayMillis, int copies) {
+        send(message, DEFAULT_STREAM, delayMillis, copies);
+    }
+
+    /**
+     * Enfileira o envio de uma mensagem em um stream, pode ser chamado por qualquer thread. Os streams compartilham a
+     * janela e os reenvios, mas o Receiver entrega cada stream na sua própria ordem, assim uma perda em um stream não
+     * atrasa os demais. Sem a funcionalidade STREAMS negociada, todos os envios seguem a ordem global.
+     *
+     * @param message Mensagem com o índice já definido
+     * @param stream Stream da mensagem, de 0 a {@link ConnectionParameters#MAX_STREAMS} - 1
+     * @param delayMillis Atraso para a primeira transmissão; o reenvio periódico só é agendado após ela
+     * @param copies Quantidade de cópias na primeira transmissão, 0 simula a perda do pacote
+     */
+    public void send(Message message, int stream, long delayMillis, int copies) {
+        send(message, stream, delayMillis, copies, 0);
+    }
+
+    /**
+     * Enfileira o envio de uma mensagem com tempo de vida, pode ser chamado por qualquer thread. Se a mensagem não for
+     * confirmada dentro desse tempo, o Sender deixa de reenviá-la e avisa o Receiver com um SKIP, liberando a janela;
+     * útil para mensagens que perdem o sentido quando atrasadas, como presença e indicadores de digitação. Sem a
+     * funcionalidade PARTIAL_RELIABILITY negociada, o tempo de vida é ignorado e a mensagem é reenviada até o ACK.
+     *
+     * @param message Mensagem com o índice já definido
+     * @param stream Stream da mensagem, de 0 a {@link ConnectionParameters#MAX_STREAMS} - 1
+     * @param delayMillis Atraso para a primeira transmissão; o reenvio periódico só é agendado após ela
+     * @param copies Quantidade de cópias na primeira transmissão, 0 simula a perda do pacote
+     * @param timeToLiveMillis Tempo de vida contado a partir do envio, 0 para uma mensagem sem expiração
+     * @throws IllegalArgumentException Caso o stream ou o tempo de vida sejam inválidos, ou a mensagem não caiba em um
+     *             datagrama
+     */
+    public void send(Message message, int stream, long delayMillis, int copies, long timeToLiveMillis) {
+        if (stream < 0 || stream >= ConnectionParameters.MAX_STREAMS) {
+            throw new IllegalArgumentException("Stream inválido: " + stream);
+        }
+
+        if (timeToLiveMillis < 0) {
+            throw new IllegalArgumentException("Tempo de vida inválido: " + timeToLiveMillis);
+        }
+
+        checkFrameLength(message, reservedFrameLength);
+
+        submitSend(() -> {
+            assignStream(message, stream);
+            register(message, delayMillis, copies, timeToLiveMillis);
+        });
+    }
+
+    /**
+     * @return Espaço livre na janela, considerando o tamanho da janela e a janela anunciada pelo Receiver
+     */
+    @Override
+    protected int computeAvailableSlots() {
+        return session.getAvailableSlots();
+    }
+
+    /**
+     * Adiciona a mensagem à janela, já codificada, e agenda sua primeira transmissão. Com o FEC ligado, a paridade do
+     * bloco é enviada logo após o pacote que o completou. Com tempo de vida e a funcionalidade PARTIAL_RELIABILITY
+     * negociada, agenda também a expiração.
+     */
+    private void register(Message message, long delayMillis, int copies, long timeToLiveMillis) {
+        InFlightMessage item = new InFlightMessage(message);
+        long messageIndex = message.getHeader().getMessageIndex();
+        byte[] frame = MessageCodec.encode(message);
+        getMetrics().increment(ProtocolMetrics.Counter.ENCODED_MESSAGES);
+        item.storeFrame(frameSlab, frame);
+        session.add(messageIndex, item);
+
+        if (delayMillis > 0) {
+            getTimers().schedule(delayMillis, 0, () -> startTransmission(item, copies));
+        } else {
+            startTransmission(item, copies);
+        }
+
+        if (timeToLiveMillis > 0
+                && session.getParameters().hasFeature(ConnectionParameters.Feature.PARTIAL_RELIABILITY)) {
+            item.expiryTask = getTimers().schedule(timeToLiveMillis, 0, () -> expire(item));
+        }
+
+        if (fecEncoder != null) {
+            for (Message parity : fecEncoder.add(messageIndex, frame)) {
+                getMetrics().increment(ProtocolMetrics.Counter.PARITY_PACKETS);
+                transmit(receiverAddress, parity);
+            }
+        }
+    }
+
+    /**
+     * Marca a mensagem com o stream e o seu índice no stream, somente se os streams foram negociados.
+     */
+    private void assignStream(Message message, int stream) {
+        if (!session.getParameters().hasFeature(ConnectionParameters.Feature.STREAMS)) {
+            return;
+        }
+
+        long streamIndex = streamIndexes.getOrDefault(stream, 0L);
+        streamIndexes.put(stream, streamIndex + 1);
+
+        message.addMessage(MessageBodyType.STREAM.label, stream);
+        message.addMessage(MessageBodyType.STREAM_INDEX.label, streamIndex);
+    }
+
+    /**
+     * Faz a primeira transmissão e agenda o reenvio periódico, cancelado quando o ACK chegar.
+     */
+    private void startTransmission(InFlightMessage item, int copies) {
+        if (!item.isPendingAcknowledge()) {
+            return;
+        }
+
+        for (int i = 0; i < copies; i++) {
+            transmit(receiverAddress, item);
+        }
+        sampleTransmission(false);
+        scheduleRetransmission(item);
+    }
+
+    private void scheduleRetransmission(InFlightMessage item) {
+        long resendPeriod = session.getParameters().getResendPeriod();
+        item.setRetransmissionTask(getTimers().schedule(resendPeriod, resendPeriod, () -> retransmit(item)));
+    }
+
+    private void retransmit(InFlightMessage item) {
+        long messageIndex = item.message.getHeader().getMessageIndex();
+        eventListener.onRetransmission(messageIndex);
+        getMetrics().increment(ProtocolMetrics.Counter.RETRANSMITTED_PACKETS);
+        transmit(receiverAddress, item);
+        sampleTransmission(true);
+    }
+
+    /**
+     * Substitui a mensagem expirada por um SKIP com o mesmo índice e os mesmos campos de stream, que é reenviado até
+     * ser confirmado como a mensagem seria. Caso a primeira transmissão ainda não tenha ocorrido, ela já enviará o
+     * SKIP.
+     */
+    private void expire(InFlightMessage item) {
+        if (!item.isPendingAcknowledge()) {
+            return;
+        }
+
+        long messageIndex = item.message.getHeader().getMessageIndex();
+        eventListener.onExpiration(messageIndex);
+        getMetrics().increment(ProtocolMetrics.Counter.EXPIRED_PACKETS);
+        item.message = createSkipMessage(item.message);
+        item.releaseFrame(frameSlab);
+        item.storeFrame(frameSlab, MessageCodec.encode(item.message));
+
+        if (item.getRetransmissionTask() != null) {
+            TimerQueue.cancel(item.getRetransmissionTask());
+            transmit(receiverAddress, item);
+            scheduleRetransmission(item);
+        }
+    }
+
+    private static Message createSkipMessage(Message message) {
+        Message skipMessage = new Message(MessageType.SKIP, message.getHeader().getMessageIndex());
+        Object stream = message.getMessages().get(MessageBodyType.STREAM.label);
+
+        if (stream != null) {
+            skipMessage.addMessage(MessageBodyType.STREAM.label, stream);
+            skipMessage.addMessage(MessageBodyType.STREAM_INDEX.label,
+                    message.getMessages().get(MessageBodyType.STREAM_INDEX.label));
+        }
+
+        return skipMessage;
+    }
+
+    /**
+     * Acumula a amostra de transmissões e, a cada LOSS_SAMPLE_SIZE envios, informa ao FEC a fração que foi reenviada.
+     */
+    private void sampleTransmission(boolean isRetransmission) {
+        if (fecEncoder == null) {
+            return;
+        }
+
+        sampledTransmissions++;
+        if (isRetransmission) {
+            sampledRetransmissions++;
+        }
+
+        if (sampledTransmissions == LOSS_SAMPLE_SIZE) {
+            fecEncoder.updateLossRate((double) sampledRetransmissions / sampledTransmissions);
+            sampledTransmissions = 0;
+            sampledRetransmissions = 0;
+        }
+    }
+
+    /**
+     * Trata ACKs e WINDOW_UPDATEs do Receiver, reconhecendo o pacote, cancelando seu reenvio e avançando a janela.
+     */
+    @Override
+    protected void handleFrame(SocketAddress source, MessageView receivedMessage) {
+        MessageType messageType = receivedMessage.getMessageType();
+
+        if (MessageType.ACCEPT.equals(messageType)) {
+            handleAccept(receivedMessage);
+            return;
+        }
+
+        if (MessageType.WINDOW_UPDATE.equals(messageType)) {
+            updateAdvertisedWindow(receivedMessage);
+            return;
+        }
+
+        if (!MessageType.ACKNOWLEDGE.equals(messageType) || !receivedMessage.hasMessageIndex()) {
+            return;
+        }
+
+        updateAdvertisedWindow(receivedMessage);
+
+        long index = receivedMessage.getMessageIndex();
+        InFlightMessage item = session.acknowledge(index);
+
+        if (item != null) {
+            TimerQueue.cancel(item.expiryTask);
+            item.releaseFrame(frameSlab);
+        }
+
+        eventListener.onAcknowledge(index);
+
+        session.advanceWindow();
+    }
+
+    /**
+     * Aplica os parâmetros negociados no ACCEPT. ACCEPTs repetidos ou de outro número de sequência são ignorados.
+     */
+    private void handleAccept(MessageView acceptMessage) {
+        ConnectionParameters negotiated = ConnectionParameters.fromMessage(acceptMessage);
+
+        if (!session.accept(negotiated)) {
+            return;
+        }
+
+        ensureReceiveCapacity(negotiated.getMaxDatagramSize());
+        limitFrameLength(negotiated.getMaxDatagramSize());
+
+        if (!negotiated.hasFeature(ConnectionParameters.Feature.FEC)) {
+            fecEncoder = null;
+        }
+
+        if (!negotiated.hasFeature(ConnectionParameters.Feature.KEEP_ALIVE)) {
+            TimerQueue.cancel(keepAliveTask);
+        }
+
+        acceptedParameters.complete(negotiated);
+    }
+
+    /**
+     * Atualiza a janela anunciada pelo Receiver, avisando quando as sondas de janela zero começam.
+     */
+    private void updateAdvertisedWindow(MessageView receivedMessage) {
+        Object window = receivedMessage.getField(MessageBodyType.WINDOW.label);
+
+        if (window instanceof Integer && updateAdvertisedWindow(session, (Integer) window)) {
+            eventListener.onZeroWindow();
+        }
+    }
+
+    /**
+     * Elemento da janela de envio, guarda além do frame a mensagem e a tarefa de expiração. Após a expiração, a
+     * mensagem é o SKIP que a substitui.
+     */
+    static final class InFlightMessage extends SenderSession.InFlight {
+        private Message message;
+        private ScheduledTask expiryTask;
+
+        InFlightMessage(Message message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * Eventos da janela de envio, avisados na thread do event loop; por isso as implementações devem ser rápidas. Os
+     * métodos não implementados ignoram o evento.
+     */
+    public interface EventListener {
+        /**
+         * @param messageIndex Índice confirmado pelo Receiver, também chamado para ACKs repetidos
+         */
+        default void onAcknowledge(long messageIndex) {
+        }
+
+        /**
+         * @param messageIndex Índice reenviado por falta de confirmação
+         */
+        default void onRetransmission(long messageIndex) {
+        }
+
+        /**
+         * @param messageIndex Índice cujo tempo de vida expirou e que será substituído por um SKIP
+         */
+        default void onExpiration(long messageIndex) {
+        }
+
+        /**
+         * O Receiver anunciou janela zero e as sondas começaram.
+         */
+        default void onZeroWindow() {
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.chatapp;
+
+import com.chatapp.TimerQueue.ScheduledTask;
+import java.net.SocketAddress;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Estado do SR de envio para um Receiver: parâmetros da conexão, handshake, janela de envio com os ACKs pendentes e
+ * janela anunciada com as sondas de janela zero. É a contraparte da {@link ReceiverSession}, usada pelo
+ * {@link SenderEventLoop}, pela metade de envio do {@link Peer} e por cada Receiver do {@link FanOutSender}; os
+ * elementos da janela são de um tipo próprio de cada um, derivado de {@link InFlight}.
+ *
+ * Os temporizadores e as transmissões são do {@link ProtocolEventLoop} dono da sessão. Não é thread-safe, todo acesso
+ * é feito pela thread do event loop.
+ *
+ * @param <T> Elemento da janela de envio
+ */
+class SenderSession<T extends SenderSession.InFlight> {
+
+    private final SocketAddress address;
+    /**
+     * Parâmetros propostos no OPEN e, após o ACCEPT, os parâmetros negociados com o Receiver.
+     */
+    private ConnectionParameters parameters;
+    private boolean accepted;
+    private ScheduledTask openTask;
+
+    /**
+     * Janela de envio indexada pelo índice das mensagens, equivalente ao buffer de ACKs pendentes do Sender original.
+     */
+    private final NavigableMap<Long, T> window;
+    private long windowStartIndex;
+    private int pendingAcknowledgeCount;
+    private int advertisedWindow;
+    private ScheduledTask windowProbeTask;
+
+    /**
+     * @param address Endereço do Receiver
+     * @param proposedParameters Parâmetros propostos no handshake, usados como estão caso não haja handshake
+     */
+    SenderSession(SocketAddress address, ConnectionParameters proposedParameters) {
+        this.address = address;
+        this.parameters = proposedParameters;
+        this.window = new TreeMap<>();
+        this.windowStartIndex = proposedParameters.getInitialSequenceNumber();
+        this.advertisedWindow = proposedParameters.getWindowLength();
+    }
+
+    SocketAddress getAddress() {
+        return address;
+    }
+
+    ConnectionParameters getParameters() {
+        return parameters;
+    }
+
+    boolean isAccepted() {
+        return accepted;
+    }
+
+    long getWindowStartIndex() {
+        return windowStartIndex;
+    }
+
+    /**
+     * @return Quantidade de elementos na janela, confirmados ou não, até o início da janela passar por eles
+     */
+    int getWindowSize() {
+        return window.size();
+    }
+
+    int getPendingAcknowledgeCount() {
+        return pendingAcknowledgeCount;
+    }
+
+    int getAdvertisedWindow() {
+        return advertisedWindow;
+    }
+
+    /**
+     * @return Espaço livre na janela, limitado pelo tamanho negociado e pela janela anunciada pelo Receiver
+     */
+    int getAvailableSlots() {
+        return Math.min(parameters.getWindowLength() - window.size(), advertisedWindow - pendingAcknowledgeCount);
+    }
+
+    T get(long index) {
+        return window.get(index);
+    }
+
+    /**
+     * Adiciona à janela um elemento com o ACK pendente.
+     */
+    void add(long index, T item) {
+        window.put(index, item);
+        pendingAcknowledgeCount++;
+    }
+
+    /**
+     * Reconhece o elemento e cancela o seu reenvio.
+     *
+     * @return Elemento reconhecido agora, ou null se o índice não está na janela ou já havia sido reconhecido
+     */
+    T acknowledge(long index) {
+        T item = window.get(index);
+
+        if (item == null || !item.isPendingAcknowledge()) {
+            return null;
+        }
+
+        item.markAcknowledged();
+        pendingAcknowledgeCount--;
+        return item;
+    }
+
+    /**
+     * Avança o início da janela enquanto o elemento do início já tiver sido reconhecido.
+     */
+    void advanceWindow() {
+        T item = window.get(windowStartIndex);
+
+        while (item != null && !item.isPendingAcknowledge()) {
+            window.remove(windowStartIndex);
+            windowStartIndex++;
+            item = window.get(windowStartIndex);
+        }
+    }
+
+    /**
+     * Agenda o reenvio periódico do OPEN, cancelado no ACCEPT.
+     */
+    void scheduleHandshake(TimerQueue timers, Runnable resendOpen) {
+        openTask = timers.schedule(parameters.getResendPeriod(), parameters.getResendPeriod(), resendOpen);
+    }
+
+    /**
+     * Aplica os parâmetros negociados no ACCEPT. ACCEPTs repetidos ou de outro número de sequência são ignorados.
+     *
+     * @return true se o ACCEPT foi aplicado
+     */
+    boolean accept(ConnectionParameters negotiated) {
+        if (negotiated == null || accepted
+                || negotiated.getInitialSequenceNumber() != parameters.getInitialSequenceNumber()) {
+            return false;
+        }
+
+        TimerQueue.cancel(openTask);
+        parameters = negotiated;
+        advertisedWindow = negotiated.getWindowLength();
+        accepted = true;
+        return true;
+    }
+
+    /**
+     * Atualiza a janela anunciada pelo Receiver e inicia ou cancela as sondas de janela zero.
+     *
+     * @param sendProbe Transmissão de uma sonda, executada a cada período de reenvio enquanto a janela for zero
+     * @return true se a janela ficou zero e as sondas começaram agora
+     */
+    boolean updateAdvertisedWindow(int windowSize, TimerQueue timers, Runnable sendProbe) {
+        advertisedWindow = windowSize;
+
+        if (advertisedWindow > 0) {
+            TimerQueue.cancel(windowProbeTask);
+            windowProbeTask = null;
+            return false;
+        }
+
+        if (windowProbeTask != null) {
+            return false;
+        }
+
+        windowProbeTask = timers.schedule(parameters.getResendPeriod(), parameters.getResendPeriod(), sendProbe);
+        return true;
+    }
+
+    /**
+     * Cancela o handshake, as sondas e os reenvios de todos os elementos da janela.
+     */
+    void cancelTimers() {
+        TimerQueue.cancel(openTask);
+        TimerQueue.cancel(windowProbeTask);
+
+        for (T item : window.values()) {
+            TimerQueue.cancel(item.getRetransmissionTask());
+        }
+    }
+
+    /**
+     * Elemento da janela de envio: o frame transmitido, se o ACK ainda está pendente e a tarefa de reenvio. O frame
+     * fica em um slot do {@link FrameSlab}, devolvido no ACK, ou em um array próprio quando slabSlot é -1.
+     */
+    static class InFlight {
+        private byte[] frame;
+        private int frameOffset;
+        private int frameLength;
+        private int slabSlot = -1;
+        private boolean isPendingAcknowledge = true;
+        private ScheduledTask retransmissionTask;
+
+        /**
+         * Copia o frame para um slot do FrameSlab ou, caso não haja slot livre, o guarda como está.
+         */
+        final void storeFrame(FrameSlab frameSlab, byte[] encodedFrame) {
+            int slot = frameSlab.store(encodedFrame);
+
+            if (slot < 0) {
+                setFrame(encodedFrame);
+                return;
+            }
+
+            slabSlot = slot;
+            frame = frameSlab.storage();
+            frameOffset = frameSlab.offset(slot);
+            frameLength = encodedFrame.length;
+        }
+
+        /**
+         * Usa o array como frame, sem copiá-lo.
+         */
+        final void setFrame(byte[] encodedFrame) {
+            slabSlot = -1;
+            frame = encodedFrame;
+            frameOffset = 0;
+            frameLength = encodedFrame.length;
+        }
+
+        /**
+         * Devolve o slot do frame ao FrameSlab, se houver um.
+         */
+        final void releaseFrame(FrameSlab frameSlab) {
+            if (slabSlot >= 0) {
+                frameSlab.release(slabSlot);
+            }
+            slabSlot = -1;
+            frame = null;
+        }
+
+        final byte[] getFrame() {
+            return frame;
+        }
+
+        final int getFrameOffset() {
+            return frameOffset;
+        }
+
+        final int getFrameLength() {
+            return frameLength;
+        }
+
+        final boolean isPendingAcknowledge() {
+            return isPendingAcknowledge;
+        }
+
+        /**
+         * Marca o ACK como recebido e cancela o reenvio.
+         */
+        final void markAcknowledged() {
+            isPendingAcknowledge = false;
+            TimerQueue.cancel(retransmissionTask);
+        }
+
+        final ScheduledTask getRetransmissionTask() {
+            return retransmissionTask;
+        }
+
+        final void setRetransmissionTask(ScheduledTask retransmissionTask) {
+            this.retransmissionTask = retransmissionTask;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.chatapp;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tabela das sessões do Receiver, indexada pelo endereço do Sender.
+ *
+ * O LinkedHashMap em ordem de acesso mantém as sessões da menos para a mais recentemente ativa, assim tanto a varredura
+ * de ociosidade quanto a remoção por limite de memória só percorrem o início da tabela e param na primeira sessão que
+ * deve ser mantida, com custo proporcional às sessões removidas e não ao total de sessões.
+ *
+ * Não é thread-safe, todo acesso é feito pela thread sequenciadora do Receiver.
+ */
+final class SessionTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Map<SocketAddress, ReceiverSession> sessions;
+    private long idleTimeoutNanos;
+    private int maxSessions;
+    private long maxRetainedBytes;
+    private long retainedBytes;
+
+    SessionTable(long idleTimeoutNanos, int maxSessions, long maxRetainedBytes) {
+        this.sessions = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+        setLimits(idleTimeoutNanos, maxSessions, maxRetainedBytes);
+    }
+
+    /**
+     * Altera os limites aplicados nas próximas varreduras.
+     *
+     * @param timeoutNanos Tempo sem atividade após o qual uma sessão é removida
+     * @param sessionLimit Quantidade máxima de sessões
+     * @param retainedBytesLimit Memória máxima retida pelas sessões
+     */
+    void setLimits(long timeoutNanos, int sessionLimit, long retainedBytesLimit) {
+        if (timeoutNanos <= 0 || sessionLimit < 1 || retainedBytesLimit < ReceiverSession.SESSION_OVERHEAD_BYTES) {
+            throw new IllegalArgumentException("Limites de sessão inválidos");
+        }
+
+        this.idleTimeoutNanos = timeoutNanos;
+        this.maxSessions = sessionLimit;
+        this.maxRetainedBytes = retainedBytesLimit;
+    }
+
+    /**
+     * Busca a sessão do Sender, criando uma nova caso não exista, e registra a atividade. Quem cria a sessão deve
+     * aplicar os limites com {@link #evictOverflow(ReceiverSession)}.
+     */
+    ReceiverSession get(SocketAddress peer, long nowNanos) {
+        ReceiverSession session = find(peer, nowNanos);
+
+        if (session == null) {
+            session = new ReceiverSession(peer, nowNanos);
+            sessions.put(peer, session);
+            refresh(session);
+        }
+
+        return session;
+    }
+
+    /**
+     * Busca a sessão do Sender sem criá-la, registrando a atividade caso ela exista.
+     *
+     * @return Sessão do Sender, ou null se não houver
+     */
+    ReceiverSession find(SocketAddress peer, long nowNanos) {
+        ReceiverSession session = sessions.get(peer);
+
+        if (session != null) {
+            session.touch(nowNanos);
+        }
+
+        return session;
+    }
+
+    /**
+     * Atualiza a memória contabilizada para a sessão após uma alteração no seu estado.
+     */
+    void refresh(ReceiverSession session) {
+        if (session.isEvicted()) {
+            return;
+        }
+
+        long sessionBytes = session.getRetainedBytes();
+        retainedBytes += sessionBytes - session.getAccountedBytes();
+        session.setAccountedBytes(sessionBytes);
+    }
+
+    /**
+     * Remove as sessões sem atividade há mais que o tempo limite.
+     *
+     * @return Sessões removidas
+     */
+    List<ReceiverSession> evictIdle(long nowNanos) {
+        List<ReceiverSession> evicted = new ArrayList<>();
+        Iterator<ReceiverSession> iterator = sessions.values().iterator();
+
+        while (iterator.hasNext()) {
+            ReceiverSession session = iterator.next();
+
+            if (nowNanos - session.getLastActivityNanos() < idleTimeoutNanos) {
+                break;
+            }
+
+            iterator.remove();
+            release(session);
+            evicted.add(session);
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Remove as sessões menos recentemente ativas enquanto a quantidade de sessões ou a memória retida excederem os
+     * limites. A sessão em uso nunca é removida.
+     *
+     * @param current Sessão que acabou de ser atualizada
+     * @return Sessões removidas
+     */
+    List<ReceiverSession> evictOverflow(ReceiverSession current) {
+        List<ReceiverSession> evicted = new ArrayList<>();
+        Iterator<ReceiverSession> iterator = sessions.values().iterator();
+
+        while ((sessions.size() > maxSessions || retainedBytes > maxRetainedBytes) && iterator.hasNext()) {
+            ReceiverSession session = iterator.next();
+
+            if (session == current) {
+                continue;
+            }
+
+            iterator.remove();
+            release(session);
+            evicted.add(session);
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Remove todas as sessões.
+     */
+    void clear() {
+        sessions.values().forEach(this::release);
+        sessions.clear();
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    /**
+     * @return Sessões da menos para a mais recentemente ativa, sem alterar a ordem de acesso
+     */
+    Collection<ReceiverSession> values() {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+
+    long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    private void release(ReceiverSession session) {
+        retainedBytes -= session.getAccountedBytes();
+        session.setAccountedBytes(0);
+        session.evict();
+    }
+}
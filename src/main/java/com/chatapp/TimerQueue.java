@@ -0,0 +1,103 @@
+package com.chatapp;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Temporizadores de um event loop, ordenados pelo instante de execução. Substitui o java.util.Timer, que exigia uma
+ * thread própria e sincronização com a thread ouvinte.
+ *
+ * Não é thread-safe, é usado somente pela thread do event loop que o executa em {@link #runExpired()}.
+ */
+final class TimerQueue {
+
+    private final Clock clock;
+    private final PriorityQueue<ScheduledTask> tasks;
+
+    TimerQueue(Clock clock) {
+        this.clock = clock;
+        this.tasks = new PriorityQueue<>();
+    }
+
+    /**
+     * @param delayMillis Atraso para a primeira execução
+     * @param periodMillis Período das execuções seguintes, 0 para executar uma única vez
+     * @param action Ação executada na thread do event loop
+     * @return Tarefa agendada, que pode ser cancelada com {@link #cancel(ScheduledTask)}
+     */
+    ScheduledTask schedule(long delayMillis, long periodMillis, Runnable action) {
+        ScheduledTask task = new ScheduledTask(clock.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis),
+                TimeUnit.MILLISECONDS.toNanos(periodMillis), action);
+        tasks.add(task);
+        return task;
+    }
+
+    /**
+     * Cancela a tarefa, que é descartada quando chegar ao início da fila.
+     *
+     * @param task Tarefa agendada ou null
+     */
+    static void cancel(ScheduledTask task) {
+        if (task != null) {
+            task.cancelled = true;
+        }
+    }
+
+    /**
+     * Executa as tarefas vencidas e reagenda as periódicas.
+     */
+    void runExpired() {
+        long now = clock.nanoTime();
+
+        while (!tasks.isEmpty() && tasks.peek().deadline <= now) {
+            ScheduledTask task = tasks.poll();
+
+            if (task.cancelled) {
+                continue;
+            }
+
+            task.action.run();
+
+            if (task.period > 0 && !task.cancelled) {
+                task.deadline += task.period;
+                tasks.add(task);
+            }
+        }
+    }
+
+    /**
+     * @return Instante da próxima tarefa, ou Long.MAX_VALUE se não houver nenhuma
+     */
+    long nextDeadlineNanos() {
+        while (!tasks.isEmpty() && tasks.peek().cancelled) {
+            tasks.poll();
+        }
+        return tasks.isEmpty() ? Long.MAX_VALUE : tasks.peek().deadline;
+    }
+
+    /**
+     * Tarefa agendada, ordenada pelo instante de execução.
+     */
+    static final class ScheduledTask implements Comparable<ScheduledTask> {
+        private long deadline;
+        private final long period;
+        private final Runnable action;
+        private boolean cancelled;
+
+        /**
+         * @param deadline Instante do primeiro disparo
+         * @param period Período entre os disparos seguintes, ou zero para um disparo único
+         * @param action Ação executada a cada disparo
+         */
+        ScheduledTask(long deadline, long period, Runnable action) {
+            this.deadline = deadline;
+            this.period = period;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask other) {
+            return Long.compare(deadline, other.deadline);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.chatapp;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Canal de datagramas usado pelo Sender e pelo Receiver.
+ *
+ * A implementação padrão é o {@link DatagramTransport}, sobre UDP; o {@link InMemoryNetwork} fornece transportes em
+ * memória, com perda e reordenação determinísticas, para simulações sem sockets.
+ */
+public interface Transport extends AutoCloseable {
+
+    /**
+     * Envia um datagrama. Como no UDP, o envio não garante a entrega.
+     *
+     * @param target Endereço de destino
+     * @param frame Buffer com o datagrama
+     * @param offset Início do datagrama no buffer
+     * @param length Tamanho do datagrama
+     * @throws IOException
+     */
+    void send(SocketAddress target, byte[] frame, int offset, int length) throws IOException;
+
+    /**
+     * Recebe um datagrama sem bloquear, copiando-o para o buffer a partir da sua posição atual.
+     *
+     * @param buffer Buffer de destino, datagramas maiores que o espaço restante são truncados
+     * @return Endereço de origem, ou null se não houver datagrama disponível
+     * @throws IOException
+     */
+    SocketAddress receive(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Bloqueia até que haja um datagrama disponível, até uma chamada a {@link #wakeup()} ou até o tempo limite.
+     *
+     * @param timeoutNanos Tempo limite, 0 para não bloquear e negativo para esperar indefinidamente
+     * @throws IOException
+     */
+    void await(long timeoutNanos) throws IOException;
+
+    /**
+     * Acorda a thread bloqueada em {@link #await(long)}, pode ser chamado por qualquer thread.
+     */
+    void wakeup();
+
+    /**
+     * @return Endereço local do transporte
+     */
+    SocketAddress getLocalAddress() throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
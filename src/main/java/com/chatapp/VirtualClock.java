@@ -0,0 +1,37 @@
+package com.chatapp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relógio controlado manualmente, o tempo só avança quando a simulação o avança.
+ */
+public final class VirtualClock implements Clock {
+
+    private volatile long now;
+
+    public VirtualClock() {
+        this(0);
+    }
+
+    public VirtualClock(long startNanos) {
+        this.now = startNanos;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    public void advance(long duration, TimeUnit unit) {
+        now += unit.toNanos(duration);
+    }
+
+    /**
+     * Avança até o instante indicado, instantes no passado são ignorados.
+     */
+    public void advanceTo(long nanos) {
+        if (nanos > now) {
+            now = nanos;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.chatapp;
+
+import java.io.IOException;
+
+/**
+ * Forma de espera da thread que recebe os pacotes do transporte UDP.
+ *
+ * A estratégia padrão, {@link #BLOCKING}, bloqueia no Selector e deixa o kernel acordar a thread quando o datagrama
+ * chega, o que custa uma troca de contexto a cada ACK ou entrega. No modo de baixa latência, a thread consulta o canal
+ * sem bloquear em um laço ativo, com {@link Thread#onSpinWait()} entre as consultas, depois passa a ceder o
+ * processador com {@link Thread#yield()} e só então bloqueia no Selector; com isso a latência do ACK e da entrega fica
+ * menor e mais estável, ao custo de um núcleo ocupado pela thread enquanto houver tráfego.
+ *
+ * O modo é escolhido na propriedade de sistema {@value #WAIT_STRATEGY_PROPERTY}: "blocking", "busy-poll", com as
+ * quantidades padrão de iterações, ou "busy-poll:&lt;iterações ativas&gt;:&lt;iterações com yield&gt;".
+ */
+public final class WaitStrategy {
+
+    /**
+     * Propriedade de sistema com o modo de espera.
+     */
+    public static final String WAIT_STRATEGY_PROPERTY = "chatapp.waitStrategy";
+
+    /**
+     * Iterações sem pausa do modo "busy-poll" sem quantidades.
+     */
+    public static final int DEFAULT_SPIN_ITERATIONS = 2000;
+    /**
+     * Iterações com yield do modo "busy-poll" sem quantidades.
+     */
+    public static final int DEFAULT_YIELD_ITERATIONS = 200;
+
+    /**
+     * Bloqueia direto no Selector, sem espera ativa.
+     */
+    public static final WaitStrategy BLOCKING = new WaitStrategy(0, 0);
+
+    private static final String BLOCKING_NAME = "blocking";
+    private static final String BUSY_POLL_NAME = "busy-poll";
+    /**
+     * Partes do modo com quantidades: nome, iterações ativas e iterações com yield.
+     */
+    private static final int BUSY_POLL_PARTS = 3;
+    /**
+     * O prazo é consultado a cada 256 iterações ativas, para não pagar um nanoTime por iteração.
+     */
+    private static final int DEADLINE_CHECK_MASK = 0xFF;
+
+    private final int spinIterations;
+    private final int yieldIterations;
+
+    private WaitStrategy(int spinIterations, int yieldIterations) {
+        this.spinIterations = spinIterations;
+        this.yieldIterations = yieldIterations;
+    }
+
+    /**
+     * @param spinIterations Consultas ao canal em laço ativo antes de começar a ceder o processador
+     * @param yieldIterations Consultas ao canal intercaladas com {@link Thread#yield()} antes de bloquear
+     * @return Estratégia de espera ativa seguida de bloqueio
+     */
+    public static WaitStrategy busyPoll(int spinIterations, int yieldIterations) {
+        if (spinIterations < 0 || yieldIterations < 0) {
+            throw new IllegalArgumentException("Quantidade de iterações negativa");
+        }
+
+        return new WaitStrategy(spinIterations, yieldIterations);
+    }
+
+    /**
+     * @return Estratégia indicada na propriedade {@value #WAIT_STRATEGY_PROPERTY}, ou {@link #BLOCKING} se não definida
+     */
+    public static WaitStrategy fromSystemProperty() {
+        return parse(System.getProperty(WAIT_STRATEGY_PROPERTY));
+    }
+
+    /**
+     * @param value "blocking", "busy-poll" ou "busy-poll:&lt;iterações ativas&gt;:&lt;iterações com yield&gt;"
+     * @return Estratégia correspondente, {@link #BLOCKING} se o valor for nulo ou vazio
+     * @throws IllegalArgumentException Caso o valor não seja reconhecido
+     */
+    static WaitStrategy parse(String value) {
+        if (value == null || value.isEmpty() || BLOCKING_NAME.equals(value)) {
+            return BLOCKING;
+        }
+
+        if (BUSY_POLL_NAME.equals(value)) {
+            return busyPoll(DEFAULT_SPIN_ITERATIONS, DEFAULT_YIELD_ITERATIONS);
+        }
+
+        String[] parts = value.split(":");
+
+        if (parts.length != BUSY_POLL_PARTS || !BUSY_POLL_NAME.equals(parts[0])) {
+            throw new IllegalArgumentException("Estratégia de espera inválida: " + value);
+        }
+
+        try {
+            return busyPoll(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Estratégia de espera inválida: " + value, e);
+        }
+    }
+
+    /**
+     * @return true se a thread faz espera ativa antes de bloquear
+     */
+    public boolean isBusyPoll() {
+        return spinIterations > 0 || yieldIterations > 0;
+    }
+
+    public int getSpinIterations() {
+        return spinIterations;
+    }
+
+    public int getYieldIterations() {
+        return yieldIterations;
+    }
+
+    /**
+     * Fase ativa da espera: consulta a condição em laço, primeiro sem pausa e depois cedendo o processador entre as
+     * consultas, até que ela fique pronta, até o prazo ou até o fim das iterações.
+     *
+     * @param condition Consulta sem bloqueio, normalmente uma tentativa de receber do canal
+     * @param deadlineNanos Prazo em {@link System#nanoTime()}, ou Long.MAX_VALUE para nenhum
+     * @return true se a condição ficou pronta; false se a thread deve bloquear pelo tempo que resta até o prazo
+     * @throws IOException
+     */
+    boolean spin(Condition condition, long deadlineNanos) throws IOException {
+        for (int i = 0; i < spinIterations; i++) {
+            if (condition.isReady()) {
+                return true;
+            }
+            if (deadlineNanos != Long.MAX_VALUE && (i & DEADLINE_CHECK_MASK) == 0
+                    && System.nanoTime() >= deadlineNanos) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+
+        for (int i = 0; i < yieldIterations; i++) {
+            if (condition.isReady()) {
+                return true;
+            }
+            if (deadlineNanos != Long.MAX_VALUE && System.nanoTime() >= deadlineNanos) {
+                return false;
+            }
+            Thread.yield();
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return isBusyPoll() ? BUSY_POLL_NAME + ":" + spinIterations + ":" + yieldIterations : BLOCKING_NAME;
+    }
+
+    /**
+     * Condição consultada sem bloqueio durante a fase ativa da espera.
+     */
+    interface Condition {
+        boolean isReady() throws IOException;
+    }
+}
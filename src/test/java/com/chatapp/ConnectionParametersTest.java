@@ -0,0 +1,76 @@
+package com.chatapp;
+
+import com.chatapp.ConnectionParameters.AckPolicy;
+import com.chatapp.ConnectionParameters.Feature;
+import com.chatapp.Message.MessageType;
+import java.util.EnumSet;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the OPEN/ACCEPT parameter negotiation.
+ */
+class ConnectionParametersTest {
+
+    @Test
+    void negotiatesSmallestLimitsAndCommonFeatures() {
+        ConnectionParameters local = new ConnectionParameters(4096, 32, 0, 1000L, AckPolicy.IMMEDIATE,
+                EnumSet.noneOf(Feature.class));
+        ConnectionParameters offer = new ConnectionParameters(8192, 5, 77, 250L, AckPolicy.IMMEDIATE,
+                EnumSet.of(Feature.FEC));
+
+        ConnectionParameters negotiated = local.negotiate(offer);
+
+        assertEquals(4096, negotiated.getMaxDatagramSize());
+        assertEquals(5, negotiated.getWindowLength());
+        assertEquals(77, negotiated.getInitialSequenceNumber());
+        assertEquals(250L, negotiated.getResendPeriod());
+        assertFalse(negotiated.hasFeature(Feature.FEC));
+    }
+
+    @Test
+    void roundTripsThroughHandshakeMessage() {
+        ConnectionParameters parameters = new ConnectionParameters(2048, 8, 123456789L, 500L, AckPolicy.IMMEDIATE,
+                EnumSet.of(Feature.FEC));
+        byte[] frame = MessageCodec.encode(parameters.toMessage(MessageType.OPEN));
+        MessageView view = new MessageView();
+        assertTrue(view.wrap(frame, 0, frame.length));
+
+        ConnectionParameters decoded = ConnectionParameters.fromMessage(view);
+
+        assertEquals(MessageType.OPEN, view.getMessageType());
+        assertEquals(parameters.toString(), decoded.toString());
+    }
+
+    @Test
+    void rejectsHandshakeWithInvalidLimits() {
+        ConnectionParameters[] offers = {
+            new ConnectionParameters(-1, 8, 1L, 500L, AckPolicy.IMMEDIATE, EnumSet.noneOf(Feature.class)),
+            new ConnectionParameters(2048, 0, 1L, 500L, AckPolicy.IMMEDIATE, EnumSet.noneOf(Feature.class)),
+            new ConnectionParameters(2048, -3, 1L, 500L, AckPolicy.IMMEDIATE, EnumSet.noneOf(Feature.class)),
+            new ConnectionParameters(2048, 8, 1L, 0L, AckPolicy.IMMEDIATE, EnumSet.noneOf(Feature.class)),
+            new ConnectionParameters(2048, 8, 1L, -500L, AckPolicy.IMMEDIATE, EnumSet.noneOf(Feature.class)),
+        };
+
+        for (ConnectionParameters offer : offers) {
+            byte[] frame = MessageCodec.encode(offer.toMessage(MessageType.OPEN));
+            MessageView view = new MessageView();
+            assertTrue(view.wrap(frame, 0, frame.length));
+
+            assertNull(ConnectionParameters.fromMessage(view), offer.toString());
+        }
+    }
+
+    @Test
+    void rejectsIncompleteHandshakeMessage() {
+        byte[] frame = MessageCodec.encode(new Message(MessageType.OPEN, 1L));
+        MessageView view = new MessageView();
+        assertTrue(view.wrap(frame, 0, frame.length));
+
+        assertNull(ConnectionParameters.fromMessage(view));
+    }
+}
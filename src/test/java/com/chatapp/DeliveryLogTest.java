@@ -0,0 +1,205 @@
+package com.chatapp;
+
+import com.chatapp.ConnectionParameters.AckPolicy;
+import com.chatapp.ConnectionParameters.Feature;
+import com.chatapp.DeliveryLog.LoggedMessage;
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the group-committed delivery log and the Receiver acknowledging only durable messages.
+ */
+class DeliveryLogTest {
+
+    private static final InetSocketAddress PEER = new InetSocketAddress(InetAddress.getLoopbackAddress(), 40123);
+
+    @Test
+    void rollsSegmentsAndResumesAfterTornTail(@TempDir Path directory) throws IOException {
+        try (DeliveryLog log = new DeliveryLog(directory, 256)) {
+            for (int i = 0; i < 40; i++) {
+                append(log, i);
+                if (i % 5 == 4) {
+                    log.commit();
+                }
+            }
+            assertEquals(39, log.getDurableSequence());
+            assertEquals(8, log.getCommitCount());
+        }
+
+        List<Path> segments = segments(directory);
+        assertTrue(segments.size() > 1);
+        Files.write(segments.get(segments.size() - 1), new byte[] {0, 0, 0, 100, 1, 2}, StandardOpenOption.APPEND);
+
+        try (DeliveryLog log = new DeliveryLog(directory, 256)) {
+            assertEquals(39, log.getDurableSequence());
+            assertEquals(40, append(log, 40));
+        }
+
+        List<LoggedMessage> messages = DeliveryLog.read(directory);
+        assertEquals(41, messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals(i, messages.get(i).getSequence());
+            assertEquals(PEER, messages.get(i).getPeer());
+            assertArrayEquals(frame(i), messages.get(i).getFrame());
+        }
+    }
+
+    @Test
+    void dropsHeaderlessSegmentLeftByCrashDuringRoll(@TempDir Path directory) throws IOException {
+        try (DeliveryLog log = new DeliveryLog(directory, 256)) {
+            for (int i = 0; i < 10; i++) {
+                append(log, i);
+                log.commit();
+            }
+        }
+
+        Files.createFile(directory.resolve(String.format("segment-%020d.log", 10)));
+
+        try (DeliveryLog log = new DeliveryLog(directory, 256)) {
+            assertEquals(9, log.getDurableSequence());
+            assertEquals(10, append(log, 10));
+            log.commit();
+        }
+
+        List<LoggedMessage> messages = DeliveryLog.read(directory);
+        assertEquals(11, messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals(i, messages.get(i).getSequence());
+            assertArrayEquals(frame(i), messages.get(i).getFrame());
+        }
+    }
+
+    @Test
+    void receiverAcknowledgesOnlyCommittedMessages(@TempDir Path directory) throws Exception {
+        int messages = 500;
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(3L, clock, 0.05, 0.01, 1, 20, TimeUnit.MILLISECONDS);
+        InetSocketAddress receiverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 12098);
+        InetSocketAddress senderAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 12099);
+        ConnectionParameters parameters = new ConnectionParameters(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE,
+                Receiver.MAX_WINDOW_LENGTH, 0, 200L, AckPolicy.IMMEDIATE, EnumSet.noneOf(Feature.class));
+        List<Long> delivered = new ArrayList<>();
+
+        try (DeliveryLog log = DeliveryLog.open(directory);
+                Receiver receiver = new Receiver(network.bind(receiverAddress),
+                        message -> delivered.add(message.getHeader().getMessageIndex()), parameters, clock);
+                SenderEventLoop sender = new SenderEventLoop(network.bind(senderAddress), receiverAddress,
+                        parameters, clock)) {
+            receiver.enableDeliveryLog(log, true);
+            sender.startPolling();
+            CompletableFuture<ConnectionParameters> connection = sender.beginConnect();
+            long nextIndex = 0;
+
+            while ((sender.getAvailableSlots() < parameters.getWindowLength() || nextIndex < messages)
+                    && clock.nanoTime() < TimeUnit.HOURS.toNanos(1)) {
+                while (connection.isDone() && nextIndex < messages && sender.getAvailableSlots() > 0) {
+                    Message message = new Message(MessageType.PACKAGE, nextIndex);
+                    message.addMessage(MessageBodyType.BODY.label, "mensagem " + nextIndex);
+                    sender.send(message, 0, 1);
+                    nextIndex++;
+                    sender.poll();
+                }
+
+                sender.poll();
+                receiver.poll();
+
+                clock.advanceTo(Math.min(network.nextArrivalNanos(),
+                        Math.min(sender.nextDeadlineNanos(), receiver.nextDeadlineNanos())));
+            }
+
+            assertEquals(messages, delivered.size());
+            assertEquals(messages - 1, log.getDurableSequence());
+            assertTrue(log.getCommitCount() < messages);
+        }
+
+        List<LoggedMessage> logged = DeliveryLog.read(directory);
+        assertEquals(messages, logged.size());
+        for (int i = 0; i < messages; i++) {
+            MessageView view = new MessageView();
+            byte[] frame = logged.get(i).getFrame();
+            assertTrue(view.wrap(frame, 0, frame.length));
+            assertEquals(i, view.getMessageIndex());
+            assertEquals(senderAddress, logged.get(i).getPeer());
+        }
+    }
+
+    @Test
+    void rejectsPeersWithoutAnIpAddress(@TempDir Path directory) throws IOException {
+        try (DeliveryLog log = DeliveryLog.open(directory)) {
+            byte[] frame = frame(0);
+
+            assertThrows(IOException.class,
+                () -> log.append(InetSocketAddress.createUnresolved("sender", 1), frame, 0, frame.length));
+            assertEquals(0, append(log, 1));
+        }
+    }
+
+    @Test
+    void receiverStopsWhenTheLogFails(@TempDir Path directory) throws Exception {
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(5L, clock, 0, 0, 1, 1, TimeUnit.MILLISECONDS);
+        InetSocketAddress receiverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 12098);
+        InetSocketAddress senderAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 12099);
+        ConnectionParameters parameters = ConnectionParameters.defaults();
+
+        try (DeliveryLog log = DeliveryLog.open(directory);
+                Receiver receiver = new Receiver(network.bind(receiverAddress), message -> { }, parameters, clock);
+                SenderEventLoop sender = new SenderEventLoop(network.bind(senderAddress), receiverAddress,
+                        parameters, clock)) {
+            receiver.enableDeliveryLog(log, true);
+            sender.startPolling();
+            sender.beginConnect();
+            log.close();
+
+            Message message = new Message(MessageType.PACKAGE, 0L);
+            message.addMessage(MessageBodyType.BODY.label, "mensagem 0");
+            sender.send(message, 0, 1);
+
+            assertThrows(IOException.class, () -> {
+                while (clock.nanoTime() < TimeUnit.HOURS.toNanos(1)) {
+                    sender.poll();
+                    receiver.poll();
+                    clock.advanceTo(Math.min(network.nextArrivalNanos(),
+                            Math.min(sender.nextDeadlineNanos(), receiver.nextDeadlineNanos())));
+                }
+            });
+        }
+    }
+
+    private static long append(DeliveryLog log, int i) throws IOException {
+        byte[] frame = frame(i);
+        return log.append(PEER, frame, 0, frame.length);
+    }
+
+    private static byte[] frame(int i) {
+        Message message = new Message(MessageType.PACKAGE, (long) i);
+        message.addMessage(MessageBodyType.BODY.label, "mensagem " + i);
+        return MessageCodec.encode(message);
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+}
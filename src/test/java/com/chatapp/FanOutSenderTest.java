@@ -0,0 +1,134 @@
+package com.chatapp;
+
+import com.chatapp.ConnectionParameters.AckPolicy;
+import com.chatapp.ConnectionParameters.Feature;
+import com.chatapp.FanOutSender.WindowPolicy;
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs one fan-out Sender against several Receivers over the in-memory lossy network with a virtual clock.
+ */
+class FanOutSenderTest {
+
+    private static final int MESSAGES = 2_000;
+    private static final long MAX_VIRTUAL_TIME = TimeUnit.HOURS.toNanos(1);
+    private static final InetSocketAddress SENDER_ADDRESS =
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 11099);
+
+    @Test
+    void everyReceiverGetsEveryMessageInOrderWithPolicyAll() throws Exception {
+        List<List<Long>> delivered = fanOut(WindowPolicy.ALL, 5, 5, -1);
+
+        for (List<Long> indexes : delivered) {
+            assertEquals(MESSAGES, indexes.size());
+            for (int i = 0; i < MESSAGES; i++) {
+                assertEquals(i, indexes.get(i).longValue());
+            }
+        }
+    }
+
+    @Test
+    void quorumKeepsProgressingAndDropsReceiverThatStopsAcknowledging() throws Exception {
+        List<List<Long>> delivered = fanOut(WindowPolicy.QUORUM, 3, 2, 100);
+
+        assertEquals(MESSAGES, delivered.get(0).size());
+        assertEquals(MESSAGES, delivered.get(1).size());
+        assertTrue(delivered.get(2).size() < MESSAGES);
+    }
+
+    @Test
+    void independentReceiversProgressAtTheirOwnPaceAndDropReceiverThatStopsAcknowledging() throws Exception {
+        List<List<Long>> delivered = fanOut(WindowPolicy.INDEPENDENT, 3, 2, 100);
+
+        for (List<Long> indexes : delivered.subList(0, 2)) {
+            assertEquals(MESSAGES, indexes.size());
+            for (int i = 0; i < MESSAGES; i++) {
+                assertEquals(i, indexes.get(i).longValue());
+            }
+        }
+        assertTrue(delivered.get(2).size() < MESSAGES);
+    }
+
+    /**
+     * @param quorum Quantity of Receivers that must get every message before the run ends
+     * @param failAfter Quantity of messages after which the last Receiver is closed, -1 to keep every Receiver
+     * @return Indexes delivered to each Receiver
+     */
+    private static List<List<Long>> fanOut(WindowPolicy policy, int receiverCount, int quorum, int failAfter)
+            throws Exception {
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(42L, clock, 0.05, 0.01, 1, 20, TimeUnit.MILLISECONDS);
+        ConnectionParameters parameters = new ConnectionParameters(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE,
+                64, 0, 200L, AckPolicy.IMMEDIATE, EnumSet.noneOf(Feature.class));
+
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        List<List<Long>> delivered = new ArrayList<>();
+        List<Receiver> receivers = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < receiverCount; i++) {
+                InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 11000 + i);
+                List<Long> indexes = new ArrayList<>();
+                addresses.add(address);
+                delivered.add(indexes);
+                receivers.add(new Receiver(network.bind(address),
+                        message -> indexes.add(message.getHeader().getMessageIndex()), parameters, clock));
+            }
+
+            try (FanOutSender sender = new FanOutSender(network.bind(SENDER_ADDRESS), addresses, parameters, policy,
+                    quorum, clock)) {
+                sender.startPolling();
+                CompletableFuture<Integer> connection = sender.beginConnect();
+                long nextIndex = 0;
+
+                while (delivered.stream().limit(quorum).anyMatch(indexes -> indexes.size() < MESSAGES)
+                        && clock.nanoTime() < MAX_VIRTUAL_TIME) {
+                    while (connection.isDone() && nextIndex < MESSAGES && sender.getAvailableSlots() > 0) {
+                        Message message = new Message(MessageType.PACKAGE, nextIndex);
+                        message.addMessage(MessageBodyType.BODY.label, "mensagem " + nextIndex);
+                        sender.send(message);
+                        nextIndex++;
+                        sender.poll();
+
+                        if (nextIndex == failAfter) {
+                            receivers.remove(receiverCount - 1).close();
+                        }
+                    }
+
+                    sender.poll();
+                    long deadline = Math.min(network.nextArrivalNanos(), sender.nextDeadlineNanos());
+                    for (Receiver receiver : receivers) {
+                        receiver.poll();
+                        deadline = Math.min(deadline, receiver.nextDeadlineNanos());
+                    }
+
+                    clock.advanceTo(deadline);
+                }
+
+                assertEquals(failAfter < 0 ? 0 : 1, sender.getMetrics().get(ProtocolMetrics.Counter.DROPPED_RECEIVERS));
+                assertEquals(failAfter < 0 ? receiverCount : receiverCount - 1, sender.getReceiverCount());
+                // the frame is shared by every Receiver and every retransmission
+                assertTrue(sender.getMetrics().get(ProtocolMetrics.Counter.RETRANSMITTED_PACKETS) > 0);
+                assertEquals(MESSAGES, sender.getMetrics().get(ProtocolMetrics.Counter.ENCODED_MESSAGES));
+            }
+        } finally {
+            for (Receiver receiver : receivers) {
+                receiver.close();
+            }
+        }
+
+        return delivered;
+    }
+}
@@ -0,0 +1,109 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the XOR parity encoder and decoder.
+ */
+class ForwardErrorCorrectionTest {
+
+    @Test
+    void rebuildsSingleLostFrameOfGroup() {
+        FecEncoder encoder = new FecEncoder(4, false, 0);
+        FecDecoder decoder = new FecDecoder();
+        List<Message> parities = null;
+        byte[][] frames = new byte[4][];
+
+        for (int i = 0; i < 4; i++) {
+            Message message = new Message(MessageType.PACKAGE, (long) i);
+            message.addMessage(MessageBodyType.BODY.label, "mensagem número " + i + "x".repeat(i * 7));
+            frames[i] = MessageCodec.encode(message);
+            parities = encoder.add(i, frames[i]);
+        }
+
+        assertEquals(1, parities.size());
+
+        for (int i = 0; i < 4; i++) {
+            if (i != 2) {
+                assertFalse(decoder.onDataFrame(wrap(frames[i])).isPresent());
+            }
+        }
+
+        Optional<MessageView> recovered = decoder.onParityFrame(wrap(MessageCodec.encode(parities.get(0))));
+
+        assertTrue(recovered.isPresent());
+        assertEquals(2L, recovered.get().getMessageIndex());
+        assertEquals("mensagem número 2" + "x".repeat(14), recovered.get().getField(MessageBodyType.BODY.label));
+    }
+
+    @Test
+    void cannotRebuildTwoLostFrames() {
+        FecEncoder encoder = new FecEncoder(2, false, 0);
+        FecDecoder decoder = new FecDecoder();
+        List<Message> parities = null;
+
+        for (int i = 0; i < 2; i++) {
+            Message message = new Message(MessageType.PACKAGE, (long) i);
+            message.addMessage(MessageBodyType.BODY.label, "mensagem " + i);
+            parities = encoder.add(i, MessageCodec.encode(message));
+        }
+
+        assertFalse(decoder.onParityFrame(wrap(MessageCodec.encode(parities.get(0)))).isPresent());
+    }
+
+    @Test
+    void adaptsGroupSizeToObservedLossFromNextGroup() {
+        FecEncoder encoder = new FecEncoder(4, true, 0);
+
+        encoder.updateLossRate(0.25);
+        assertEquals(4, encoder.getGroupSize());
+
+        assertTrue(addFrames(encoder, 0, 2).isEmpty());
+        encoder.updateLossRate(0.9);
+        assertEquals(4, encoder.getGroupSize());
+
+        List<Message> parities = addFrames(encoder, 2, 4);
+        assertEquals(1, parities.size());
+        assertEquals(4, parities.get(0).getMessages().get(MessageBodyType.GROUP_SIZE.label));
+        assertEquals(FecEncoder.MIN_GROUP_SIZE, encoder.getGroupSize());
+
+        encoder.updateLossRate(0);
+        parities = addFrames(encoder, 4, 6);
+        assertEquals(1, parities.size());
+        assertEquals(4L, parities.get(0).getHeader().getMessageIndex());
+        assertEquals(FecEncoder.MIN_GROUP_SIZE, parities.get(0).getMessages().get(MessageBodyType.GROUP_SIZE.label));
+        assertEquals(FecEncoder.MAX_GROUP_SIZE, encoder.getGroupSize());
+    }
+
+    /**
+     * Adds data frames with indexes from start, inclusive, to end, exclusive.
+     *
+     * @return parity messages of the groups completed by the frames
+     */
+    private static List<Message> addFrames(FecEncoder encoder, long start, long end) {
+        List<Message> parities = new ArrayList<>();
+
+        for (long i = start; i < end; i++) {
+            Message message = new Message(MessageType.PACKAGE, i);
+            message.addMessage(MessageBodyType.BODY.label, "mensagem " + i);
+            parities.addAll(encoder.add(i, MessageCodec.encode(message)));
+        }
+
+        return parities;
+    }
+
+    private static MessageView wrap(byte[] frame) {
+        MessageView view = new MessageView();
+        assertTrue(view.wrap(frame, 0, frame.length));
+        return view;
+    }
+}
@@ -0,0 +1,97 @@
+package com.chatapp;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the CRC32C frame check over the frame sizes used by the protocol.
+ */
+class FrameChecksumTest {
+
+    private static final int[] FRAME_SIZES = {64, 512, 1024, 8 * 1024};
+    private static final int FRAME_OFFSET = 7;
+    private static final int BURST_LENGTH = Integer.SIZE;
+    private static final int BURSTS_PER_FRAME = 200;
+
+    @Test
+    void acceptsIntactFramesAtAnyOffset() {
+        Random random = new Random(0);
+
+        for (int frameSize : FRAME_SIZES) {
+            byte[] buffer = frameWithChecksum(random, frameSize);
+
+            assertTrue(MessageCodec.hasValidChecksum(buffer, FRAME_OFFSET, frameSize));
+            assertFalse(MessageCodec.hasValidChecksum(buffer, FRAME_OFFSET, frameSize - 1));
+            assertFalse(MessageCodec.hasValidChecksum(buffer, FRAME_OFFSET + 1, frameSize));
+        }
+    }
+
+    @Test
+    void rejectsEverySingleBitError() {
+        Random random = new Random(1);
+
+        for (int frameSize : FRAME_SIZES) {
+            byte[] buffer = frameWithChecksum(random, frameSize);
+
+            for (int bit = 0; bit < frameSize * Byte.SIZE; bit++) {
+                flip(buffer, FRAME_OFFSET * Byte.SIZE + bit);
+                assertFalse(MessageCodec.hasValidChecksum(buffer, FRAME_OFFSET, frameSize),
+                        "bit " + bit + " of a " + frameSize + " byte frame");
+                flip(buffer, FRAME_OFFSET * Byte.SIZE + bit);
+            }
+
+            assertTrue(MessageCodec.hasValidChecksum(buffer, FRAME_OFFSET, frameSize));
+        }
+    }
+
+    @Test
+    void rejectsBurstErrorsUpTo32Bits() {
+        Random random = new Random(2);
+
+        for (int frameSize : FRAME_SIZES) {
+            byte[] buffer = frameWithChecksum(random, frameSize);
+            int frameBits = frameSize * Byte.SIZE;
+
+            for (int burst = 0; burst < BURSTS_PER_FRAME; burst++) {
+                int length = 2 + random.nextInt(BURST_LENGTH - 1);
+                int start = FRAME_OFFSET * Byte.SIZE + random.nextInt(frameBits - length + 1);
+                // a burst starts and ends with a flipped bit, the bits between are random
+                long pattern = 1L | 1L << (length - 1) | random.nextLong() & ((1L << (length - 1)) - 1);
+
+                applyBurst(buffer, start, length, pattern);
+                assertFalse(MessageCodec.hasValidChecksum(buffer, FRAME_OFFSET, frameSize),
+                        "burst of " + length + " bits at " + start + " of a " + frameSize + " byte frame");
+                applyBurst(buffer, start, length, pattern);
+            }
+        }
+    }
+
+    /**
+     * Builds a buffer holding a random frame at {@link #FRAME_OFFSET}, followed by a few trailing bytes.
+     */
+    private static byte[] frameWithChecksum(Random random, int frameSize) {
+        byte[] buffer = new byte[FRAME_OFFSET + frameSize + FRAME_OFFSET];
+        random.nextBytes(buffer);
+
+        int checksumOffset = FRAME_OFFSET + frameSize - MessageCodec.CHECKSUM_LENGTH;
+        ByteBuffer.wrap(buffer, checksumOffset, MessageCodec.CHECKSUM_LENGTH)
+                .putInt(MessageCodec.checksum(buffer, FRAME_OFFSET, frameSize - MessageCodec.CHECKSUM_LENGTH));
+        return buffer;
+    }
+
+    private static void applyBurst(byte[] buffer, int start, int length, long pattern) {
+        for (int i = 0; i < length; i++) {
+            if ((pattern >>> i & 1) != 0) {
+                flip(buffer, start + i);
+            }
+        }
+    }
+
+    private static void flip(byte[] buffer, int bit) {
+        buffer[bit / Byte.SIZE] ^= 1 << (bit % Byte.SIZE);
+    }
+}
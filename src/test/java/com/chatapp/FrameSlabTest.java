@@ -0,0 +1,59 @@
+package com.chatapp;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Unit tests for the Sender's preallocated storage of encoded in-flight frames.
+ */
+class FrameSlabTest {
+
+    @Test
+    void storedFrameIsReadBackFromItsSlotUntilReleased() {
+        FrameSlab slab = new FrameSlab(2, 16);
+        byte[] first = {1, 2, 3};
+        byte[] second = {4, 5, 6, 7};
+
+        int firstSlot = slab.store(first);
+        int secondSlot = slab.store(second);
+
+        assertArrayEquals(first, Arrays.copyOfRange(slab.storage(), slab.offset(firstSlot),
+                slab.offset(firstSlot) + first.length));
+        assertArrayEquals(second, Arrays.copyOfRange(slab.storage(), slab.offset(secondSlot),
+                slab.offset(secondSlot) + second.length));
+        assertEquals(0, slab.getFreeSlots());
+
+        slab.release(firstSlot);
+        assertEquals(firstSlot, slab.store(second));
+    }
+
+    @Test
+    void refusesFrameWhenFullOrTooLarge() {
+        FrameSlab slab = new FrameSlab(1, 4);
+
+        assertEquals(-1, slab.store(new byte[5]));
+        slab.store(new byte[4]);
+        assertEquals(-1, slab.store(new byte[1]));
+    }
+
+    @Test
+    void rejectsInvalidOrOverflowingSizes() {
+        assertThrows(IllegalArgumentException.class, () -> new FrameSlab(0, 16));
+        assertThrows(IllegalArgumentException.class, () -> new FrameSlab(4, -1));
+        assertThrows(ArithmeticException.class, () -> new FrameSlab(Integer.MAX_VALUE, 2));
+    }
+
+    @Test
+    void rejectsReleaseOfAnAlreadyFreeSlot() {
+        FrameSlab slab = new FrameSlab(2, 4);
+        int slot = slab.store(new byte[1]);
+
+        slab.release(slot);
+        assertThrows(IllegalStateException.class, () -> slab.release(slot));
+        assertEquals(2, slab.getFreeSlots());
+    }
+}
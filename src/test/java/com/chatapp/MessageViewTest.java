@@ -0,0 +1,127 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the binary frame format and its flyweight reader.
+ */
+class MessageViewTest {
+
+    @Test
+    void readsHeaderAndFieldsWithoutMaterializing() {
+        Message message = new Message(MessageType.PACKAGE, 42L);
+        message.addMessage(MessageBodyType.BODY.label, "olá");
+        message.addMessage(MessageBodyType.WINDOW.label, 3);
+        byte[] frame = MessageCodec.encode(message);
+
+        MessageView view = new MessageView();
+
+        assertTrue(view.wrap(frame, 0, frame.length));
+        assertEquals(MessageType.PACKAGE, view.getMessageType());
+        assertTrue(view.hasMessageIndex());
+        assertEquals(42L, view.getMessageIndex());
+        assertEquals("olá", view.getField(MessageBodyType.BODY.label));
+        assertEquals(3, view.getField(MessageBodyType.WINDOW.label));
+        assertNull(view.getField(MessageBodyType.INDEX.label));
+    }
+
+    @Test
+    void roundTripsToMessage() {
+        Message message = new Message(MessageType.WINDOW_UPDATE, null);
+        message.addMessage("bytes", new byte[] {1, 2, 3});
+        message.addMessage("long", 7L);
+
+        Message decoded = MessageCodec.decode(MessageCodec.encode(message), 0, MessageCodec.encode(message).length);
+
+        assertEquals(MessageType.WINDOW_UPDATE, decoded.getHeader().getMessageType());
+        assertNull(decoded.getHeader().getMessageIndex());
+        assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) decoded.getMessages().get("bytes"));
+        assertEquals(7L, decoded.getMessages().get("long"));
+    }
+
+    @Test
+    void encodedLengthMatchesTheEncodedFrame() {
+        Message message = new Message(MessageType.PACKAGE, 3L);
+        message.addMessage(MessageBodyType.BODY.label, "olá, \u20ac \ud83d\ude00 \ud83d");
+        message.addMessage("bytes", new byte[] {1, 2, 3});
+        message.addMessage("int", 5);
+        message.addMessage("long", 7L);
+
+        assertEquals(MessageCodec.encode(message).length, MessageCodec.encodedLength(message));
+    }
+
+    @Test
+    void rejectsTruncatedFrames() {
+        Message message = new Message(MessageType.PACKAGE, 1L);
+        message.addMessage(MessageBodyType.BODY.label, "mensagem");
+        byte[] frame = MessageCodec.encode(message);
+
+        MessageView view = new MessageView();
+
+        assertFalse(view.wrap(frame, 0, frame.length - 1));
+        assertFalse(view.wrap(frame, 0, MessageCodec.HEADER_LENGTH - 1));
+    }
+
+    @Test
+    void rejectsFramesWithAlteredBody() {
+        Message message = new Message(MessageType.PACKAGE, 1L);
+        message.addMessage(MessageBodyType.BODY.label, "mensagem");
+        byte[] frame = MessageCodec.encode(message);
+        frame[frame.length - MessageCodec.CHECKSUM_LENGTH - 1] ^= 1;
+
+        assertFalse(new MessageView().wrap(frame, 0, frame.length));
+        assertNull(MessageCodec.decode(frame, 0, frame.length));
+    }
+
+    @Test
+    void rejectsFramesWithUnknownValueTag() {
+        Message message = new Message(MessageType.PACKAGE, 1L);
+        message.addMessage(MessageBodyType.BODY.label, "mensagem");
+        byte[] frame = MessageCodec.encode(message);
+        int tagOffset = MessageCodec.HEADER_LENGTH + Short.BYTES + MessageBodyType.BODY.label.length();
+        int checksumOffset = frame.length - MessageCodec.CHECKSUM_LENGTH;
+        frame[tagOffset] = 5;
+        ByteBuffer.wrap(frame, checksumOffset, MessageCodec.CHECKSUM_LENGTH)
+                .putInt(MessageCodec.checksum(frame, 0, checksumOffset));
+
+        assertTrue(MessageCodec.hasValidChecksum(frame, 0, frame.length));
+        assertFalse(new MessageView().wrap(frame, 0, frame.length));
+        assertNull(MessageCodec.decode(frame, 0, frame.length));
+    }
+
+    @Test
+    void rejectsFieldLengthThatOverflowsTheFrameBounds() {
+        Message message = new Message(MessageType.PACKAGE, 1L);
+        message.addMessage(MessageBodyType.BODY.label, "mensagem");
+        message.addMessage("extra", "campo");
+        byte[] frame = MessageCodec.encode(message);
+        int firstKeyLength = ByteBuffer.wrap(frame).getShort(MessageCodec.HEADER_LENGTH);
+        int lengthOffset = MessageCodec.HEADER_LENGTH + Short.BYTES + firstKeyLength + 1;
+        int checksumOffset = frame.length - MessageCodec.CHECKSUM_LENGTH;
+        ByteBuffer.wrap(frame, lengthOffset, Integer.BYTES).putInt(Integer.MAX_VALUE - 5);
+        ByteBuffer.wrap(frame, checksumOffset, MessageCodec.CHECKSUM_LENGTH)
+                .putInt(MessageCodec.checksum(frame, 0, checksumOffset));
+
+        assertTrue(MessageCodec.hasValidChecksum(frame, 0, frame.length));
+        assertFalse(new MessageView().wrap(frame, 0, frame.length));
+        assertNull(MessageCodec.decode(frame, 0, frame.length));
+    }
+
+    @Test
+    void refusesToEncodeUnsupportedValueTypes() {
+        Message message = new Message(MessageType.PACKAGE, 1L);
+        message.addMessage(MessageBodyType.BODY.label, new StringBuilder("mensagem"));
+
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.encode(message));
+    }
+}
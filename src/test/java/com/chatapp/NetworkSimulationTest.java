@@ -0,0 +1,283 @@
+package com.chatapp;
+
+import com.chatapp.ConnectionParameters.AckPolicy;
+import com.chatapp.ConnectionParameters.Feature;
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs Sender and Receiver over the in-memory lossy network with a virtual clock, so retransmission and window
+ * behavior is exercised for thousands of packets in a fraction of a second and reproduced exactly from a seed.
+ */
+class NetworkSimulationTest {
+
+    private static final int MESSAGES = 20_000;
+    private static final long MAX_VIRTUAL_TIME = TimeUnit.HOURS.toNanos(1);
+
+    private static final InetSocketAddress SENDER_ADDRESS =
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 10099);
+    private static final InetSocketAddress RECEIVER_ADDRESS =
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 10098);
+
+    @Test
+    void deliversEveryMessageInOrderOverLossyReorderingNetwork() throws Exception {
+        SimulationResult result = simulate(42L, 0.05, 0.01, 0);
+
+        assertEquals(MESSAGES, result.deliveredMessages);
+        assertTrue(result.retransmissions > 0);
+    }
+
+    @Test
+    void keepsPerStreamOrderOverLossyReorderingNetwork() throws Exception {
+        SimulationResult result = simulate(42L, 0.05, 0.01, 4);
+
+        assertEquals(MESSAGES, result.deliveredMessages);
+    }
+
+    @Test
+    void sameSeedReproducesTheSameRun() throws Exception {
+        SimulationResult first = simulate(7L, 0.1, 0.02, 0);
+        SimulationResult second = simulate(7L, 0.1, 0.02, 0);
+
+        assertEquals(first.toString(), second.toString());
+    }
+
+    @Test
+    void expiredMessagesDoNotStallTheWindow() throws Exception {
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(1L, clock, 0, 0, 1, 5, TimeUnit.MILLISECONDS);
+        List<Long> delivered = new ArrayList<>();
+        ConnectionParameters parameters = new ConnectionParameters(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE,
+                ConnectionParameters.DEFAULT_WINDOW_LENGTH, 0, 1000L, AckPolicy.IMMEDIATE,
+                EnumSet.of(Feature.PARTIAL_RELIABILITY));
+
+        try (Receiver receiver = new Receiver(network.bind(RECEIVER_ADDRESS),
+                message -> delivered.add(message.getHeader().getMessageIndex()), parameters, clock);
+                SenderEventLoop sender = new SenderEventLoop(network.bind(SENDER_ADDRESS), RECEIVER_ADDRESS,
+                        parameters, clock)) {
+            List<Long> skipped = new ArrayList<>();
+            receiver.setEventListener(new Receiver.EventListener() {
+                @Override
+                public void onSkippedMessage(long messageIndex) {
+                    skipped.add(messageIndex);
+                }
+            });
+            sender.startPolling();
+            CompletableFuture<ConnectionParameters> connection = sender.beginConnect();
+            long nextIndex = 0;
+
+            while (delivered.size() < 90 && clock.nanoTime() < MAX_VIRTUAL_TIME) {
+                sender.poll();
+                receiver.poll();
+
+                while (connection.isDone() && nextIndex < 100 && sender.getAvailableSlots() > 0) {
+                    Message message = new Message(MessageType.PACKAGE, nextIndex);
+                    message.addMessage(MessageBodyType.BODY.label, "digitando " + nextIndex);
+                    // every 10th message is lost on its first transmission and expires before the resend period
+                    sender.send(message, SenderEventLoop.DEFAULT_STREAM, 0, nextIndex % 10 == 0 ? 0 : 1, 50);
+                    nextIndex++;
+                    sender.poll();
+                }
+
+                clock.advanceTo(Math.min(network.nextArrivalNanos(),
+                        Math.min(sender.nextDeadlineNanos(), receiver.nextDeadlineNanos())));
+            }
+
+            assertEquals(90, delivered.size());
+            assertTrue(delivered.stream().noneMatch(index -> index % 10 == 0));
+            assertEquals(10, sender.getMetrics().get(ProtocolMetrics.Counter.EXPIRED_PACKETS));
+            assertEquals(0, sender.getMetrics().get(ProtocolMetrics.Counter.RETRANSMITTED_PACKETS));
+            assertEquals(10, receiver.getMetrics().get(ProtocolMetrics.Counter.SKIPPED_PACKETS));
+            assertEquals(10, skipped.size());
+            assertTrue(skipped.stream().allMatch(index -> index % 10 == 0));
+            assertTrue(clock.nanoTime() < TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    @Test
+    void failedSubmissionDoesNotStopTheEventLoop() throws Exception {
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(5L, clock, 0, 0, 1, 5, TimeUnit.MILLISECONDS);
+        List<Long> delivered = new ArrayList<>();
+        ConnectionParameters parameters = ConnectionParameters.defaults();
+
+        try (Receiver receiver = new Receiver(network.bind(RECEIVER_ADDRESS),
+                message -> delivered.add(message.getHeader().getMessageIndex()), parameters, clock);
+                SenderEventLoop sender = new SenderEventLoop(network.bind(SENDER_ADDRESS), RECEIVER_ADDRESS,
+                        parameters, clock)) {
+            sender.startPolling();
+            CompletableFuture<ConnectionParameters> connection = sender.beginConnect();
+            boolean sent = false;
+
+            while (delivered.size() < 2 && clock.nanoTime() < MAX_VIRTUAL_TIME) {
+                sender.poll();
+                receiver.poll();
+
+                if (connection.isDone() && !sent) {
+                    long first = connection.get().getInitialSequenceNumber();
+                    // a message without an index makes its registration throw on the event loop
+                    for (Long index : Arrays.asList(null, first, first + 1)) {
+                        Message message = new Message(MessageType.PACKAGE, index);
+                        message.addMessage(MessageBodyType.BODY.label, "digitando " + index);
+                        sender.send(message, 0, 1);
+                    }
+                    sent = true;
+                    sender.poll();
+                }
+
+                clock.advanceTo(Math.min(network.nextArrivalNanos(),
+                        Math.min(sender.nextDeadlineNanos(), receiver.nextDeadlineNanos())));
+            }
+
+            assertEquals(2, delivered.size());
+            assertEquals(1, sender.getMetrics().get(ProtocolMetrics.Counter.UNEXPECTED_ERRORS));
+        }
+    }
+
+    @Test
+    void rejectsMessagesLargerThanTheNegotiatedDatagram() throws Exception {
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(9L, clock, 0, 0, 1, 5, TimeUnit.MILLISECONDS);
+        List<Long> delivered = new ArrayList<>();
+        ConnectionParameters receiverParameters = new ConnectionParameters(512,
+                ConnectionParameters.DEFAULT_WINDOW_LENGTH, 0, ConnectionParameters.DEFAULT_RESEND_PERIOD,
+                AckPolicy.IMMEDIATE, EnumSet.noneOf(Feature.class));
+
+        try (Receiver receiver = new Receiver(network.bind(RECEIVER_ADDRESS),
+                message -> delivered.add(message.getHeader().getMessageIndex()), receiverParameters, clock);
+                SenderEventLoop sender = new SenderEventLoop(network.bind(SENDER_ADDRESS), RECEIVER_ADDRESS,
+                        ConnectionParameters.defaults(), clock)) {
+            sender.startPolling();
+            CompletableFuture<ConnectionParameters> connection = sender.beginConnect();
+
+            while (!connection.isDone() && clock.nanoTime() < MAX_VIRTUAL_TIME) {
+                sender.poll();
+                receiver.poll();
+                clock.advanceTo(Math.min(network.nextArrivalNanos(),
+                        Math.min(sender.nextDeadlineNanos(), receiver.nextDeadlineNanos())));
+            }
+            assertEquals(512, connection.get().getMaxDatagramSize());
+
+            Message oversized = new Message(MessageType.PACKAGE, 0L);
+            oversized.addMessage(MessageBodyType.BODY.label, String.join("", Collections.nCopies(600, "x")));
+            assertThrows(IllegalArgumentException.class, () -> sender.send(oversized, 0, 1));
+
+            Message message = new Message(MessageType.PACKAGE, 0L);
+            message.addMessage(MessageBodyType.BODY.label, "cabe");
+            sender.send(message, 0, 1);
+
+            while (delivered.isEmpty() && clock.nanoTime() < MAX_VIRTUAL_TIME) {
+                sender.poll();
+                receiver.poll();
+                clock.advanceTo(Math.min(network.nextArrivalNanos(),
+                        Math.min(sender.nextDeadlineNanos(), receiver.nextDeadlineNanos())));
+            }
+
+            assertEquals(Arrays.asList(0L), delivered);
+        }
+    }
+
+    /**
+     * @param streams Quantity of streams used round-robin, 0 to send without streams in global order
+     */
+    private static SimulationResult simulate(long seed, double lossRate, double duplicateRate, int streams)
+            throws Exception {
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(seed, clock, lossRate, duplicateRate, 1, 20,
+                TimeUnit.MILLISECONDS);
+        OrderChecker checker = new OrderChecker(streams > 0);
+
+        ConnectionParameters receiverLimits = new ConnectionParameters(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE,
+                Receiver.MAX_WINDOW_LENGTH, 0, ConnectionParameters.DEFAULT_RESEND_PERIOD, AckPolicy.IMMEDIATE,
+                EnumSet.allOf(Feature.class));
+        ConnectionParameters proposal = new ConnectionParameters(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE,
+                Receiver.MAX_WINDOW_LENGTH, 0, 200L, AckPolicy.IMMEDIATE,
+                streams > 0 ? EnumSet.of(Feature.STREAMS) : EnumSet.noneOf(Feature.class));
+
+        try (Receiver receiver = new Receiver(network.bind(RECEIVER_ADDRESS), checker, receiverLimits, clock);
+                SenderEventLoop sender = new SenderEventLoop(network.bind(SENDER_ADDRESS), RECEIVER_ADDRESS,
+                        proposal, clock)) {
+            sender.startPolling();
+            CompletableFuture<ConnectionParameters> connection = sender.beginConnect();
+            long nextIndex = 0;
+
+            while (checker.delivered < MESSAGES && clock.nanoTime() < MAX_VIRTUAL_TIME) {
+                while (connection.isDone() && nextIndex < MESSAGES && sender.getAvailableSlots() > 0) {
+                    Message message = new Message(MessageType.PACKAGE, nextIndex);
+                    message.addMessage(MessageBodyType.BODY.label, "mensagem " + nextIndex);
+                    sender.send(message, streams > 0 ? (int) (nextIndex % streams) : 0, 0, 1);
+                    nextIndex++;
+                    sender.poll();
+                }
+
+                sender.poll();
+                receiver.poll();
+
+                clock.advanceTo(Math.min(network.nextArrivalNanos(),
+                        Math.min(sender.nextDeadlineNanos(), receiver.nextDeadlineNanos())));
+            }
+
+            return new SimulationResult(checker.delivered, clock.nanoTime(), network.getSentDatagrams(),
+                    sender.getMetrics().get(ProtocolMetrics.Counter.RETRANSMITTED_PACKETS));
+        }
+    }
+
+    private static final class OrderChecker implements Receiver.DeliveryHandler {
+        private final boolean perStream;
+        private final Map<Object, Long> nextIndexes = new HashMap<>();
+        private int delivered;
+
+        OrderChecker(boolean perStream) {
+            this.perStream = perStream;
+        }
+
+        @Override
+        public void deliver(Message message) {
+            if (perStream) {
+                Object stream = message.getMessages().get(MessageBodyType.STREAM.label);
+                long expected = nextIndexes.getOrDefault(stream, 0L);
+                assertEquals(expected, message.getMessages().get(MessageBodyType.STREAM_INDEX.label));
+                nextIndexes.put(stream, expected + 1);
+            } else {
+                assertEquals(delivered, message.getHeader().getMessageIndex().longValue());
+            }
+            delivered++;
+        }
+    }
+
+    private static final class SimulationResult {
+        private final int deliveredMessages;
+        private final long virtualNanos;
+        private final long sentDatagrams;
+        private final long retransmissions;
+
+        SimulationResult(int deliveredMessages, long virtualNanos, long sentDatagrams, long retransmissions) {
+            this.deliveredMessages = deliveredMessages;
+            this.virtualNanos = virtualNanos;
+            this.sentDatagrams = sentDatagrams;
+            this.retransmissions = retransmissions;
+        }
+
+        @Override
+        public String toString() {
+            return "SimulationResult [deliveredMessages=" + deliveredMessages + ", virtualNanos=" + virtualNanos
+                    + ", sentDatagrams=" + sentDatagrams + ", retransmissions=" + retransmissions + "]";
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.chatapp;
+
+import com.chatapp.ConnectionParameters.AckPolicy;
+import com.chatapp.ConnectionParameters.Feature;
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import com.chatapp.PacketCapture.CapturedPacket;
+import com.chatapp.PacketCapture.Direction;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the memory-mapped packet capture and its replay.
+ */
+class PacketCaptureTest {
+
+    @Test
+    void readsBackRecordsAcrossMappedRegions(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("capture.bin");
+        InetSocketAddress peer = new InetSocketAddress(InetAddress.getLoopbackAddress(), 40123);
+
+        try (PacketCapture capture = new PacketCapture(file, 256)) {
+            for (int i = 0; i < 50; i++) {
+                byte[] frame = frame(i);
+                capture.record(i % 2 == 0 ? Direction.SENT : Direction.RECEIVED, peer, frame, 0, frame.length);
+            }
+        }
+
+        try (PacketCapture.Reader reader = PacketCapture.Reader.open(file)) {
+            long previousTimestamp = Long.MIN_VALUE;
+
+            for (int i = 0; i < 50; i++) {
+                CapturedPacket packet = reader.next();
+
+                assertEquals(i % 2 == 0 ? Direction.SENT : Direction.RECEIVED, packet.getDirection());
+                assertEquals(peer, packet.getPeer());
+                assertArrayEquals(frame(i), packet.getFrame());
+                assertTrue(packet.getTimestampNanos() >= previousTimestamp);
+                previousTimestamp = packet.getTimestampNanos();
+            }
+
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void replaysOnlySelectedDirection(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("replay.bin");
+        InetSocketAddress peer = new InetSocketAddress(InetAddress.getLoopbackAddress(), 40124);
+
+        try (PacketCapture capture = PacketCapture.create(file)) {
+            for (int i = 0; i < 6; i++) {
+                byte[] frame = frame(i);
+                capture.record(i < 4 ? Direction.RECEIVED : Direction.SENT, peer, frame, 0, frame.length);
+            }
+        }
+
+        try (DatagramSocket target = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            target.setSoTimeout(2000);
+
+            long replayed = CaptureReplay.replay(file, target.getLocalSocketAddress(), Direction.RECEIVED, 0);
+
+            assertEquals(4, replayed);
+            for (int i = 0; i < 4; i++) {
+                DatagramPacket packet = new DatagramPacket(new byte[64], 64);
+                target.receive(packet);
+                assertEquals(frame(i).length, packet.getLength());
+            }
+        }
+
+        assertTrue(Files.size(file) < PacketCapture.DEFAULT_REGION_SIZE);
+    }
+
+    @Test
+    void simulatedReplayReproducesCapturedRun(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("simulation.bin");
+        InetSocketAddress receiverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 12401);
+        InetSocketAddress senderAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 12402);
+        ConnectionParameters parameters = new ConnectionParameters(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE, 16,
+                0, 200L, AckPolicy.IMMEDIATE, EnumSet.noneOf(Feature.class));
+        List<Long> delivered = new ArrayList<>();
+
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(23L, clock, 0.1, 0.05, 1, 20, TimeUnit.MILLISECONDS);
+
+        try (PacketCapture capture = PacketCapture.create(file, clock);
+                SenderEventLoop sender = new SenderEventLoop(network.bind(senderAddress), receiverAddress,
+                        parameters, clock)) {
+            Receiver receiver = new Receiver(network.bind(receiverAddress),
+                    message -> delivered.add(message.getHeader().getMessageIndex()), parameters, clock);
+            receiver.enableCapture(capture);
+            sender.startPolling();
+            CompletableFuture<ConnectionParameters> connection = sender.beginConnect();
+            long nextIndex = 0;
+
+            while ((sender.getAvailableSlots() < parameters.getWindowLength() || nextIndex < 100)
+                    && clock.nanoTime() < TimeUnit.HOURS.toNanos(1)) {
+                sender.poll();
+                receiver.poll();
+
+                while (connection.isDone() && nextIndex < 100 && sender.getAvailableSlots() > 0) {
+                    Message message = new Message(MessageType.PACKAGE, nextIndex++);
+                    message.addMessage(MessageBodyType.BODY.label, "mensagem " + message.getHeader().getMessageIndex());
+                    sender.send(message, 0, 1);
+                    sender.poll();
+                }
+
+                clock.advanceTo(Math.min(network.nextArrivalNanos(),
+                        Math.min(sender.nextDeadlineNanos(), receiver.nextDeadlineNanos())));
+            }
+            receiver.close();
+        }
+        assertEquals(100, delivered.size());
+
+        Path replayFile = directory.resolve("replay.bin");
+        List<Long> replayed = new ArrayList<>();
+        VirtualClock replayClock = new VirtualClock();
+        InMemoryNetwork replayNetwork = new InMemoryNetwork(1L, replayClock, 0.0, 0.0, 1, 1, TimeUnit.MILLISECONDS);
+
+        try (PacketCapture capture = PacketCapture.create(replayFile, replayClock)) {
+            Receiver receiver = new Receiver(replayNetwork.bind(receiverAddress),
+                    message -> replayed.add(message.getHeader().getMessageIndex()), parameters, replayClock);
+            receiver.enableCapture(capture);
+            CaptureReplay.replay(file, Direction.RECEIVED, replayNetwork, replayClock, receiver, receiverAddress);
+            receiver.close();
+        }
+
+        assertEquals(delivered, replayed);
+        assertEquals(frames(file, Direction.SENT), frames(replayFile, Direction.SENT));
+    }
+
+    /**
+     * @return The frames of one direction, as hexadecimal strings so that lists compare by content
+     */
+    private static List<String> frames(Path file, Direction direction) throws IOException {
+        List<String> frames = new ArrayList<>();
+
+        try (PacketCapture.Reader reader = PacketCapture.Reader.open(file)) {
+            CapturedPacket packet;
+            while ((packet = reader.next()) != null) {
+                if (packet.getDirection() == direction) {
+                    frames.add(new BigInteger(1, packet.getFrame()).toString(16));
+                }
+            }
+        }
+
+        return frames;
+    }
+
+    private static byte[] frame(int index) {
+        byte[] frame = new byte[10 + index];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = (byte) (index * 31 + i);
+        }
+        return frame;
+    }
+}
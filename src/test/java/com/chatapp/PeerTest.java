@@ -0,0 +1,314 @@
+package com.chatapp;
+
+import com.chatapp.ConnectionParameters.AckPolicy;
+import com.chatapp.ConnectionParameters.Feature;
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Simulated conversations between two full-duplex peers, each one answering every message received from the other.
+ */
+class PeerTest {
+
+    private static final int MESSAGES = 200;
+    private static final InetSocketAddress ADDRESS_A = new InetSocketAddress(InetAddress.getLoopbackAddress(), 12201);
+    private static final InetSocketAddress ADDRESS_B = new InetSocketAddress(InetAddress.getLoopbackAddress(), 12202);
+
+    @Test
+    void delayedAcknowledgesRideOnReplies() throws IOException {
+        Conversation immediate = converse(AckPolicy.IMMEDIATE, 0.0);
+        Conversation delayed = converse(AckPolicy.DELAYED, 0.0);
+
+        assertTrue(delayed.sentDatagrams * 10 < immediate.sentDatagrams * 6,
+                delayed.sentDatagrams + " datagrams against " + immediate.sentDatagrams);
+        assertTrue(delayed.piggybackedAcknowledges > delayed.standaloneAcknowledges);
+    }
+
+    @Test
+    void lossyConversationDeliversEverythingInOrder() throws IOException {
+        Conversation delayed = converse(AckPolicy.DELAYED, 0.1);
+
+        assertTrue(delayed.piggybackedAcknowledges > 0);
+    }
+
+    @Test
+    void staleWindowFromRepeatedAcknowledgeIsIgnored() throws IOException {
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(3L, clock, 0.0, 0.0, 1, 1, TimeUnit.MILLISECONDS);
+        Transport remote = network.bind(ADDRESS_B);
+        ByteBuffer buffer = ByteBuffer.allocate(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE);
+        MessageView view = new MessageView();
+
+        try (Peer peer = new Peer(network.bind(ADDRESS_A), ADDRESS_B, parameters(AckPolicy.IMMEDIATE, 4),
+                message -> { }, clock)) {
+            CompletableFuture<ConnectionParameters> connection = peer.beginConnect();
+            peer.poll();
+            clock.advanceTo(network.nextArrivalNanos());
+            remote.receive(buffer);
+            assertTrue(view.wrap(buffer.array(), 0, buffer.position()));
+            acceptOpen(remote, view);
+            deliverTo(peer, network, clock);
+            assertTrue(connection.isDone());
+
+            peer.send(message(0));
+            peer.poll();
+
+            byte[] closed = acknowledge(MessageType.ACKNOWLEDGE, 0, 1L);
+            remote.send(ADDRESS_A, closed, 0, closed.length);
+            deliverTo(peer, network, clock);
+            assertTrue(peer.getAvailableSlots() <= 0);
+
+            byte[] opened = acknowledge(MessageType.ACKNOWLEDGE, 4, 2L, 0L);
+            remote.send(ADDRESS_A, opened, 0, opened.length);
+            deliverTo(peer, network, clock);
+            assertEquals(4, peer.getAvailableSlots());
+
+            remote.send(ADDRESS_A, closed, 0, closed.length);
+            deliverTo(peer, network, clock);
+            assertEquals(4, peer.getAvailableSlots());
+        }
+    }
+
+    @Test
+    void lossyTransferThroughZeroWindowsDeliversEverythingInOrder() throws IOException {
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(17L, clock, 0.1, 0.1, 1, 20, TimeUnit.MILLISECONDS);
+        SlowReceiver receiver = new SlowReceiver(network.bind(ADDRESS_B), clock, 4, TimeUnit.MILLISECONDS.toNanos(30));
+
+        try (Peer peer = new Peer(network.bind(ADDRESS_A), ADDRESS_B, parameters(AckPolicy.IMMEDIATE, 4),
+                message -> { }, clock)) {
+            CompletableFuture<ConnectionParameters> connection = peer.beginConnect();
+            long nextIndex = 0;
+
+            while (receiver.consumed.size() < MESSAGES && clock.nanoTime() < TimeUnit.HOURS.toNanos(1)) {
+                peer.poll();
+                receiver.poll();
+
+                while (connection.isDone() && nextIndex < MESSAGES && peer.getAvailableSlots() > 0) {
+                    peer.send(message(nextIndex++));
+                    peer.poll();
+                }
+                clock.advanceTo(Math.min(network.nextArrivalNanos(),
+                        Math.min(peer.nextDeadlineNanos(), receiver.nextConsumeNanos)));
+            }
+
+            assertEquals(MESSAGES, receiver.consumed.size());
+            for (int i = 0; i < MESSAGES; i++) {
+                assertEquals(i, receiver.consumed.get(i));
+            }
+            assertTrue(receiver.zeroWindowAdvertisements > 0);
+        }
+    }
+
+    /**
+     * Peer A sends the first message, B answers each message from A and A sends the next one when the answer arrives.
+     */
+    private static Conversation converse(AckPolicy ackPolicy, double lossRate) throws IOException {
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(11L, clock, lossRate, 0.0, 1, 20, TimeUnit.MILLISECONDS);
+        ConnectionParameters parameters = parameters(ackPolicy, 16);
+        List<Long> receivedByA = new ArrayList<>();
+        List<Long> receivedByB = new ArrayList<>();
+        AtomicLong nextIndexA = new AtomicLong();
+        AtomicLong nextIndexB = new AtomicLong();
+        List<Peer> peers = new ArrayList<>();
+
+        Receiver.DeliveryHandler handlerA = message -> {
+            receivedByA.add(message.getHeader().getMessageIndex());
+            if (nextIndexA.get() < MESSAGES) {
+                peers.get(0).send(message(nextIndexA.getAndIncrement()));
+            }
+        };
+        Receiver.DeliveryHandler handlerB = message -> {
+            receivedByB.add(message.getHeader().getMessageIndex());
+            peers.get(1).send(message(nextIndexB.getAndIncrement()));
+        };
+
+        try (Peer peerA = new Peer(network.bind(ADDRESS_A), ADDRESS_B, parameters, handlerA, clock);
+                Peer peerB = new Peer(network.bind(ADDRESS_B), ADDRESS_A, parameters, handlerB, clock)) {
+            peers.add(peerA);
+            peers.add(peerB);
+            CompletableFuture<ConnectionParameters> connectionA = peerA.beginConnect();
+            CompletableFuture<ConnectionParameters> connectionB = peerB.beginConnect();
+            boolean isStarted = false;
+
+            while (receivedByA.size() < MESSAGES && clock.nanoTime() < TimeUnit.HOURS.toNanos(1)) {
+                peerA.poll();
+                peerB.poll();
+
+                if (!isStarted && connectionA.isDone() && connectionB.isDone()) {
+                    peerA.send(message(nextIndexA.getAndIncrement()));
+                    isStarted = true;
+                    continue;
+                }
+
+                clock.advanceTo(Math.min(network.nextArrivalNanos(),
+                        Math.min(peerA.nextDeadlineNanos(), peerB.nextDeadlineNanos())));
+            }
+
+            assertEquals(MESSAGES, receivedByA.size());
+            assertEquals(MESSAGES, receivedByB.size());
+            for (int i = 0; i < MESSAGES; i++) {
+                assertEquals(i, receivedByA.get(i));
+                assertEquals(i, receivedByB.get(i));
+            }
+
+            Conversation conversation = new Conversation();
+            conversation.sentDatagrams = network.getSentDatagrams();
+            conversation.piggybackedAcknowledges = count(ProtocolMetrics.Counter.PIGGYBACKED_ACKNOWLEDGES, peerA,
+                    peerB);
+            conversation.standaloneAcknowledges = count(ProtocolMetrics.Counter.STANDALONE_ACKNOWLEDGES, peerA, peerB);
+            return conversation;
+        }
+    }
+
+    private static long count(ProtocolMetrics.Counter counter, Peer... peers) {
+        long count = 0;
+        for (Peer peer : peers) {
+            count += peer.getMetrics().get(counter);
+        }
+        return count;
+    }
+
+    private static ConnectionParameters parameters(AckPolicy ackPolicy, int windowLength) {
+        return new ConnectionParameters(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE, windowLength, 0, 200L,
+                ackPolicy, EnumSet.noneOf(Feature.class));
+    }
+
+    private static void acceptOpen(Transport remote, MessageView open) throws IOException {
+        ConnectionParameters offer = ConnectionParameters.fromMessage(open);
+        byte[] accept = MessageCodec.encode(offer.toMessage(MessageType.ACCEPT));
+        remote.send(ADDRESS_A, accept, 0, accept.length);
+    }
+
+    private static void deliverTo(Peer peer, InMemoryNetwork network, VirtualClock clock) throws IOException {
+        clock.advanceTo(network.nextArrivalNanos());
+        peer.poll();
+    }
+
+    private static byte[] acknowledge(MessageType messageType, int window, long sequence, long... indexes) {
+        ByteBuffer acknowledges = ByteBuffer.allocate(indexes.length * Long.BYTES);
+        for (long index : indexes) {
+            acknowledges.putLong(index);
+        }
+
+        Message message = new Message(messageType, null);
+        message.addMessage(MessageBodyType.ACKS.label, acknowledges.array());
+        message.addMessage(MessageBodyType.WINDOW.label, window);
+        message.addMessage(MessageBodyType.ACK_SEQUENCE.label, sequence);
+        return MessageCodec.encode(message);
+    }
+
+    private static Message message(long index) {
+        Message message = new Message(MessageType.PACKAGE, index);
+        message.addMessage(MessageBodyType.BODY.label, "mensagem " + index);
+        return message;
+    }
+
+    private static final class Conversation {
+        private long sentDatagrams;
+        private long piggybackedAcknowledges;
+        private long standaloneAcknowledges;
+    }
+
+    /**
+     * Receiving side whose application consumes one message per period, so its buffer fills up and it advertises zero
+     * windows while the network loses, duplicates and reorders the datagrams.
+     */
+    private static final class SlowReceiver {
+        private final Transport transport;
+        private final Clock clock;
+        private final int windowLength;
+        private final long consumePeriodNanos;
+        private final ByteBuffer buffer = ByteBuffer.allocate(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE);
+        private final MessageView view = new MessageView();
+        private final NavigableSet<Long> outOfOrder = new TreeSet<>();
+        private final Queue<Long> unconsumed = new ArrayDeque<>();
+        private final List<Long> consumed = new ArrayList<>();
+        private long windowStartIndex;
+        private long sequence;
+        private long nextConsumeNanos = Long.MAX_VALUE;
+        private int zeroWindowAdvertisements;
+
+        private SlowReceiver(Transport transport, Clock clock, int windowLength, long consumePeriodNanos) {
+            this.transport = transport;
+            this.clock = clock;
+            this.windowLength = windowLength;
+            this.consumePeriodNanos = consumePeriodNanos;
+        }
+
+        private void poll() throws IOException {
+            buffer.clear();
+            while (transport.receive(buffer) != null) {
+                if (view.wrap(buffer.array(), 0, buffer.position())) {
+                    handle(view);
+                }
+                buffer.clear();
+            }
+
+            if (clock.nanoTime() >= nextConsumeNanos) {
+                consumed.add(unconsumed.poll());
+                nextConsumeNanos = unconsumed.isEmpty() ? Long.MAX_VALUE : clock.nanoTime() + consumePeriodNanos;
+                send(MessageType.WINDOW_UPDATE);
+            }
+        }
+
+        private void handle(MessageView frame) throws IOException {
+            switch (frame.getMessageType()) {
+                case OPEN:
+                    acceptOpen(transport, frame);
+                    break;
+                case WINDOW_PROBE:
+                    send(MessageType.ACKNOWLEDGE);
+                    break;
+                case PACKAGE:
+                    long index = frame.getMessageIndex();
+                    if (index >= windowStartIndex && !outOfOrder.contains(index)) {
+                        if (unconsumed.size() + outOfOrder.size() >= windowLength) {
+                            send(MessageType.ACKNOWLEDGE);
+                            return;
+                        }
+                        outOfOrder.add(index);
+                    }
+                    while (outOfOrder.remove(windowStartIndex)) {
+                        unconsumed.add(windowStartIndex++);
+                        if (nextConsumeNanos == Long.MAX_VALUE) {
+                            nextConsumeNanos = clock.nanoTime() + consumePeriodNanos;
+                        }
+                    }
+                    send(MessageType.ACKNOWLEDGE, index);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void send(MessageType messageType, long... indexes) throws IOException {
+            int window = windowLength - unconsumed.size() - outOfOrder.size();
+            if (window == 0) {
+                zeroWindowAdvertisements++;
+            }
+
+            byte[] frame = acknowledge(messageType, window, ++sequence, indexes);
+            transport.send(ADDRESS_A, frame, 0, frame.length);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the Receiver pipeline ring: parallel decode, in-order consumption and backpressure, plus the
+ * threaded pipeline of {@link Receiver#listenForMessages(int)} over UDP.
+ */
+class ReceiveRingTest {
+
+    private static final int FRAMES = 50_000;
+
+    @Test
+    void consumesInArrivalOrderWithParallelDecoders() throws Exception {
+        ReceiveRing ring = new ReceiveRing(8, 256);
+        List<Thread> workers = new ArrayList<>();
+        AtomicLong consumed = new AtomicLong();
+        AtomicLong outOfOrder = new AtomicLong();
+
+        Thread consumer = new Thread(() -> {
+            long expected = 0;
+            while (expected < FRAMES) {
+                ReceiveRing.Slot slot = ring.pollDecoded();
+
+                if (slot == null) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    continue;
+                }
+
+                if (!slot.isDecoded() || slot.getMessage().getMessageIndex() != expected) {
+                    outOfOrder.incrementAndGet();
+                }
+                expected++;
+                ring.release();
+            }
+            consumed.set(expected);
+        });
+        ring.setConsumer(consumer);
+        consumer.start();
+
+        for (int i = 0; i < 4; i++) {
+            Thread worker = new Thread(() -> {
+                while (true) {
+                    long sequence;
+                    try {
+                        sequence = ring.claimDecode();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    ReceiveRing.Slot slot = ring.get(sequence);
+                    ByteBuffer buffer = slot.getBuffer();
+                    boolean isDecoded = slot.getMessage().wrap(buffer.array(), 0, buffer.position());
+                    slot.setDecodeResult(isDecoded, isDecoded);
+                    ring.markDecoded(sequence);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+
+        InetSocketAddress peer = InetSocketAddress.createUnresolved("sender", 1);
+        for (long index = 0; index < FRAMES; index++) {
+            ReceiveRing.Slot slot = ring.awaitFreeSlot();
+            slot.getBuffer().put(frame(index));
+            slot.setPeer(peer);
+            ring.publish();
+        }
+
+        consumer.join(TimeUnit.SECONDS.toMillis(30));
+        workers.forEach(Thread::interrupt);
+
+        assertEquals(FRAMES, consumed.get());
+        assertEquals(0, outOfOrder.get());
+    }
+
+    @Test
+    void closeWakesProducerWaitingForFullRing() throws Exception {
+        ReceiveRing ring = new ReceiveRing(2, 64);
+        ring.awaitFreeSlot();
+        ring.publish();
+        ring.awaitFreeSlot();
+        ring.publish();
+
+        Thread closer = new Thread(() -> {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+            ring.close();
+        });
+        closer.start();
+
+        long start = System.nanoTime();
+        assertThrows(ClosedChannelException.class, ring::awaitFreeSlot);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        closer.join();
+    }
+
+    @Test
+    void decodeWorkersSurviveMalformedDatagrams() throws Exception {
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        ConnectionParameters parameters = new ConnectionParameters(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE,
+                ConnectionParameters.DEFAULT_WINDOW_LENGTH, 0, ConnectionParameters.DEFAULT_RESEND_PERIOD,
+                ConnectionParameters.AckPolicy.IMMEDIATE, EnumSet.noneOf(ConnectionParameters.Feature.class));
+        DatagramTransport transport = DatagramTransport.bind(0);
+        int port = ((InetSocketAddress) transport.getLocalAddress()).getPort();
+        InetSocketAddress receiverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        Receiver receiver = new Receiver(transport,
+                message -> delivered.add((String) message.getMessages().get(MessageBodyType.BODY.label)), parameters,
+                Clock.SYSTEM);
+
+        Thread listener = new Thread(() -> {
+            try {
+                receiver.listenForMessages(2);
+            } catch (IOException e) {
+                // closed by Receiver.close
+            }
+        });
+        listener.start();
+
+        try (DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            List<byte[]> garbage = new ArrayList<>();
+            garbage.add(new byte[] {1, 2, 3});
+            garbage.add(new byte[MessageCodec.HEADER_LENGTH]);
+            byte[] corrupted = frame(7);
+            corrupted[corrupted.length - 1] ^= 0x55;
+            garbage.add(corrupted);
+            for (int i = 0; i < 10; i++) {
+                for (byte[] datagram : garbage) {
+                    socket.send(new DatagramPacket(datagram, datagram.length, receiverAddress));
+                }
+            }
+        }
+
+        SenderEventLoop sender = new SenderEventLoop(0, receiverAddress, parameters);
+        try {
+            sender.start();
+            sender.connect(TimeUnit.SECONDS.toMillis(10));
+            for (long i = 0; i < 20; i++) {
+                Message message = new Message(MessageType.PACKAGE, i);
+                message.addMessage(MessageBodyType.BODY.label, "mensagem " + i);
+                sender.send(message, 0, 1);
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (delivered.size() < 20 && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        } finally {
+            sender.close();
+            receiver.close();
+            listener.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        assertEquals(20, delivered.size());
+        for (int i = 0; i < delivered.size(); i++) {
+            assertEquals("mensagem " + i, delivered.get(i));
+        }
+        assertTrue(receiver.getMetrics().get(ProtocolMetrics.Counter.CORRUPTED_FRAMES) > 0);
+        assertFalse(listener.isAlive());
+    }
+
+    private static byte[] frame(long index) {
+        Message message = new Message(MessageType.PACKAGE, index);
+        message.addMessage(MessageBodyType.BODY.label, "mensagem " + index);
+        return MessageCodec.encode(message);
+    }
+}
@@ -0,0 +1,153 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for per-stream delivery order inside a Receiver session and for restoring its snapshot state.
+ */
+class ReceiverSessionTest {
+
+    @Test
+    void lossInOneStreamDoesNotHoldBackAnother() {
+        ReceiverSession session = new ReceiverSession(InetSocketAddress.createUnresolved("sender", 1), 0);
+        Queue<MessageView> deliveryQueue = new ArrayDeque<>();
+
+        // global 0 (stream 0, index 0) is lost
+        session.receive(1, frame(1, 1, 0));
+        session.receive(2, frame(2, 0, 1));
+        session.receive(3, frame(3, 1, 1));
+        assertTrue(session.advance(deliveryQueue));
+
+        assertEquals(2, deliveryQueue.size());
+        assertEquals(1L, deliveryQueue.poll().getMessageIndex());
+        assertEquals(3L, deliveryQueue.poll().getMessageIndex());
+        assertEquals(0, session.getWindowStartIndex());
+
+        session.receive(0, frame(0, 0, 0));
+        assertTrue(session.advance(deliveryQueue));
+
+        assertEquals(0L, deliveryQueue.poll().getMessageIndex());
+        assertEquals(2L, deliveryQueue.poll().getMessageIndex());
+        assertEquals(4, session.getWindowStartIndex());
+        assertEquals(session.getParameters().getWindowLength(), session.getAvailableWindow());
+    }
+
+    @Test
+    void fullDeliveryQueueKeepsWindowClosed() {
+        ReceiverSession session = new ReceiverSession(InetSocketAddress.createUnresolved("sender", 1), 0);
+        Queue<MessageView> deliveryQueue = new ArrayBlockingQueue<>(1);
+
+        session.receive(0, frame(0, 0, 0));
+        session.receive(1, frame(1, 1, 0));
+        assertFalse(session.advance(deliveryQueue));
+        assertEquals(1, session.getWindowStartIndex());
+
+        deliveryQueue.poll();
+        assertTrue(session.advance(deliveryQueue));
+        assertEquals(2, session.getWindowStartIndex());
+        assertEquals(1L, deliveryQueue.poll().getMessageIndex());
+    }
+
+    @Test
+    void messagesWithoutStreamFollowGlobalOrder() {
+        ReceiverSession session = new ReceiverSession(InetSocketAddress.createUnresolved("sender", 1), 0);
+        Queue<MessageView> deliveryQueue = new ArrayDeque<>();
+
+        assertFalse(session.receive(1, frame(1, null, null)));
+        session.advance(deliveryQueue);
+        assertTrue(deliveryQueue.isEmpty());
+
+        assertTrue(session.receive(0, frame(0, null, null)));
+        session.advance(deliveryQueue);
+        assertEquals(2, deliveryQueue.size());
+    }
+
+    @Test
+    void skipAdvancesWindowAndStreamPastExpiredMessage() {
+        ReceiverSession session = new ReceiverSession(InetSocketAddress.createUnresolved("sender", 1), 0);
+        Queue<MessageView> deliveryQueue = new ArrayDeque<>();
+
+        session.receive(1, frame(1, 0, 1));
+        session.advance(deliveryQueue);
+        assertTrue(deliveryQueue.isEmpty());
+
+        assertTrue(session.receive(0, frame(MessageType.SKIP, 0, 0, 0)));
+        session.advance(deliveryQueue);
+
+        assertEquals(1, deliveryQueue.size());
+        assertEquals(1L, deliveryQueue.poll().getMessageIndex());
+        assertEquals(2, session.getWindowStartIndex());
+        assertTrue(session.isDuplicatedMessage(0));
+    }
+
+    @Test
+    void rejectsSnapshotStateWithInvalidLengths() throws Exception {
+        ReceiverSession session = new ReceiverSession(new InetSocketAddress(InetAddress.getLoopbackAddress(), 1), 0);
+        MessageView buffered = frame(1, null, null);
+        session.receive(1, buffered);
+        ByteBuffer state = ByteBuffer.allocate(1024);
+        session.writeState(state);
+        state.flip();
+
+        ByteBuffer badAddress = copy(state);
+        badAddress.put(0, (byte) -1);
+        assertThrows(UnknownHostException.class, () -> ReceiverSession.readPeer(badAddress));
+
+        int parametersOffset = 1 + InetAddress.getLoopbackAddress().getAddress().length + Short.BYTES;
+        int frameLengthOffset = state.limit() - buffered.getLength() - Integer.BYTES;
+        // a negative frame length marks a handed-off message, so only the parameters length can be negative
+        int[][] corruptions = {{parametersOffset, -5}, {parametersOffset, Integer.MAX_VALUE},
+            {frameLengthOffset, Integer.MAX_VALUE}};
+        for (int[] corruption : corruptions) {
+            ByteBuffer corrupted = copy(state);
+            corrupted.putInt(corruption[0], corruption[1]);
+            ReceiverSession.readPeer(corrupted);
+
+            assertFalse(new ReceiverSession(null, 0).restoreState(corrupted, false));
+        }
+
+        ByteBuffer intact = copy(state);
+        ReceiverSession.readPeer(intact);
+        assertTrue(new ReceiverSession(null, 0).restoreState(intact, false));
+    }
+
+    private static ByteBuffer copy(ByteBuffer state) {
+        ByteBuffer copy = ByteBuffer.allocate(state.limit());
+        copy.put(state.duplicate()).flip();
+        return copy;
+    }
+
+    private static MessageView frame(long index, Integer stream, Integer streamIndex) {
+        return frame(MessageType.PACKAGE, index, stream, streamIndex);
+    }
+
+    private static MessageView frame(MessageType type, long index, Integer stream, Integer streamIndex) {
+        Message message = new Message(type, index);
+        if (MessageType.PACKAGE.equals(type)) {
+            message.addMessage(MessageBodyType.BODY.label, "mensagem " + index);
+        }
+        if (stream != null) {
+            message.addMessage(MessageBodyType.STREAM.label, stream);
+            message.addMessage(MessageBodyType.STREAM_INDEX.label, streamIndex.longValue());
+        }
+
+        byte[] bytes = MessageCodec.encode(message);
+        MessageView view = new MessageView();
+        assertTrue(view.wrap(bytes, 0, bytes.length));
+        return view;
+    }
+}
@@ -0,0 +1,172 @@
+package com.chatapp;
+
+import com.chatapp.ConnectionParameters.AckPolicy;
+import com.chatapp.ConnectionParameters.Feature;
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the memory-mapped snapshot of the Receiver sessions and the resumption of a restarted Receiver.
+ */
+class ReceiverSnapshotTest {
+
+    private static final int MESSAGES = 400;
+
+    @Test
+    void keepsPreviousSlotWhenLatestIsTornAndGrowsForLargeSnapshots(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("receiver.snapshot");
+
+        try (ReceiverSnapshot snapshot = new ReceiverSnapshot(file, 64)) {
+            assertNull(snapshot.load());
+            snapshot.store(content(10, 1));
+            snapshot.store(content(10, 2));
+            snapshot.store(content(200, 3));
+            assertEquals(3, snapshot.getGeneration());
+        }
+
+        try (ReceiverSnapshot snapshot = new ReceiverSnapshot(file, 64)) {
+            assertEquals(3, snapshot.getGeneration());
+            assertEquals(content(200, 3), snapshot.load());
+            snapshot.store(content(10, 4));
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            long slotSize = channel.size() / 2;
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) 0xFF}), slotSize + ReceiverSnapshot.SLOT_HEADER_LENGTH);
+        }
+
+        try (ReceiverSnapshot snapshot = new ReceiverSnapshot(file, 64)) {
+            assertEquals(3, snapshot.getGeneration());
+            assertEquals(content(200, 3), snapshot.load());
+        }
+    }
+
+    @Test
+    void restartedReceiverResumesFromGracefulSnapshot(@TempDir Path directory) throws Exception {
+        List<Long> delivered = new ArrayList<>();
+        Path file = directory.resolve("receiver.snapshot");
+
+        assertTrue(converseAcrossRestart(file, delivered, false));
+        assertEquals(MESSAGES, delivered.size());
+        for (int i = 0; i < MESSAGES; i++) {
+            assertEquals(i, delivered.get(i));
+        }
+    }
+
+    @Test
+    void restartedReceiverSkipsGapsAcknowledgedAfterStaleSnapshot(@TempDir Path directory) throws Exception {
+        List<Long> delivered = new ArrayList<>();
+        Path file = directory.resolve("receiver.snapshot");
+
+        assertTrue(converseAcrossRestart(file, delivered, true));
+        for (long i = 0; i < MESSAGES; i++) {
+            assertTrue(delivered.contains(i), "missing " + i);
+        }
+    }
+
+    /**
+     * Sends the messages to a Receiver that is stopped halfway, either closed or crashed without a final snapshot, and
+     * to a second Receiver restored from its snapshot on the same address.
+     *
+     * @return true if the Sender got every acknowledgement
+     */
+    private boolean converseAcrossRestart(Path file, List<Long> delivered, boolean crash) throws Exception {
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(5L, clock, 0.05, 0.01, 1, 20, TimeUnit.MILLISECONDS);
+        InetSocketAddress receiverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 12301);
+        InetSocketAddress senderAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 12302);
+        ConnectionParameters parameters = new ConnectionParameters(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE,
+                Receiver.MAX_WINDOW_LENGTH, 1_000_000L, 200L, AckPolicy.IMMEDIATE, EnumSet.noneOf(Feature.class));
+        List<Long> deliveredBeforeRestart = new ArrayList<>();
+        List<Long> deliveredAfterRestart = new ArrayList<>();
+
+        try (ReceiverSnapshot snapshot = ReceiverSnapshot.open(file);
+                SenderEventLoop sender = new SenderEventLoop(network.bind(senderAddress), receiverAddress,
+                        parameters, clock)) {
+            Transport firstTransport = network.bind(receiverAddress);
+            Receiver receiver = new Receiver(firstTransport,
+                    message -> deliveredBeforeRestart.add(message.getHeader().getMessageIndex()), parameters, clock);
+            receiver.enableSnapshots(snapshot, Receiver.DEFAULT_SNAPSHOT_PERIOD_MILLIS);
+            boolean isRestarted = false;
+
+            sender.startPolling();
+            CompletableFuture<ConnectionParameters> connection = sender.beginConnect();
+            long nextIndex = parameters.getInitialSequenceNumber();
+            long lastIndex = nextIndex + MESSAGES;
+
+            while ((sender.getAvailableSlots() < parameters.getWindowLength() || nextIndex < lastIndex)
+                    && clock.nanoTime() < TimeUnit.HOURS.toNanos(1)) {
+                while (connection.isDone() && nextIndex < lastIndex && sender.getAvailableSlots() > 0) {
+                    Message message = new Message(MessageType.PACKAGE, nextIndex);
+                    message.addMessage(MessageBodyType.BODY.label, "mensagem " + nextIndex);
+                    sender.send(message, 0, 1);
+                    nextIndex++;
+                    sender.poll();
+                }
+
+                sender.poll();
+                receiver.poll();
+
+                if (!isRestarted && deliveredBeforeRestart.size() >= MESSAGES / 2) {
+                    if (crash) {
+                        firstTransport.close();
+                    } else {
+                        receiver.close();
+                    }
+
+                    receiver = new Receiver(network.bind(receiverAddress),
+                            message -> deliveredAfterRestart.add(message.getHeader().getMessageIndex()), parameters,
+                            clock);
+                    receiver.enableSnapshots(snapshot, Receiver.DEFAULT_SNAPSHOT_PERIOD_MILLIS);
+                    assertEquals(1, receiver.getSessionCount());
+                    isRestarted = true;
+                }
+
+                clock.advanceTo(Math.min(network.nextArrivalNanos(),
+                        Math.min(sender.nextDeadlineNanos(), receiver.nextDeadlineNanos())));
+            }
+
+            receiver.close();
+            assertTrue(isRestarted);
+            for (int i = 1; i < deliveredAfterRestart.size(); i++) {
+                assertTrue(deliveredAfterRestart.get(i) > deliveredAfterRestart.get(i - 1));
+            }
+
+            for (long index : deliveredBeforeRestart) {
+                delivered.add(index - parameters.getInitialSequenceNumber());
+            }
+            for (long index : deliveredAfterRestart) {
+                delivered.add(index - parameters.getInitialSequenceNumber());
+            }
+
+            return sender.getAvailableSlots() == parameters.getWindowLength() && nextIndex == lastIndex;
+        }
+    }
+
+    private static ByteBuffer content(int length, int value) {
+        ByteBuffer content = ByteBuffer.allocate(length);
+        while (content.hasRemaining()) {
+            content.put((byte) value);
+        }
+        content.flip();
+        return content;
+    }
+}
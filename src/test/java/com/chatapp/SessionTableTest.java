@@ -0,0 +1,129 @@
+package com.chatapp;
+
+import com.chatapp.Message.MessageBodyType;
+import com.chatapp.Message.MessageType;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the Receiver session table eviction policies, also applied to packets from unknown peers.
+ */
+class SessionTableTest {
+
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void evictsOnlyIdleSessions() {
+        SessionTable table = new SessionTable(IDLE_TIMEOUT, 16, Long.MAX_VALUE);
+        table.get(peer(1), 0);
+        table.get(peer(2), 0);
+        table.get(peer(1), IDLE_TIMEOUT / 2);
+
+        List<ReceiverSession> evicted = table.evictIdle(IDLE_TIMEOUT);
+
+        assertEquals(1, evicted.size());
+        assertEquals(peer(2), evicted.get(0).getPeer());
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedSessionOverCount() {
+        SessionTable table = new SessionTable(IDLE_TIMEOUT, 2, Long.MAX_VALUE);
+        table.get(peer(1), 0);
+        table.get(peer(2), 1);
+        table.get(peer(1), 2);
+        ReceiverSession current = table.get(peer(3), 3);
+
+        List<ReceiverSession> evicted = table.evictOverflow(current);
+
+        assertEquals(1, evicted.size());
+        assertEquals(peer(2), evicted.get(0).getPeer());
+        assertSame(current, table.get(peer(3), 4));
+    }
+
+    @Test
+    void keepsMemoryFlatUnderSenderChurn() {
+        long cap = 64 * 1024;
+        SessionTable table = new SessionTable(IDLE_TIMEOUT, Integer.MAX_VALUE, cap);
+
+        for (int i = 0; i < 10_000; i++) {
+            ReceiverSession session = table.get(peer(i), i);
+            session.receive(1, frame(1));
+            table.refresh(session);
+            table.evictOverflow(session);
+
+            assertTrue(table.getRetainedBytes() <= cap);
+        }
+
+        assertTrue(table.size() < 10_000);
+        assertEquals(table.size() * (ReceiverSession.SESSION_OVERHEAD_BYTES + ReceiverSession.STREAM_OVERHEAD_BYTES
+                + frame(1).getBuffer().length),
+                table.getRetainedBytes());
+    }
+
+    @Test
+    void probesAndDuplicatesFromUnknownPeersStayWithinTheSessionLimit() throws Exception {
+        VirtualClock clock = new VirtualClock();
+        InMemoryNetwork network = new InMemoryNetwork(1L, clock, 0, 0, 1, 1, TimeUnit.MILLISECONDS);
+        InetSocketAddress receiverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 10098);
+        List<Transport> senders = new ArrayList<>();
+
+        try (Receiver receiver = new Receiver(network.bind(receiverAddress), message -> { },
+                ConnectionParameters.defaults(), clock)) {
+            receiver.configureSessions(TimeUnit.NANOSECONDS.toMillis(IDLE_TIMEOUT), 4, Long.MAX_VALUE);
+
+            for (int i = 0; i < 100; i++) {
+                Transport sender = network.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 20000 + i));
+                senders.add(sender);
+                byte[] probe = MessageCodec.encode(new Message(MessageType.WINDOW_PROBE, 0L));
+                sender.send(receiverAddress, probe, 0, probe.length);
+            }
+
+            clock.advanceTo(network.nextArrivalNanos());
+            receiver.poll();
+
+            assertEquals(0, receiver.getSessionCount());
+            for (Transport sender : senders) {
+                ByteBuffer buffer = ByteBuffer.allocate(ConnectionParameters.DEFAULT_MAX_DATAGRAM_SIZE);
+                clock.advanceTo(network.nextArrivalNanos());
+                assertEquals(receiverAddress, sender.receive(buffer));
+                MessageView reply = new MessageView();
+                assertTrue(reply.wrap(buffer.array(), 0, buffer.position()));
+                assertEquals(MessageType.WINDOW_UPDATE, reply.getMessageType());
+            }
+
+            for (Transport sender : senders) {
+                // an index before the window start is treated as a duplicate
+                byte[] duplicate = MessageCodec.encode(frame(-1).toMessage());
+                sender.send(receiverAddress, duplicate, 0, duplicate.length);
+            }
+
+            clock.advanceTo(network.nextArrivalNanos());
+            receiver.poll();
+
+            assertEquals(4, receiver.getSessionCount());
+        }
+    }
+
+    private static InetSocketAddress peer(int port) {
+        return InetSocketAddress.createUnresolved("sender", port);
+    }
+
+    private static MessageView frame(long index) {
+        Message message = new Message(MessageType.PACKAGE, index);
+        message.addMessage(MessageBodyType.BODY.label, "mensagem " + index);
+        byte[] bytes = MessageCodec.encode(message);
+        MessageView view = new MessageView();
+        assertTrue(view.wrap(bytes, 0, bytes.length));
+        return view;
+    }
+}
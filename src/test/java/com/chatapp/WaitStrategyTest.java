@@ -0,0 +1,83 @@
+package com.chatapp;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for the spin, yield and park wait strategy of the UDP transport.
+ */
+class WaitStrategyTest {
+
+    @Test
+    void parsesPropertyValues() {
+        assertSame(WaitStrategy.BLOCKING, WaitStrategy.parse(null));
+        assertSame(WaitStrategy.BLOCKING, WaitStrategy.parse("blocking"));
+        assertFalse(WaitStrategy.BLOCKING.isBusyPoll());
+
+        WaitStrategy defaults = WaitStrategy.parse("busy-poll");
+        assertEquals(WaitStrategy.DEFAULT_SPIN_ITERATIONS, defaults.getSpinIterations());
+        assertEquals(WaitStrategy.DEFAULT_YIELD_ITERATIONS, defaults.getYieldIterations());
+
+        WaitStrategy custom = WaitStrategy.parse("busy-poll:50:5");
+        assertTrue(custom.isBusyPoll());
+        assertEquals("busy-poll:50:5", custom.toString());
+
+        assertThrows(IllegalArgumentException.class, () -> WaitStrategy.parse("busy-poll:x:1"));
+        assertThrows(IllegalArgumentException.class, () -> WaitStrategy.parse("sleep"));
+    }
+
+    @Test
+    void spinsThenYieldsBeforeParking() throws IOException {
+        WaitStrategy strategy = WaitStrategy.busyPoll(10, 3);
+        int[] checks = new int[1];
+
+        assertTrue(strategy.spin(() -> ++checks[0] == 12, Long.MAX_VALUE));
+        assertEquals(12, checks[0]);
+
+        checks[0] = 0;
+        assertFalse(strategy.spin(() -> {
+            checks[0]++;
+            return false;
+        }, Long.MAX_VALUE));
+        assertEquals(13, checks[0]);
+
+        checks[0] = 0;
+        assertFalse(strategy.spin(() -> {
+            checks[0]++;
+            return false;
+        }, System.nanoTime() - 1));
+        assertEquals(1, checks[0]);
+    }
+
+    @Test
+    void busyPollingTransportReturnsDatagramReceivedWhileSpinning() throws IOException {
+        try (DatagramTransport transport = DatagramTransport.bind(0, WaitStrategy.busyPoll(1000, 1000));
+                DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            int port = ((InetSocketAddress) transport.getLocalAddress()).getPort();
+            byte[] frame = {1, 2, 3, 4};
+            socket.send(new DatagramPacket(frame, frame.length, InetAddress.getLoopbackAddress(), port));
+
+            transport.await(TimeUnit.SECONDS.toNanos(5));
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+
+            assertEquals(socket.getLocalSocketAddress(), transport.receive(buffer));
+            assertArrayEquals(frame, Arrays.copyOf(buffer.array(), buffer.position()));
+            assertNull(transport.receive(buffer));
+        }
+    }
+}